@@ -27,7 +27,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -37,9 +41,16 @@ import java.util.Date;
 public class S7Client 
 {
     // WordLength
-    private static final byte S7WLByte    =0x02;
-    private static final byte S7WLCounter =0x1C;
-    private static final byte S7WLTimer   =0x1D;
+    public static final byte S7WLBit     =0x01;
+    public static final byte S7WLByte    =0x02;
+    public static final byte S7WLChar    =0x03;
+    public static final byte S7WLWord    =0x04;
+    public static final byte S7WLInt     =0x05;
+    public static final byte S7WLDWord   =0x06;
+    public static final byte S7WLDInt    =0x07;
+    public static final byte S7WLReal    =0x08;
+    public static final byte S7WLCounter =0x1C;
+    public static final byte S7WLTimer   =0x1D;
     // Error Codes
     public static final int errTCPConnectionFailed = 0x0001;
     public static final int errTCPDataSend         = 0x0002;
@@ -55,27 +66,38 @@ public class S7Client
     public static final int errS7BufferTooSmall    = 0x000C;
     public static final int errS7FunctionError     = 0x000D;
     public static final int errS7InvalidParams     = 0x000E;           
+    public static final int errS7AddressOutOfRange = 0x000F;
+    public static final int errS7InvalidDataSize   = 0x0010;
+    public static final int errS7ItemNotAvailable  = 0x0011;
+    public static final int errS7AccessDenied      = 0x0012;
+    public static final int errS7TooManyItems      = 0x0013;
     
     // Public fields
     public boolean Connected = false;
     public int LastError = 0;
     public int RecvTimeout = 2000;
+    public int ConnTimeout = 5000;
     
     // Privates
-    private static final int ISOTCP = 102; // ISOTCP Port
-    private static final int MinPduSize = 16;
-    private static final int DefaultPduSizeRequested = 480;
-    private static final int IsoHSize = 7; // TPKT+COTP Header Size
-    private static final int MaxPduSize = DefaultPduSizeRequested+IsoHSize; 
+    static final int ISOTCP = 102; // ISOTCP Port
+    static final int MinPduSize = 16;
+    static final int DefaultPduSizeRequested = 480;
+    static final int DefaultJobsRequested = 8;    // Parallel jobs (AmQ) proposed to the CPU
+    static final int MinPduSizeRequested = 240;   // The smallest PDU of a S7 CPU (S7-200)
+    static final int MaxPduSizeRequested = 8185;  // Largest COTP TPDU (8192) - IsoHSize
+    static final int IsoHSize = 7; // TPKT+COTP Header Size
     
     
     private Socket TCPSocket;
-    private final byte[] PDU = new byte[2048];
+    private int SoTimeout = 0;
+    private int PduSizeRequested = DefaultPduSizeRequested;
+    private byte[] PDU = new byte[DefaultPduSizeRequested+IsoHSize];
     
     private DataInputStream InStream = null;
     private DataOutputStream OutStream = null;
             
     private String IPAddress;
+    private int RemotePort = ISOTCP;
            
     private byte LocalTSAP_HI;
     private byte LocalTSAP_LO;
@@ -85,6 +107,15 @@ public class S7Client
     
     private short ConnType = S7.PG; 
     private int _PDULength = 0;
+    private int _MaxJobs = 1;
+    private int JobsRequested = DefaultJobsRequested;
+    private int PduRef = 0x0500;
+    private S7Reactor Reactor;
+    private S7Session AsyncSession;
+    private final S7Metrics Metrics;
+    private long SentAt;      // nanoTime of the last telegram sent
+    private long ReceivedAt;  // nanoTime of the last reply completed
+    private long CallDeadline = 0; // nanoTime limit shared by all the telegrams of a call (0 = none)
     
     // Telegrams
     // ISO Connection Request telegram (contains also ISO Header and COTP Header)
@@ -152,8 +183,13 @@ public class S7Client
         (byte)0x04,             // Transport size
         (byte)0x00,(byte)0x00,  // Data Length * 8 (if not timer or counter) 
     };
-    private static final int Size_RD = 31;
-    private static final int Size_WR = 35;
+    static final int Size_RD = 31;
+    static final int Size_WR = 35;
+    
+    // Multi Read/Write Var : TPKT+COTP+S7 Header (17) + Function + Items count
+    private static final int Size_MV = 19;
+    private static final int Size_VarSpec = 12;
+    private static final int MaxVars = 20; // Max vars that can be transferred with a single telegram
 
     // S7 Get Block Info Request Header (contains also ISO Header and COTP Header)
     private static final byte S7_BI[] = {
@@ -312,7 +348,23 @@ public class S7Client
         
     public S7Client()
     {
-        // Placeholder for future implementations
+        this(null);
+    }
+    
+    /**
+     * The metrics of this client are forwarded to Aggregate (e.g. shared by all the clients of a PLC)
+     */
+    public S7Client(S7Metrics Aggregate)
+    {
+        Metrics = new S7Metrics(Aggregate);
+    }
+    
+    /**
+     * Wire metrics of this client (telegrams, bytes, latencies, errors)
+     */
+    public S7Metrics Metrics()
+    {
+        return Metrics;
     }
 
     public static String ErrorText(int Error)
@@ -347,19 +399,73 @@ public class S7Client
                 return "S7 function refused by the CPU.";
             case errS7InvalidParams :
                 return "Invalid parameters supplied to the function.";
+            case errS7AddressOutOfRange :
+                return "Address out of range.";
+            case errS7InvalidDataSize :
+                return "Invalid data size or transport size for the item.";
+            case errS7ItemNotAvailable :
+                return "Item not available in the CPU.";
+            case errS7AccessDenied :
+                return "Access to the item denied by the CPU.";
+            case errS7TooManyItems :
+                return "Too many items supplied to the function.";
             default : 
                 return "Unknown error : 0x"+Integer.toHexString(Error);
         }
     }
     
+    // Size in bytes of one element of the given transport size
+    public static int DataSizeByte(int WordLength)
+    {
+        switch (WordLength)
+        {
+            case S7WLBit     : return 1;  // S7 sends 1 byte per bit
+            case S7WLByte    : return 1;
+            case S7WLChar    : return 1;
+            case S7WLWord    : return 2;
+            case S7WLDWord   : return 4;
+            case S7WLInt     : return 2;
+            case S7WLDInt    : return 4;
+            case S7WLReal    : return 4;
+            case S7WLCounter : return 2;
+            case S7WLTimer   : return 2;
+            default          : return 0;
+        }
+    }
+    
+    // Maps the return code of a single item (read/write var) to an error code
+    private static int CpuItemError(int ReturnCode)
+    {
+        switch (ReturnCode & 0x0FF)
+        {
+            case 0xFF : return 0;
+            case 0x03 : return errS7AccessDenied;
+            case 0x05 : return errS7AddressOutOfRange;
+            case 0x06 : 
+            case 0x07 : return errS7InvalidDataSize;
+            case 0x0A : return errS7ItemNotAvailable;
+            default   : return errS7FunctionError;
+        }
+    }
+    
     private int TCPConnect() 
     {
-        SocketAddress sockaddr = new InetSocketAddress(IPAddress, ISOTCP);
+        SocketAddress sockaddr = new InetSocketAddress(IPAddress, RemotePort);
         LastError=0;
         try {                       
             TCPSocket = new Socket(); 
-            TCPSocket.connect(sockaddr ,5000);
+            int Timeout = TimeLeft(ConnTimeout);
+            if (Timeout<=0)
+            {
+                Metrics.Timeout();
+                LastError=errTCPConnectionFailed;
+                return LastError;
+            }
+            TCPSocket.connect(sockaddr ,Timeout);
             TCPSocket.setTcpNoDelay(true);
+            TCPSocket.setSoTimeout(RecvTimeout);
+            SoTimeout = RecvTimeout;
+            SentAt = ReceivedAt = System.nanoTime();
             InStream = new DataInputStream(TCPSocket.getInputStream());
             OutStream = new DataOutputStream(TCPSocket.getOutputStream());           
         }
@@ -369,66 +475,103 @@ public class S7Client
         return LastError;
     }
     
-    private int WaitForData(int Size, int Timeout) 
+    // Returns the milliseconds granted to the next wait : Timeout, bounded by the call deadline
+    // (if any). Zero or less means that the deadline is exhausted.
+    private int TimeLeft(int Timeout)
     {
-        int cnt = 0;
+        if (CallDeadline==0)
+            return Timeout;
+        long Left = (CallDeadline - System.nanoTime()) / 1000000L;
+        return (int) Math.min(Timeout, Left);
+    }
+    
+    // Blocks on the socket (SO_TIMEOUT) until Size bytes are received or RecvTimeout expires
+    // (or the call deadline, whichever comes first).
+    // Replaces the former available()/sleep(1) polling loop : the call returns as soon as the
+    // bytes arrive and no thread spins while the PLC is answering.
+    private int RecvPacket(byte[] Buffer, int Start, int Size)
+    {
+        int BytesRead;
+        int Offset = 0;
+        long Deadline = System.nanoTime() + Math.max(TimeLeft(RecvTimeout), 0) * 1000000L;
         LastError=0;
-        int SizeAvail;
-        boolean Expired = false;
         try 
         {
-            SizeAvail=InStream.available();
-            while ((SizeAvail<Size) && (!Expired) && (LastError==0))
+            while ((Offset<Size) && (LastError==0))
             {
-                
-                cnt++;
-                try {
-                    Thread.sleep(1);
-                } 
-                catch (InterruptedException ex) {
+                int Remaining = (int) ((Deadline - System.nanoTime()) / 1000000L);
+                if (Remaining<=0)
+                {
                     LastError=errTCPDataRecvTout;
+                    break;
+                }
+                if (Remaining!=SoTimeout)
+                {
+                    TCPSocket.setSoTimeout(Remaining);
+                    SoTimeout=Remaining;
                 }
-                SizeAvail=InStream.available();              
-                Expired=cnt>Timeout;
-                // If timeout we clean the buffer
-                if (Expired && (SizeAvail>0) && (LastError==0))
-                  InStream.read(PDU, 0, SizeAvail);
+                BytesRead = InStream.read(Buffer, Start+Offset, Size-Offset);
+                if (BytesRead<0)
+                    LastError=errTCPConnectionReset;
+                else
+                    Offset+=BytesRead;
             }
         } 
-        catch (IOException ex) 
+        catch (SocketTimeoutException ex) 
         {
             LastError=errTCPDataRecvTout;
         }
-        if (cnt>=Timeout)
+        catch (IOException ex) 
         {
-            LastError=errTCPDataRecvTout;
-        }        
+            LastError=errTCPDataRecv;
+        }
+        // If timeout we clean the buffer
+        if (LastError==errTCPDataRecvTout)
+        {
+            Metrics.Timeout();
+            FlushInput();
+        }
         return LastError;
     }
     
-    private int RecvPacket(byte[] Buffer, int Start, int Size)
+    // Closes the socket of a connection out of sync, LastError is kept
+    private void Drop()
     {
-	int BytesRead=0;
-        LastError=WaitForData(Size,RecvTimeout);
-	if (LastError==0)
-        {
-            try {
-                BytesRead = InStream.read(Buffer, Start, Size);
-            } catch (IOException ex) {
-                LastError=errTCPDataRecv;
+        try {
+            TCPSocket.close();
+        } catch (IOException ex) {
+        }
+        Connected=false;
+    }
+    
+    private void FlushInput()
+    {
+        try {
+            int SizeAvail=InStream.available();
+            while (SizeAvail>0)
+            {
+                InStream.skipBytes(SizeAvail);
+                SizeAvail=InStream.available();
             }
-            if (BytesRead==0)
-                LastError=errTCPConnectionReset;        
+        } catch (IOException ex) {
         }
-        return LastError;
     }
 
     private void SendPacket(byte[] Buffer, int Len)
     {
         LastError = 0;
+        // Deadline exhausted : fails fast, without sending a request whose reply nobody would wait for
+        if (TimeLeft(1)<=0)
+        {
+            Metrics.Timeout();
+            LastError = errTCPDataRecvTout;
+            return;
+        }
         try {
             OutStream.write(Buffer,0,Len);
             OutStream.flush();
+            SentAt = System.nanoTime();
+            Metrics.Sent(Len);
         } catch (IOException ex) {
             LastError = errTCPDataSend; 
         }
@@ -442,19 +585,21 @@ public class S7Client
     {
         Boolean Done = false;
         int Size = 0;
+        long FirstByteAt = 0;
 	while ((LastError==0) && !Done)
 	{
             // Get TPKT (4 bytes)
             RecvPacket(PDU, 0, 4); 
             if (LastError==0)
             {
+                FirstByteAt = System.nanoTime();
                 Size=S7.GetWordAt(PDU,2);
                 // Check 0 bytes Data Packet (only TPKT+COTP = 7 bytes)
                 if (Size==IsoHSize)
                     RecvPacket(PDU,4, 3); // Skip remaining 3 bytes and Done is still false
                 else
                 {
-                    if ((Size>MaxPduSize) || (Size<MinPduSize))
+                    if ((Size>PDU.length) || (Size<MinPduSize))
                         LastError=errISOInvalidPDU;
                     else
                         Done = true; // a valid Length !=7 && >16 && <247
@@ -463,27 +608,52 @@ public class S7Client
         }
         if (LastError==0)
         {
-            RecvPacket(PDU,4, 3); // Skip remaining 3 COTP bytes
+            // Receives the remaining 3 COTP bytes and the S7 Payload in one shot
+            RecvPacket(PDU, 4, Size-4);
             LastPDUType=PDU[5];   // Stores PDU Type, we need it 
-            // Receives the S7 Payload          
-            RecvPacket(PDU, 7, Size-IsoHSize);          
         }
         if (LastError==0)
+        {
+            // With pipelined jobs the wait is measured from the later of the last send and the previous reply
+            long Now = System.nanoTime();
+            Metrics.Received(Size, FirstByteAt-(ReceivedAt-SentAt>0 ? ReceivedAt : SentAt), Now-FirstByteAt);
+            ReceivedAt = Now;
             return Size;
+        }
         else
             return 0;
     }
     
+    // Builds into Buffer the ISO connection request telegram, returns its size
+    static int IsoConnectTelegram(byte[] Buffer, int LocalTSAP, int RemoteTSAP, int PduSize)
+    {
+        int TpduSize = 0x0A; // 1024 bytes
+        // The telegram is built into Buffer (and not into the shared template) : concurrent clients don't interfere
+        System.arraycopy(ISO_CR, 0, Buffer, 0, ISO_CR.length);
+        // The COTP TPDU must hold the whole S7 PDU requested
+        while (((1<<TpduSize)<PduSize+IsoHSize) && (TpduSize<0x0D))
+            TpduSize++;
+        Buffer[13]=(byte)TpduSize;
+        S7.SetWordAt(Buffer,16,LocalTSAP & 0x0FFFF);
+        S7.SetWordAt(Buffer,20,RemoteTSAP & 0x0FFFF);
+        return ISO_CR.length;
+    }
+    
+    // Builds into Buffer the PDU negotiation telegram, returns its size
+    static int NegotiateTelegram(byte[] Buffer, int PduSize, int Jobs)
+    {
+        System.arraycopy(S7_PN, 0, Buffer, 0, S7_PN.length);
+        S7.SetWordAt(Buffer,19,Jobs);  // Max AmQ Caller
+        S7.SetWordAt(Buffer,21,Jobs);  // Max AmQ Callee
+        S7.SetWordAt(Buffer,23,PduSize);
+        return S7_PN.length;
+    }
+    
     private int ISOConnect() 
     {
     	int Size;
-        ISO_CR[16]=LocalTSAP_HI;
-        ISO_CR[17]=LocalTSAP_LO;
-        ISO_CR[20]=RemoteTSAP_HI;
-        ISO_CR[21]=RemoteTSAP_LO;
-        
         // Sends the connection request telegram      
-        SendPacket(ISO_CR);
+        SendPacket(PDU, IsoConnectTelegram(PDU, (LocalTSAP_HI<<8) | (LocalTSAP_LO & 0x0FF), (RemoteTSAP_HI<<8) | (RemoteTSAP_LO & 0x0FF), PduSizeRequested));
         if (LastError==0)
         {            
             // Gets the reply (if any)
@@ -506,9 +676,8 @@ public class S7Client
     {
         int Length;
         // Set PDU Size Requested
-        S7.SetWordAt(S7_PN,23,DefaultPduSizeRequested);            
         // Sends the connection request telegram
-        SendPacket(S7_PN);
+        SendPacket(PDU, NegotiateTelegram(PDU, PduSizeRequested, JobsRequested));
         if (LastError==0)    
         {
             Length=RecvIsoPacket();
@@ -519,8 +688,17 @@ public class S7Client
                 {
                     // Get PDU Size Negotiated
                     _PDULength = S7.GetWordAt(PDU,25);
+                    if (_PDULength>PduSizeRequested)
+                        _PDULength=PduSizeRequested;
+                    // Get the parallel jobs (AmQ Caller) the CPU accepts from us
+                    _MaxJobs = Math.max(1, Math.min(S7.GetWordAt(PDU,21), JobsRequested));
                     if (_PDULength>0)
+                    {
+                        // Internal buffer sized to the PDU negotiated
+                        if (PDU.length!=_PDULength+IsoHSize)
+                            PDU = new byte[_PDULength+IsoHSize];
                         return 0;
+                    }
                     else
                         LastError=errISONegotiatingPDU;
                 }
@@ -535,12 +713,51 @@ public class S7Client
     {
         ConnType=ConnectionType;
     }
+    
+    /**
+     * Sets the PDU size proposed to the CPU during the next connection
+     * (S7-300/1200 usually accept 240/480, S7-1500 accepts 960 or more).
+     * The PDU actually used is the one negotiated, see PDULength().
+     */
+    public void SetPduSizeRequested(int PduSize)
+    {
+        if (PduSize<MinPduSizeRequested)
+            PduSize=MinPduSizeRequested;
+        if (PduSize>MaxPduSizeRequested)
+            PduSize=MaxPduSizeRequested;
+        PduSizeRequested=PduSize;
+        if (!Connected)
+            PDU = new byte[PduSizeRequested+IsoHSize];
+    }
+    
+    public int PduSizeRequested()
+    {
+        return PduSizeRequested;
+    }
+    
+    /**
+     * Sets the max parallel jobs (AmQ) proposed to the CPU during the next connection.
+     * The value actually used is the one negotiated, see MaxJobs().
+     */
+    public void SetJobsRequested(int Jobs)
+    {
+        JobsRequested=Math.max(1, Math.min(Jobs, 0x0FFFF));
+    }
+    
+    // Parallel jobs negotiated : how many chunks of a read may be in flight
+    public int MaxJobs()
+    {
+        return _MaxJobs;
+    }
       
     public int Connect() 
     {
+        long Started = System.nanoTime();
         LastError=0;
         if (!Connected)
         {
+            if (PDU.length!=PduSizeRequested+IsoHSize)
+                PDU = new byte[PduSizeRequested+IsoHSize];
             TCPConnect();
             if (LastError==0) // First stage : TCP Connection
             {
@@ -576,13 +793,15 @@ public class S7Client
                 }
             }
             _PDULength = 0;
+            _MaxJobs = 1;
         }                
         
-	return LastError;
+	return EndCall(Started);
     }
     
     public void Disconnect()
     {
+        CloseAsyncSession();
         if (Connected)
         {
             try {
@@ -590,6 +809,7 @@ public class S7Client
                 InStream.close();
                 TCPSocket.close();
                 _PDULength=0;
+                _MaxJobs=1;
             } catch (IOException ex) {            
             }
             Connected=false;
@@ -608,6 +828,46 @@ public class S7Client
         return _PDULength;
     }
     
+    /**
+     * Sets the TCP port of the PLC (102 by default), used by the next connection
+     */
+    public void SetConnectionPort(int Port)
+    {
+        RemotePort=Port;
+    }
+    
+    public int ConnectionPort()
+    {
+        return RemotePort;
+    }
+    
+    /**
+     * Sets one deadline, Millis from now, for all the next round trips (connection included) :
+     * each wait is bounded by the time left instead of a full RecvTimeout/ConnTimeout, and the
+     * calls fail fast (errTCPDataRecvTout) once it is exhausted. Millis<=0 removes the deadline.
+     */
+    public void SetDeadline(long Millis)
+    {
+        if (Millis<=0)
+            CallDeadline = 0;
+        else
+        {
+            CallDeadline = System.nanoTime() + Millis * 1000000L;
+            if (CallDeadline==0)
+                CallDeadline = 1; // 0 means "none"
+        }
+    }
+    
+    /**
+     * Milliseconds left before the deadline (Long.MAX_VALUE if none is set)
+     */
+    public long DeadlineLeft()
+    {
+        if (CallDeadline==0)
+            return Long.MAX_VALUE;
+        return Math.max((CallDeadline - System.nanoTime()) / 1000000L, 0);
+    }
+    
     public void SetConnectionParams(String Address, int LocalTSAP, int RemoteTSAP)
     {
         int LocTSAP = LocalTSAP & 0x0000FFFF;
@@ -619,16 +879,236 @@ public class S7Client
         RemoteTSAP_LO= (byte) (RemTSAP & 0x00FF);      
     }
  
+    // Builds into Buffer the read telegram of a chunk, returns its size
+    static int ReadAreaTelegram(byte[] Buffer, int Area, int DBNumber, int Start, int NumElements, int PduRef)
+    {
+        int Address;
+        
+        // Setup the telegram
+        System.arraycopy(S7_RW, 0, Buffer, 0, Size_RD);
+        // PDU Reference, used to match the reply of pipelined jobs
+        S7.SetWordAt(Buffer,11,PduRef);
+        // Set Area
+        Buffer[27] = (byte) Area;
+        // Set DB Number
+        if (Area==S7.S7AreaDB) 
+            S7.SetWordAt(Buffer,25,DBNumber);
+
+        // Adjusts Start and word length
+        if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
+        {
+            Address = Start;
+            if (Area==S7.S7AreaCT)
+                Buffer[22]=S7WLCounter;
+            else
+                Buffer[22]=S7WLTimer;
+        }
+        else
+            Address = Start<<3;
+
+        // Num elements
+        S7.SetWordAt(Buffer,23,NumElements);
+
+        // Address into the PLC (only 3 bytes)           
+        Buffer[30] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[29] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[28] = (byte) (Address & 0x0FF);
+        
+        return Size_RD;
+    }
+    
+    // Checks the reply of a chunk read and copies its payload, returns the error
+    static int ReadAreaReply(byte[] Buffer, int Length, int SizeRequested, byte[] Data, int Offset)
+    {
+        if (Length<25)
+            return errS7InvalidPDU;
+        if ((Length-25!=SizeRequested) || (Buffer[21]!=(byte)0xFF))
+            return errS7DataRead;
+        System.arraycopy(Buffer, 25, Data, Offset, SizeRequested);
+        return 0;
+    }
+    
+    // Checks the reply of a chunk read and copies its payload at the Index of Data, returns the error
+    static int ReadAreaReply(byte[] Buffer, int Length, int SizeRequested, ByteBuffer Data, int Index)
+    {
+        if (Length<25)
+            return errS7InvalidPDU;
+        if ((Length-25!=SizeRequested) || (Buffer[21]!=(byte)0xFF))
+            return errS7DataRead;
+        Data.put(Index, Buffer, 25, SizeRequested);
+        return 0;
+    }
+    
+    // Builds into Buffer the write telegram of a chunk, returns its size
+    static int WriteAreaTelegram(byte[] Buffer, int Area, int DBNumber, int Start, int NumElements, byte[] Data, int Offset, int PduRef)
+    {
+        int IsoSize = WriteAreaHeader(Buffer, Area, DBNumber, Start, NumElements, PduRef);
+        // Copies the Data
+        System.arraycopy(Data, Offset, Buffer, Size_WR, IsoSize-Size_WR);
+        return IsoSize;
+    }
+    
+    // Builds into Buffer the write telegram of a chunk, the data taken at the Index of Data
+    static int WriteAreaTelegram(byte[] Buffer, int Area, int DBNumber, int Start, int NumElements, ByteBuffer Data, int Index, int PduRef)
+    {
+        int IsoSize = WriteAreaHeader(Buffer, Area, DBNumber, Start, NumElements, PduRef);
+        Data.get(Index, Buffer, Size_WR, IsoSize-Size_WR);
+        return IsoSize;
+    }
+    
+    // Builds into Buffer the header of a chunk write telegram, returns the whole telegram size
+    private static int WriteAreaHeader(byte[] Buffer, int Area, int DBNumber, int Start, int NumElements, int PduRef)
+    {
+        int Address;
+        int Length;
+        int WordSize = 1;
+        
+        // If we are addressing Timers or counters the element size is 2
+        if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
+            WordSize = 2;
+        
+        int DataSize = NumElements * WordSize;
+        int IsoSize  = Size_WR + DataSize;
+
+        // Setup the telegram
+        System.arraycopy(S7_RW, 0, Buffer, 0, Size_WR);
+        // Whole telegram Size
+        S7.SetWordAt(Buffer,2,IsoSize);
+        // PDU Reference
+        S7.SetWordAt(Buffer,11,PduRef);
+        // Data Length
+        Length=DataSize+4;
+        S7.SetWordAt(Buffer,15,Length);
+        // Function
+        Buffer[17]= (byte) 0x05;
+        // Set DB Number
+        Buffer[27] = (byte) Area;
+        if (Area==S7.S7AreaDB) 
+            S7.SetWordAt(Buffer,25,DBNumber);
+
+        // Adjusts Start and word length
+        if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
+        {
+            Address = Start;
+            Length = DataSize;
+            if (Area==S7.S7AreaCT)
+                Buffer[22]=S7WLCounter;
+            else
+                Buffer[22]=S7WLTimer;
+            // Octet string : the Length is in bytes
+            Buffer[32]=(byte)DataTransportSize(Buffer[22]);
+        }
+        else
+        {
+            Address = Start<<3;
+            Length  = DataSize<<3;
+        }
+        // Num elements
+        S7.SetWordAt(Buffer,23,NumElements);
+        // Address into the PLC
+        Buffer[30] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[29] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[28] = (byte) (Address & 0x0FF);
+        // Length
+        S7.SetWordAt(Buffer,33,Length);
+        return IsoSize;
+    }
+    
+    // Checks the reply of a chunk write, returns the error
+    static int WriteAreaReply(byte[] Buffer, int Length)
+    {
+        if (Length!=22)
+            return errS7InvalidPDU;
+        if ((S7.GetWordAt(Buffer,17)!=0) || (Buffer[21]!=(byte)0xFF))
+            return errS7DataWrite;
+        return 0;
+    }
+    
+    // Ends a logical call in the metrics, returns LastError.
+    // Only the public entry points record : a call built on others (e.g. DBGet, the ReadArea
+    // fallback of ReadMultiVars) uses their Do... work, so each logical call is counted once
+    private int EndCall(long Started)
+    {
+        Metrics.Call(Started, LastError);
+        return LastError;
+    }
+    
+    // Checks that a PDU was negotiated (reset by Disconnect) and holds at least one element, returns the error
+    private int PduError(int MaxElements)
+    {
+        if (_PDULength==0)
+            return errTCPConnectionFailed;
+        return (MaxElements<=0) ? errISONegotiatingPDU : 0;
+    }
+    
+    // Reserves Count consecutive PDU references
+    private int NextPduRef(int Count)
+    {
+        int Ref = PduRef;
+        PduRef = (PduRef + Count) & 0x0FFFF;
+        return Ref;
+    }
+    
     public int ReadArea(int Area, int DBNumber, int Start, int Amount, byte[] Data)
     {
-	int Address;
+        return ReadArea(Area, DBNumber, Start, Amount, Data, 0, null);
+    }
+    
+    /**
+     * Reads into a slice of Data : the bytes land at Offset, without intermediate buffers
+     * (e.g. several areas into a single process image).
+     */
+    public int ReadArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset)
+    {
+        return ReadArea(Area, DBNumber, Start, Amount, Data, Offset, null);
+    }
+    
+    /**
+     * Reads into Buffer at its position (heap or direct buffer),
+     * the position is advanced by the bytes read only if the read succeeded.
+     */
+    public int ReadArea(int Area, int DBNumber, int Start, int Amount, ByteBuffer Buffer)
+    {
+        int WordSize = ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM)) ? 2 : 1;
+        int Position = Buffer.position();
+        
+        if (Amount*WordSize>Buffer.remaining())
+            return LastError = errS7BufferTooSmall;
+        if (Buffer.hasArray())
+            ReadArea(Area, DBNumber, Start, Amount, Buffer.array(), Buffer.arrayOffset()+Position, null);
+        else
+            ReadArea(Area, DBNumber, Start, Amount, null, Position, Buffer);
+        if (LastError==0)
+            Buffer.position(Position+Amount*WordSize);
+        return LastError;
+    }
+    
+    // Data (at Offset) or Target (at the absolute index Offset) receives the bytes
+    private int ReadArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset, ByteBuffer Target)
+    {
+        long Started = System.nanoTime();
+        DoReadArea(Area, DBNumber, Start, Amount, Data, Offset, Target);
+        return EndCall(Started);
+    }
+    
+    // ReadArea without recording the call (see EndCall)
+    private int DoReadArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset, ByteBuffer Target)
+    {
 	int NumElements;
 	int MaxElements;
-	int TotElements;
+	int Chunks;
+	int Chunk;
 	int SizeRequested;
 	int Length;
-	int Offset = 0;
 	int WordSize = 1;
+	int Window;
+	int BaseRef;
+	int Sent = 0;
+	int Received = 0;
 	     
 	LastError=0;
 		
@@ -637,83 +1117,121 @@ public class S7Client
             WordSize = 2;
 	
         MaxElements=(_PDULength-18) / WordSize; // 18 = Reply telegram header
-            TotElements=Amount;
+        LastError=PduError(MaxElements);
+        if ((Amount<=0) || (LastError!=0))
+            return LastError;
+        
+        // Up to the negotiated number of parallel jobs are kept in flight,
+        // the replies are matched by their PDU reference
+        Chunks=(Amount+MaxElements-1) / MaxElements;
+        Window=Math.max(1, Math.min(_MaxJobs, Chunks));
+        BaseRef=NextPduRef(Chunks);
 	
-        while ((TotElements>0) && (LastError==0))
+        while ((Received<Chunks) && (LastError==0))
         {
-            NumElements=TotElements;
-            if (NumElements>MaxElements)
-               NumElements=MaxElements;
-
-            SizeRequested = NumElements * WordSize;
-
-            // Setup the telegram
-            System.arraycopy(S7_RW, 0, PDU, 0, Size_RD);
-            // Set DB Number
-            PDU[27] = (byte) Area;
-            // Set Area
-            if (Area==S7.S7AreaDB) 
-                S7.SetWordAt(PDU,25,DBNumber);
-
-            // Adjusts Start and word length
-            if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
+            while ((Sent<Chunks) && (Sent-Received<Window) && (LastError==0))
             {
-                Address = Start;
-                if (Area==S7.S7AreaCT)
-                    PDU[22]=S7WLCounter;
-                else
-                    PDU[22]=S7WLTimer;
+                NumElements=Math.min(MaxElements, Amount-Sent*MaxElements);
+                SendPacket(PDU, ReadAreaTelegram(PDU, Area, DBNumber, Start+Sent*MaxElements, NumElements, (BaseRef+Sent) & 0x0FFFF));
+                if (LastError==0)
+                    Sent++;
             }
+            if (LastError!=0)
+                break;
+            
+            Length=RecvIsoPacket();
+            if (LastError!=0)
+                break;
+            
+            if (Window>1)
+                Chunk=(S7.GetWordAt(PDU,11)-BaseRef) & 0x0FFFF;
             else
-                Address = Start<<3;
-
-            // Num elements
-            S7.SetWordAt(PDU,23,NumElements);
-
-            // Address into the PLC (only 3 bytes)           
-            PDU[30] = (byte) (Address & 0x0FF);
-            Address = Address >> 8;
-            PDU[29] = (byte) (Address & 0x0FF);
-            Address = Address >> 8;
-            PDU[28] = (byte) (Address & 0x0FF);         
+                Chunk=Received;
+            if (Chunk>=Sent)
+            {
+                LastError = errS7InvalidPDU;
+                break;
+            }
             
-            SendPacket(PDU, Size_RD);
-            if (LastError==0)
+            NumElements=Math.min(MaxElements, Amount-Chunk*MaxElements);
+            SizeRequested = NumElements * WordSize;
+            if (Target==null)
+                LastError = ReadAreaReply(PDU, Length, SizeRequested, Data, Offset+Chunk*MaxElements*WordSize);
+            else
+                LastError = ReadAreaReply(PDU, Length, SizeRequested, Target, Offset+Chunk*MaxElements*WordSize);
+            Received++;
+        }
+        
+        // The replies of the jobs still in flight are consumed to keep the connection in sync
+        if ((Sent>Received) && ((LastError==errS7DataRead) || (LastError==errS7InvalidPDU)))
+        {
+            int Error=LastError;
+            LastError=0;
+            while ((Received<Sent) && (LastError==0))
             {
-                Length=RecvIsoPacket();
+                RecvIsoPacket();
                 if (LastError==0)
-                {
-                    if (Length>=25)
-                    {
-                        if ((Length-25==SizeRequested) && (PDU[21]==(byte)0xFF))
-                        {
-                            System.arraycopy(PDU, 25, Data, Offset, SizeRequested);
-                            Offset+=SizeRequested;
-                        }
-                        else
-                            LastError = errS7DataRead;
-                    }
-                    else
-                        LastError = errS7InvalidPDU;
-                }
+                    Received++;
             }
-
-            TotElements -= NumElements;
-            Start += NumElements*WordSize;
+            if (LastError==0)
+                LastError=Error;
         }
+        
+        // A transport failure (e.g. a timeout) left replies in flight : they would be taken by the
+        // next call, so the connection is marked broken (closed) and the next call fails until reconnected
+        if (Sent>Received)
+            Drop();
         return LastError;
     }
 
     public int WriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data)
     {
-	int Address;
+        return WriteArea(Area, DBNumber, Start, Amount, Data, 0, null);
+    }
+    
+    /**
+     * Writes from a slice of Data starting at Offset, without intermediate buffers.
+     */
+    public int WriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset)
+    {
+        return WriteArea(Area, DBNumber, Start, Amount, Data, Offset, null);
+    }
+    
+    /**
+     * Writes from Buffer at its position (heap or direct buffer),
+     * the position is advanced by the bytes written only if the write succeeded.
+     */
+    public int WriteArea(int Area, int DBNumber, int Start, int Amount, ByteBuffer Buffer)
+    {
+        int WordSize = ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM)) ? 2 : 1;
+        int Position = Buffer.position();
+        
+        if (Amount*WordSize>Buffer.remaining())
+            return LastError = errS7BufferTooSmall;
+        if (Buffer.hasArray())
+            WriteArea(Area, DBNumber, Start, Amount, Buffer.array(), Buffer.arrayOffset()+Position, null);
+        else
+            WriteArea(Area, DBNumber, Start, Amount, null, Position, Buffer);
+        if (LastError==0)
+            Buffer.position(Position+Amount*WordSize);
+        return LastError;
+    }
+    
+    // The bytes are taken from Data (at Offset) or Source (at the absolute index Offset)
+    private int WriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset, ByteBuffer Source)
+    {
+        long Started = System.nanoTime();
+        DoWriteArea(Area, DBNumber, Start, Amount, Data, Offset, Source);
+        return EndCall(Started);
+    }
+    
+    // WriteArea without recording the call (see EndCall)
+    private int DoWriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int Offset, ByteBuffer Source)
+    {
 	int NumElements;
 	int MaxElements;
 	int TotElements;
-	int DataSize;
-	int IsoSize;
 	int Length;
-	int Offset = 0;
 	int WordSize = 1;
      
 	LastError=0;
@@ -722,7 +1240,8 @@ public class S7Client
 	if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
             WordSize = 2;
 
-        MaxElements=(_PDULength-35) / WordSize; // 18 = Reply telegram header
+        MaxElements=(_PDULength-35) / WordSize; // 35 = Write telegram header
+        LastError=PduError(MaxElements);
 	TotElements=Amount;
 	
         while ((TotElements>0) && (LastError==0))
@@ -731,107 +1250,549 @@ public class S7Client
             if (NumElements>MaxElements)
                NumElements=MaxElements;
 
-            DataSize = NumElements * WordSize;
-            IsoSize  = Size_WR + DataSize;
-
-            // Setup the telegram
-            System.arraycopy(S7_RW, 0, PDU, 0, Size_WR);
-            // Whole telegram Size
-            S7.SetWordAt(PDU,2,IsoSize);
-            // Data Length
-            Length=DataSize+4;
-            S7.SetWordAt(PDU,15,Length);
-            // Function
-            PDU[17]= (byte) 0x05;
-            // Set DB Number
-            PDU[27] = (byte) Area;
-            if (Area==S7.S7AreaDB) 
-                S7.SetWordAt(PDU,25,DBNumber);
+            if (Source==null)
+                SendPacket(PDU, WriteAreaTelegram(PDU, Area, DBNumber, Start, NumElements, Data, Offset, NextPduRef(1)));
+            else
+                SendPacket(PDU, WriteAreaTelegram(PDU, Area, DBNumber, Start, NumElements, Source, Offset, NextPduRef(1)));
+            if (LastError==0)
+            {
+                Length=RecvIsoPacket();
+                if (LastError==0)
+                    LastError=WriteAreaReply(PDU, Length);
+            }
 
-            // Adjusts Start and word length
-            if ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM))
+            Offset+=NumElements*WordSize;
+            TotElements -= NumElements;
+            Start += NumElements; // Timers and counters are addressed by element, the others by byte
+        }
+        return LastError;
+    }
+   
+    /**
+     * Sets the reactor driving the asynchronous calls (S7Reactor.Default() if not set)
+     */
+    public void SetReactor(S7Reactor Reactor)
+    {
+        this.Reactor=Reactor;
+    }
+    
+    // The asynchronous calls use their own non blocking connection (S7Session) to the same PLC :
+    // opened by the first call (and again after a failure), closed by Disconnect()
+    private synchronized S7Session AsyncSession()
+    {
+        if (IPAddress==null)
+            return null;
+        if (AsyncSession==null)
+        {
+            AsyncSession = new S7Session(Reactor!=null ? Reactor : S7Reactor.Default(), IPAddress, RemotePort, 
+                                         (LocalTSAP_HI<<8) | (LocalTSAP_LO & 0x0FF), (RemoteTSAP_HI<<8) | (RemoteTSAP_LO & 0x0FF));
+            AsyncSession.SetPduSizeRequested(PduSizeRequested);
+            AsyncSession.SetJobsRequested(JobsRequested);
+            AsyncSession.SetMetrics(Metrics);
+        }
+        AsyncSession.RecvTimeout=RecvTimeout;
+        return AsyncSession;
+    }
+    
+    private synchronized void CloseAsyncSession()
+    {
+        if (AsyncSession!=null)
+        {
+            AsyncSession.Disconnect();
+            AsyncSession=null;
+        }
+    }
+    
+    /**
+     * Asynchronous ReadArea() : no thread waits for the reply, the future is completed by the receive path.
+     * Completes with the data, or exceptionally with a S7Exception (errTCPDataRecvTout if RecvTimeout expires).
+     */
+    public CompletableFuture<byte[]> ReadAreaAsync(int Area, int DBNumber, int Start, int Amount)
+    {
+        S7Session Session = AsyncSession();
+        if (Session==null)
+            return S7Session.Failed(errTCPConnectionFailed);
+        long Started = System.nanoTime();
+        return Track(Session.Connect().thenCompose(Error -> Error!=0 ? S7Session.Failed(Error) : Session.ReadArea(Area, DBNumber, Start, Amount)), Started);
+    }
+    
+    /**
+     * Asynchronous WriteArea() : completes with 0 or the error code.
+     */
+    public CompletableFuture<Integer> WriteAreaAsync(int Area, int DBNumber, int Start, int Amount, byte[] Data)
+    {
+        S7Session Session = AsyncSession();
+        if (Session==null)
+            return CompletableFuture.completedFuture(errTCPConnectionFailed);
+        long Started = System.nanoTime();
+        return Track(Session.Connect().thenCompose(Error -> Error!=0 ? CompletableFuture.completedFuture(Error) : Session.WriteArea(Area, DBNumber, Start, Amount, Data)), Started);
+    }
+    
+    /**
+     * Asynchronous DBGet() : completes with the whole DB, or exceptionally with a S7Exception.
+     */
+    public CompletableFuture<byte[]> DBGetAsync(int DBNumber)
+    {
+        S7Session Session = AsyncSession();
+        if (Session==null)
+            return S7Session.Failed(errTCPConnectionFailed);
+        long Started = System.nanoTime();
+        return Track(Session.Connect().thenCompose(Error -> Error!=0 ? S7Session.Failed(Error) : Session.DBGet(DBNumber)), Started);
+    }
+    
+    /**
+     * Asynchronous ReadSZL() : completes with 0 or the error code.
+     */
+    public CompletableFuture<Integer> ReadSZLAsync(int ID, int Index, S7Szl SZL)
+    {
+        S7Session Session = AsyncSession();
+        if (Session==null)
+            return CompletableFuture.completedFuture(errTCPConnectionFailed);
+        long Started = System.nanoTime();
+        return Track(Session.Connect().thenCompose(Error -> Error!=0 ? CompletableFuture.completedFuture(Error) : Session.ReadSZL(ID, Index, SZL)), Started);
+    }
+    
+    // Ends an asynchronous logical call in the metrics when it completes
+    private <T> CompletableFuture<T> Track(CompletableFuture<T> Call, long Started)
+    {
+        return Call.whenComplete((Result, Error) -> Metrics.Call(Started, Error!=null ? S7Exception.ErrorCode(Error) : ((Result instanceof Integer) ? (Integer)Result : 0)));
+    }
+   
+    // Writes the 12 bytes variable specification of an item at Pos
+    private static void SetVarSpec(byte[] Buffer, int Pos, S7DataItem Item, int WordLen)
+    {
+        int Address;
+        Buffer[Pos]   = (byte) 0x12; // Var spec.
+        Buffer[Pos+1] = (byte) 0x0a; // Length of remaining bytes
+        Buffer[Pos+2] = (byte) 0x10; // Syntax ID
+        Buffer[Pos+3] = (byte) WordLen;
+        S7.SetWordAt(Buffer, Pos+4, Item.Amount);
+        if (Item.Area==S7.S7AreaDB)
+            S7.SetWordAt(Buffer, Pos+6, Item.DBNumber);
+        else
+            S7.SetWordAt(Buffer, Pos+6, 0);
+        Buffer[Pos+8] = (byte) Item.Area;
+        // Bit, timers and counters are addressed directly, the others as bit address
+        if ((WordLen==S7WLBit) || (WordLen==S7WLCounter) || (WordLen==S7WLTimer))
+            Address = Item.Start;
+        else
+            Address = Item.Start<<3;
+        Buffer[Pos+11] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[Pos+10] = (byte) (Address & 0x0FF);
+        Address = Address >> 8;
+        Buffer[Pos+9]  = (byte) (Address & 0x0FF);
+    }
+    
+    // Timers and counters always use their own transport size
+    static int ItemWordLen(S7DataItem Item)
+    {
+        if (Item.Area==S7.S7AreaCT)
+            return S7WLCounter;
+        if (Item.Area==S7.S7AreaTM)
+            return S7WLTimer;
+        return Item.WordLen;
+    }
+    
+    /**
+     * Reads several scattered variables, packing as many items as the negotiated
+     * PDU allows into each telegram (the request is split automatically).
+     * 
+     * @param Items      Items to read, each Result receives its own outcome
+     * @param ItemsCount How many items of the array are to be read
+     * @return 0 if all the telegrams were exchanged (check each Item.Result), else the error
+     */
+    public int ReadMultiVars(S7DataItem[] Items, int ItemsCount)
+    {
+        int First = 0;
+        
+        LastError=0;
+        if ((Items==null) || (ItemsCount<0) || (ItemsCount>Items.length))
+            return LastError = errS7InvalidParams;
+        
+        long Started = System.nanoTime();
+        
+        while ((First<ItemsCount) && (LastError==0))
+        {
+            int Count;
+            int ResSize = 12 + 2;  // S7 Ack Header (12) + Function + Items count
+            
+            // Items that can't fit a PDU by themselves are read with ReadArea (chunked)
+            S7DataItem Item = Items[First];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
             {
-                Address = Start;
-                Length = DataSize;
-                if (Area==S7.S7AreaCT)
-                    PDU[22]=S7WLCounter;
-                else
-                    PDU[22]=S7WLTimer;
+                Item.Result = errS7InvalidParams;
+                First++;
+                continue;
             }
-            else
+            if (ResSize + 4 + ItemSize > _PDULength)
             {
-                Address = Start<<3;
-                Length  = DataSize<<3;
+                if (ItemWordLen(Item)==S7WLByte)
+                    Item.Result = DoReadArea(Item.Area, Item.DBNumber, Item.Start, ItemSize, Item.Data, Item.DataOffset, null);
+                else
+                    Item.Result = errS7InvalidDataSize;
+                // Only a failure of the transport stops here
+                if ((LastError==errS7DataRead) || (LastError==errS7InvalidPDU))
+                    LastError = 0;
+                if (LastError==0)
+                    First++;
+                continue;
             }
-            // Num elements
-            S7.SetWordAt(PDU,23,NumElements);
-            // Address into the PLC
-            PDU[30] = (byte) (Address & 0x0FF);
-            Address = Address >> 8;
-            PDU[29] = (byte) (Address & 0x0FF);
-            Address = Address >> 8;
-            PDU[28] = (byte) (Address & 0x0FF);
-            // Length
-            S7.SetWordAt(PDU,33,Length);
             
-            // Copies the Data
-            System.arraycopy(Data, Offset, PDU, 35, DataSize);
-                        
-            SendPacket(PDU, IsoSize);
+            // Collects the items of this telegram
+            Count = ReadVarsFit(Items, First, ItemsCount, _PDULength);
+            if (Count>0)
+                MultiRead(Items, First, Count);
             if (LastError==0)
+                First+=Count;
+        }
+        
+        // Remaining items were not read because of the transport error
+        if (LastError!=0)
+        {
+            for (int c = First; c < ItemsCount; c++)
+                Items[c].Result = LastError;
+        }
+        return EndCall(Started);
+    }
+    
+    // How many items, from First on, fit a single read var telegram (request and reply)
+    static int ReadVarsFit(S7DataItem[] Items, int First, int ItemsCount, int PDULength)
+    {
+        int Count = 0;
+        int ReqSize = 10 + 2;  // S7 Header (10) + Function + Items count
+        int ResSize = 12 + 2;  // S7 Ack Header (12) + Function + Items count
+        
+        while ((First+Count<ItemsCount) && (Count<MaxVars))
+        {
+            S7DataItem Item = Items[First+Count];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
+                break;
+            int ItemRes = 4 + ItemSize + (ItemSize & 0x01); // Header + Data + Pad byte
+            if ((ReqSize + Size_VarSpec > PDULength) || (ResSize + ItemRes > PDULength))
+                break;
+            ReqSize+=Size_VarSpec;
+            ResSize+=ItemRes;
+            Count++;
+        }
+        return Count;
+    }
+    
+    private void MultiRead(S7DataItem[] Items, int First, int Count)
+    {
+        int Length;
+        
+        SendPacket(PDU, MultiReadTelegram(PDU, Items, First, Count, NextPduRef(1)));
+        if (LastError!=0)
+            return;
+        
+        Length=RecvIsoPacket();
+        if (LastError!=0)
+            return;
+        
+        LastError=MultiReadReply(PDU, Length, Items, First, Count);
+    }
+    
+    // Builds into Buffer a read var telegram of Count items, returns its size
+    static int MultiReadTelegram(byte[] Buffer, S7DataItem[] Items, int First, int Count, int PduRef)
+    {
+        int IsoSize = Size_MV + Count*Size_VarSpec;
+        
+        // Setup the telegram : S7 header of S7_RW then the var specs
+        System.arraycopy(S7_RW, 0, Buffer, 0, Size_MV);
+        S7.SetWordAt(Buffer, 2, IsoSize);
+        S7.SetWordAt(Buffer, 11, PduRef);
+        S7.SetWordAt(Buffer, 13, 2 + Count*Size_VarSpec); // Parameters Length
+        S7.SetWordAt(Buffer, 15, 0);                      // Data Length
+        Buffer[17] = (byte) 0x04;                         // Function 4 Read Var
+        Buffer[18] = (byte) Count;
+        for (int c = 0; c < Count; c++)
+            SetVarSpec(Buffer, Size_MV + c*Size_VarSpec, Items[First+c], ItemWordLen(Items[First+c]));
+        return IsoSize;
+    }
+    
+    // Splits the reply of a read var telegram into the items, returns the transport error (if any)
+    static int MultiReadReply(byte[] Buffer, int Length, S7DataItem[] Items, int First, int Count)
+    {
+        if (Length<21 || (S7.GetWordAt(Buffer,17)!=0) || (Buffer[20]!=(byte)Count))
+        {
+            for (int c = 0; c < Count; c++)
+                Items[First+c].Result = errS7DataRead;
+            if (Length<21)
+                return errS7InvalidPDU;
+            return 0;
+        }
+        
+        int Offset = 21;
+        for (int c = 0; c < Count; c++)
+        {
+            S7DataItem Item = Items[First+c];
+            if (Offset+4>Length)
             {
-                Length=RecvIsoPacket();
-                if (LastError==0)
+                Item.Result = errS7InvalidPDU;
+                continue;
+            }
+            int ItemError = CpuItemError(Buffer[Offset]);
+            int TransportSize = Buffer[Offset+1];
+            int ItemSize = S7.GetWordAt(Buffer, Offset+2);
+            // Bit, Byte/Word/DWord, Integer lengths are expressed in bits
+            if ((TransportSize==0x03) || (TransportSize==0x04) || (TransportSize==0x05))
+                ItemSize = (ItemSize + 7) >> 3;
+            
+            if (ItemError==0)
+            {
+                if ((ItemSize==Item.DataSize()) && (Offset+4+ItemSize<=Length))
                 {
-                    if (Length==22)
-                    {
-                        if ((S7.GetWordAt(PDU,17)!=0) || (PDU[21]!=(byte)0xFF))
-                            LastError = errS7DataWrite;
-                    }
-                    else
-                        LastError = errS7InvalidPDU;
+                    System.arraycopy(Buffer, Offset+4, Item.Data, Item.DataOffset, ItemSize);
+                    Item.Result = 0;
                 }
+                else
+                    Item.Result = errS7InvalidDataSize;
+                Offset += 4 + ItemSize;
+                // Every item but the last is padded to an even length
+                if ((ItemSize & 0x01)!=0)
+                    Offset++;
+            }
+            else
+            {
+                Item.Result = ItemError;
+                Offset += 4;
             }
-
-            Offset+=DataSize;
-            TotElements -= NumElements;
-            Start += NumElements*WordSize;
         }
-        return LastError;
+        return 0;
     }
-   
-    public int GetAgBlockInfo(int BlockType, int BlockNumber, S7BlockInfo Block)
+    
+    // Transport size and length of the data part of a write var item
+    private static int DataTransportSize(int WordLen)
     {
-    	int Length;
+        switch (WordLen)
+        {
+            case S7WLBit     : return 0x03;
+            case S7WLInt     :
+            case S7WLDInt    : return 0x05;
+            case S7WLReal    : return 0x07;
+            case S7WLChar    :
+            case S7WLCounter :
+            case S7WLTimer   : return 0x09;
+            default          : return 0x04;
+        }
+    }
+    
+    /**
+     * Writes several scattered variables, packing as many items (var specs and data)
+     * as the negotiated PDU allows into each telegram (the request is split automatically).
+     * 
+     * @param Items      Items to write, each Result receives its own outcome
+     * @param ItemsCount How many items of the array are to be written
+     * @return 0 if all the telegrams were exchanged (check each Item.Result), else the error
+     */
+    public int WriteMultiVars(S7DataItem[] Items, int ItemsCount)
+    {
+        int First = 0;
+        
         LastError=0;
+        if ((Items==null) || (ItemsCount<0) || (ItemsCount>Items.length))
+            return LastError = errS7InvalidParams;
+        
+        long Started = System.nanoTime();
+        
+        while ((First<ItemsCount) && (LastError==0))
+        {
+            int Count;
+            int ReqSize = 10 + 2;  // S7 Header (10) + Function + Items count
+            
+            // Items that can't fit a PDU by themselves are written with WriteArea (chunked)
+            S7DataItem Item = Items[First];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
+            {
+                Item.Result = errS7InvalidParams;
+                First++;
+                continue;
+            }
+            if (ReqSize + Size_VarSpec + 4 + ItemSize > _PDULength)
+            {
+                if (ItemWordLen(Item)==S7WLByte)
+                    Item.Result = DoWriteArea(Item.Area, Item.DBNumber, Item.Start, ItemSize, Item.Data, Item.DataOffset, null);
+                else
+                    Item.Result = errS7InvalidDataSize;
+                // Only a failure of the transport stops here
+                if ((LastError==errS7DataWrite) || (LastError==errS7InvalidPDU))
+                    LastError = 0;
+                if (LastError==0)
+                    First++;
+                continue;
+            }
+            
+            // Collects the items of this telegram
+            Count = WriteVarsFit(Items, First, ItemsCount, _PDULength);
+            if (Count>0)
+                MultiWrite(Items, First, Count);
+            if (LastError==0)
+                First+=Count;
+        }
+        
+        // Remaining items were not written because of the transport error
+        if (LastError!=0)
+        {
+            for (int c = First; c < ItemsCount; c++)
+                Items[c].Result = LastError;
+        }
+        return EndCall(Started);
+    }
+    
+    // How many items, from First on, fit a single write var telegram
+    static int WriteVarsFit(S7DataItem[] Items, int First, int ItemsCount, int PDULength)
+    {
+        int Count = 0;
+        int ReqSize = 10 + 2;  // S7 Header (10) + Function + Items count
+        
+        while ((First+Count<ItemsCount) && (Count<MaxVars))
+        {
+            S7DataItem Item = Items[First+Count];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
+                break;
+            int ItemReq = Size_VarSpec + 4 + ItemSize + (ItemSize & 0x01); // Var spec + Header + Data + Pad byte
+            if (ReqSize + ItemReq > PDULength)
+                break;
+            ReqSize+=ItemReq;
+            Count++;
+        }
+        return Count;
+    }
+    
+    private void MultiWrite(S7DataItem[] Items, int First, int Count)
+    {
+        int Length;
+        
+        SendPacket(PDU, MultiWriteTelegram(PDU, Items, First, Count, NextPduRef(1)));
+        if (LastError!=0)
+            return;
+        
+        Length=RecvIsoPacket();
+        if (LastError!=0)
+            return;
+        
+        LastError=MultiWriteReply(PDU, Length, Items, First, Count);
+    }
+    
+    // Builds into Buffer a write var telegram of Count items, returns its size
+    static int MultiWriteTelegram(byte[] Buffer, S7DataItem[] Items, int First, int Count, int PduRef)
+    {
+        int ParLength = 2 + Count*Size_VarSpec;
+        int Offset = Size_MV + Count*Size_VarSpec;
+        
+        // Setup the telegram : S7 header of S7_RW then the var specs
+        System.arraycopy(S7_RW, 0, Buffer, 0, Size_MV);
+        S7.SetWordAt(Buffer, 11, PduRef);
+        Buffer[17] = (byte) 0x05;                         // Function 5 Write Var
+        Buffer[18] = (byte) Count;
+        for (int c = 0; c < Count; c++)
+            SetVarSpec(Buffer, Size_MV + c*Size_VarSpec, Items[First+c], ItemWordLen(Items[First+c]));
+        
+        // Then the data of each item
+        for (int c = 0; c < Count; c++)
+        {
+            S7DataItem Item = Items[First+c];
+            int WordLen = ItemWordLen(Item);
+            int TransportSize = DataTransportSize(WordLen);
+            int ItemSize = Item.DataSize();
+            
+            Buffer[Offset]   = (byte) 0x00;
+            Buffer[Offset+1] = (byte) TransportSize;
+            if ((TransportSize==0x03) || (TransportSize==0x07) || (TransportSize==0x09))
+                S7.SetWordAt(Buffer, Offset+2, WordLen==S7WLBit ? 1 : ItemSize);
+            else
+                S7.SetWordAt(Buffer, Offset+2, ItemSize<<3);
+            System.arraycopy(Item.Data, Item.DataOffset, Buffer, Offset+4, ItemSize);
+            Offset += 4 + ItemSize;
+            // Every item but the last is padded to an even length
+            if (((ItemSize & 0x01)!=0) && (c<Count-1))
+                Buffer[Offset++] = 0x00;
+        }
+        
+        S7.SetWordAt(Buffer, 2, Offset);                      // Whole telegram Size
+        S7.SetWordAt(Buffer, 13, ParLength);                  // Parameters Length
+        S7.SetWordAt(Buffer, 15, Offset - Size_MV - Count*Size_VarSpec); // Data Length
+        return Offset;
+    }
+    
+    // Gets the outcome of each item from the reply of a write var telegram, returns the transport error (if any)
+    static int MultiWriteReply(byte[] Buffer, int Length, S7DataItem[] Items, int First, int Count)
+    {
+        if (Length<21 || (S7.GetWordAt(Buffer,17)!=0) || (Buffer[20]!=(byte)Count))
+        {
+            for (int c = 0; c < Count; c++)
+                Items[First+c].Result = errS7DataWrite;
+            if (Length<21)
+                return errS7InvalidPDU;
+            return 0;
+        }
+        
+        for (int c = 0; c < Count; c++)
+        {
+            if (21+c<Length)
+                Items[First+c].Result = CpuItemError(Buffer[21+c]);
+            else
+                Items[First+c].Result = errS7InvalidPDU;
+        }
+        return 0;
+    }
+    
+    // Builds into Buffer the get block info telegram, returns its size
+    static int BlockInfoTelegram(byte[] Buffer, int BlockType, int BlockNumber)
+    {
+        System.arraycopy(S7_BI, 0, Buffer, 0, S7_BI.length);
         // Block Type
-        S7_BI[30] = (byte) BlockType;
+        Buffer[30] = (byte) BlockType;
         // Block Number
-        S7_BI[31]=(byte) ((BlockNumber / 10000)+0x30);
+        Buffer[31]=(byte) ((BlockNumber / 10000)+0x30);
         BlockNumber=BlockNumber % 10000;
-        S7_BI[32]=(byte) ((BlockNumber / 1000)+0x30);
+        Buffer[32]=(byte) ((BlockNumber / 1000)+0x30);
         BlockNumber=BlockNumber % 1000;
-        S7_BI[33]=(byte) ((BlockNumber / 100)+0x30);
+        Buffer[33]=(byte) ((BlockNumber / 100)+0x30);
         BlockNumber=BlockNumber % 100;
-        S7_BI[34]=(byte) ((BlockNumber / 10)+0x30);
+        Buffer[34]=(byte) ((BlockNumber / 10)+0x30);
         BlockNumber=BlockNumber % 10;
-        S7_BI[35]=(byte) ((BlockNumber / 1)+0x30);
-        
-        SendPacket(S7_BI);
+        Buffer[35]=(byte) ((BlockNumber / 1)+0x30);
+        return S7_BI.length;
+    }
+    
+    // Checks the reply of a get block info and updates Block, returns the error
+    static int BlockInfoReply(byte[] Buffer, int Length, S7BlockInfo Block)
+    {
+        if (Length <= 32) // the minimum expected
+            return errS7InvalidPDU;
+        if ((S7.GetWordAt(Buffer,27)!=0) || (Buffer[29]!=(byte)0xFF))
+            return errS7FunctionError;
+        // The info block is 96 bytes, the reply may be shorter (a copy of the frame received)
+        if (Buffer.length<42+96)
+            Buffer=Arrays.copyOf(Buffer, 42+96);
+        Block.Update(Buffer, 42);
+        return 0;
+    }
+    
+    public int GetAgBlockInfo(int BlockType, int BlockNumber, S7BlockInfo Block)
+    {
+        long Started = System.nanoTime();
+        DoGetAgBlockInfo(BlockType, BlockNumber, Block);
+        return EndCall(Started);
+    }
+    
+    // GetAgBlockInfo without recording the call (see EndCall)
+    private int DoGetAgBlockInfo(int BlockType, int BlockNumber, S7BlockInfo Block)
+    {
+    	int Length;
+        LastError=0;
+        SendPacket(PDU, BlockInfoTelegram(PDU, BlockType, BlockNumber));
         if (LastError==0)
         {
             Length=RecvIsoPacket();
-            if (Length > 32) // the minimum expected
-            {
-                if ((S7.GetWordAt(PDU,27)==0) && (PDU[29]==(byte)0xFF))
-                {
-                    Block.Update(PDU, 42);
-                }
-                else
-                    LastError = errS7FunctionError;
-            }
-            else
-                LastError = errS7InvalidPDU;
+            if (LastError==0)
+                LastError = BlockInfoReply(PDU, Length, Block);
         }
         
         return LastError;
@@ -846,106 +1807,103 @@ public class S7Client
     public int DBGet(int DBNumber, byte[] Buffer, IntByRef SizeRead)
     {
         S7BlockInfo Block = new S7BlockInfo();
+        long Started = System.nanoTime();
         // Query the DB Length
-        LastError = GetAgBlockInfo(S7.Block_DB, DBNumber, Block);
+        LastError = DoGetAgBlockInfo(S7.Block_DB, DBNumber, Block);
         if (LastError==0)
         {
             int SizeToRead = Block.MC7Size();
             // Checks the room
             if (SizeToRead<=Buffer.length)
             {
-                LastError=ReadArea(S7.S7AreaDB, DBNumber, 0, SizeToRead, Buffer);
+                LastError=DoReadArea(S7.S7AreaDB, DBNumber, 0, SizeToRead, Buffer, 0, null);
                 if (LastError==0)
                     SizeRead.Value=SizeToRead;
             }
             else
                 LastError=errS7BufferTooSmall;
         }
-        return LastError;
+        return EndCall(Started);
     }  
     
+    // Builds into Buffer the request of the first SZL slice, returns its size
+    static int SzlFirstTelegram(byte[] Buffer, int ID, int Index, int Seq_out)
+    {
+        System.arraycopy(S7_SZL_FIRST, 0, Buffer, 0, S7_SZL_FIRST.length);
+        S7.SetWordAt(Buffer, 11, Seq_out);
+        S7.SetWordAt(Buffer, 29, ID);
+        S7.SetWordAt(Buffer, 31, Index);
+        return S7_SZL_FIRST.length;
+    }
+    
+    // Builds into Buffer the request of the next SZL slice, returns its size
+    static int SzlNextTelegram(byte[] Buffer, byte Seq_in, int Seq_out)
+    {
+        System.arraycopy(S7_SZL_NEXT, 0, Buffer, 0, S7_SZL_NEXT.length);
+        S7.SetWordAt(Buffer, 11, Seq_out);
+        Buffer[24] = Seq_in;
+        return S7_SZL_NEXT.length;
+    }
+    
+    // Appends to SZL the slice of the reply, returns the error
+    // (then Buffer[26]==0 : it was the last slice, Buffer[24] : the slice sequence)
+    static int SzlReply(byte[] Buffer, int Length, boolean First, S7Szl SZL)
+    {
+        int DataSZL;
+        if (Length <= 32) // the minimum expected
+            return errS7InvalidPDU;
+        if ((S7.GetWordAt(Buffer,27)!=0) || (Buffer[29]!=(byte)0xFF))
+            return errS7FunctionError;
+        if (First)
+        {
+            // Gets Amount of this slice
+            DataSZL=S7.GetWordAt(Buffer,31)-8; // Skips extra params (ID, Index ...)
+            SZL.LENTHDR=S7.GetWordAt(Buffer, 37);
+            SZL.N_DR=S7.GetWordAt(Buffer, 39);
+            SZL.Copy(Buffer, 41, SZL.DataSize, DataSZL);
+        }
+        else
+        {
+            // Gets Amount of this slice
+            DataSZL=S7.GetWordAt(Buffer,31); 
+            SZL.Copy(Buffer, 37, SZL.DataSize, DataSZL);
+        }
+        SZL.DataSize+=DataSZL;
+        return 0;
+    }
+    
     public int ReadSZL(int ID, int Index, S7Szl SZL)
     {
     	int Length;
-        int DataSZL;
-        int Offset = 0;
         boolean Done = false;
         boolean First = true;
         byte Seq_in =0x00;
         int Seq_out =0x0000;
+        long Started = System.nanoTime();
         
         LastError=0;
         SZL.DataSize=0;
         do
         {
             if (First)
-            {
-                S7.SetWordAt(S7_SZL_FIRST, 11, ++Seq_out);
-                S7.SetWordAt(S7_SZL_FIRST, 29, ID);
-                S7.SetWordAt(S7_SZL_FIRST, 31, Index);
-                SendPacket(S7_SZL_FIRST);                
-            }
+                SendPacket(PDU, SzlFirstTelegram(PDU, ID, Index, ++Seq_out));
             else
-            {
-                S7.SetWordAt(S7_SZL_NEXT, 11, ++Seq_out);
-                PDU[24] = (byte)Seq_in;
-                SendPacket(S7_SZL_NEXT);                
-            }
+                SendPacket(PDU, SzlNextTelegram(PDU, Seq_in, ++Seq_out));
             if (LastError!=0)
-                return LastError;
+                return EndCall(Started);
             
             Length=RecvIsoPacket();
             if (LastError==0)
             {
-                if (First)
-                {
-                    if (Length > 32) // the minimum expected
-                    {
-                        if ((S7.GetWordAt(PDU,27)==0) && (PDU[29]==(byte)0xFF))
-                        {
-                            // Gets Amount of this slice
-                            DataSZL=S7.GetWordAt(PDU,31)-8; // Skips extra params (ID, Index ...)
-                            Done=PDU[26]==0x00;
-                            Seq_in=(byte)PDU[24]; // Slice sequence
-                            
-                            SZL.LENTHDR=S7.GetWordAt(PDU, 37);
-                            SZL.N_DR=S7.GetWordAt(PDU, 39);
-                            SZL.Copy(PDU, 41, Offset, DataSZL);                       
-                            Offset+=DataSZL;
-                            SZL.DataSize+=DataSZL;
-                        }
-                        else
-                            LastError = errS7FunctionError;
-                    }
-                    else
-                        LastError = errS7InvalidPDU;
-                }
-                else
-                {
-                    if (Length > 32) // the minimum expected
-                    {
-                        if ((S7.GetWordAt(PDU,27)==0) && (PDU[29]==(byte)0xFF))
-                        {
-                            // Gets Amount of this slice
-                            DataSZL=S7.GetWordAt(PDU,31); 
-                            Done=PDU[26]==0x00;
-                            Seq_in=(byte)PDU[24]; // Slice sequence
-                            SZL.Copy(PDU, 37, Offset, DataSZL);                       
-                            Offset+=DataSZL;
-                            SZL.DataSize+=DataSZL;
-                        }
-                        else
-                            LastError = errS7FunctionError;
-                    }
-                    else
-                        LastError = errS7InvalidPDU;
-                }
+                LastError=SzlReply(PDU, Length, First, SZL);
+                Done=PDU[26]==0x00;
+                Seq_in=PDU[24]; // Slice sequence
             }            
             First=false;
         }            
         while(!Done && (LastError==0));
         
-        return LastError;
+        return EndCall(Started);
     }
     
     
@@ -0,0 +1,64 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+/**
+ * One variable of a ReadMultiVars / WriteMultiVars request
+ * (the Java counterpart of the Snap7 TS7DataItem struct)
+ */
+public class S7DataItem {
+    
+    public int Area;      // S7AreaPE, S7AreaPA, S7AreaMK, S7AreaDB, S7AreaCT, S7AreaTM
+    public int WordLen;   // S7Client.S7WLxxx transport size
+    public int DBNumber;  // DB Number (if any, else 0)
+    public int Start;     // Offset to start (a bit address if WordLen==S7WLBit)
+    public int Amount;    // Amount of words to read/write
+    public byte[] Data;   // Destination (read) or source (write) buffer
+    public int DataOffset;// Where the item starts into Data (several items may share one buffer)
+    public int Result;    // Per item result code (0 = success)
+    
+    public S7DataItem()
+    {
+        // Placeholder for future implementations
+    }
+    
+    public S7DataItem(int Area, int WordLen, int DBNumber, int Start, int Amount, byte[] Data)
+    {
+        this.Area=Area;
+        this.WordLen=WordLen;
+        this.DBNumber=DBNumber;
+        this.Start=Start;
+        this.Amount=Amount;
+        this.Data=Data;
+    }
+    
+    public S7DataItem(int Area, int WordLen, int DBNumber, int Start, int Amount, byte[] Data, int DataOffset)
+    {
+        this(Area, WordLen, DBNumber, Start, Amount, Data);
+        this.DataOffset=DataOffset;
+    }
+    
+    // Size in bytes of the data exchanged for this item
+    public int DataSize()
+    {
+        return S7Client.DataSizeByte(WordLen)*Amount;
+    }
+}
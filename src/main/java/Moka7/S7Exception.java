@@ -0,0 +1,51 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Completes exceptionally the asynchronous requests of a S7Session :
+ * carries the same error code the blocking S7Client would have returned
+ */
+public class S7Exception extends Exception {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public final int ErrorCode;
+    
+    public S7Exception(int ErrorCode)
+    {
+        super(S7Client.ErrorText(ErrorCode));
+        this.ErrorCode=ErrorCode;
+    }
+    
+    // Error code of a failed future (unwraps CompletionException/ExecutionException)
+    public static int ErrorCode(Throwable Error)
+    {
+        while (((Error instanceof CompletionException) || (Error instanceof ExecutionException)) && (Error.getCause()!=null))
+            Error=Error.getCause();
+        if (Error instanceof S7Exception)
+            return ((S7Exception)Error).ErrorCode;
+        return S7Client.errTCPDataRecv;
+    }
+}
@@ -0,0 +1,196 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wire metrics of a S7Client (or S7Session) : telegrams, bytes, latencies and errors.
+ * The counters are LongAdder : recording is lock-free and cheap on the hot path,
+ * reading takes a Snapshot. A Metrics created with a parent forwards every record to it,
+ * so that the clients of the same PLC can be aggregated.
+ */
+public class S7Metrics {
+    
+    // Error codes of S7Client are small : one slot each, slot 0 collects the others
+    private static final int ErrorSlots = 0x20;
+    
+    private final S7Metrics Parent;
+    private final LongAdder Calls = new LongAdder();
+    private final LongAdder CallNanos = new LongAdder();
+    private final LongAdder Telegrams = new LongAdder();
+    private final LongAdder Replies = new LongAdder();
+    private final LongAdder BytesSent = new LongAdder();
+    private final LongAdder BytesReceived = new LongAdder();
+    private final LongAdder WaitNanos = new LongAdder();
+    private final LongAdder TransferNanos = new LongAdder();
+    private final LongAdder Timeouts = new LongAdder();
+    private final LongAdder[] Errors = new LongAdder[ErrorSlots];
+    
+    public S7Metrics()
+    {
+        this(null);
+    }
+    
+    public S7Metrics(S7Metrics Parent)
+    {
+        this.Parent=Parent;
+        for (int c = 0; c < ErrorSlots; c++)
+            Errors[c]=new LongAdder();
+    }
+    
+    // A telegram of Bytes has been sent
+    void Sent(int Bytes)
+    {
+        Telegrams.increment();
+        BytesSent.add(Bytes);
+        if (Parent!=null)
+            Parent.Sent(Bytes);
+    }
+    
+    // A reply of Bytes has been received : Wait = send -> first byte, Transfer = first byte -> complete
+    void Received(int Bytes, long Wait, long Transfer)
+    {
+        Replies.increment();
+        BytesReceived.add(Bytes);
+        WaitNanos.add(Wait);
+        TransferNanos.add(Transfer);
+        if (Parent!=null)
+            Parent.Received(Bytes, Wait, Transfer);
+    }
+    
+    void Timeout()
+    {
+        Timeouts.increment();
+        if (Parent!=null)
+            Parent.Timeout();
+    }
+    
+    // A logical call (which may span several telegrams) started at Started has ended with Error
+    void Call(long Started, int Error)
+    {
+        Calls.increment();
+        CallNanos.add(System.nanoTime()-Started);
+        if (Error!=0)
+            Errors[(Error>0) && (Error<ErrorSlots) ? Error : 0].increment();
+        if (Parent!=null)
+            Parent.Call(Started, Error);
+    }
+    
+    /**
+     * Reads the counters. The values are not taken atomically as a whole
+     * (a call in progress may be partially accounted), each one is exact.
+     */
+    public Snapshot Snapshot()
+    {
+        long[] ErrorCount = new long[ErrorSlots];
+        for (int c = 0; c < ErrorSlots; c++)
+            ErrorCount[c]=Errors[c].sum();
+        return new Snapshot(Calls.sum(), CallNanos.sum(), Telegrams.sum(), Replies.sum(), BytesSent.sum(),
+                BytesReceived.sum(), WaitNanos.sum(), TransferNanos.sum(), Timeouts.sum(), ErrorCount);
+    }
+    
+    /**
+     * Immutable values of the counters
+     */
+    public static final class Snapshot {
+        
+        public final long Calls;
+        public final long CallNanos;
+        public final long Telegrams;
+        public final long Replies;
+        public final long BytesSent;
+        public final long BytesReceived;
+        public final long WaitNanos;
+        public final long TransferNanos;
+        public final long Timeouts;
+        private final long[] Errors;
+        
+        Snapshot(long Calls, long CallNanos, long Telegrams, long Replies, long BytesSent,
+                long BytesReceived, long WaitNanos, long TransferNanos, long Timeouts, long[] Errors)
+        {
+            this.Calls=Calls;
+            this.CallNanos=CallNanos;
+            this.Telegrams=Telegrams;
+            this.Replies=Replies;
+            this.BytesSent=BytesSent;
+            this.BytesReceived=BytesReceived;
+            this.WaitNanos=WaitNanos;
+            this.TransferNanos=TransferNanos;
+            this.Timeouts=Timeouts;
+            this.Errors=Errors;
+        }
+        
+        // Number of calls ended with the given S7Client error code (0 = all the errors)
+        public long Errors(int Error)
+        {
+            if (Error==0)
+            {
+                long Total = 0;
+                for (long Count : Errors)
+                    Total+=Count;
+                return Total;
+            }
+            return Errors[(Error>0) && (Error<ErrorSlots) ? Error : 0];
+        }
+        
+        public double TelegramsPerCall()
+        {
+            return Calls==0 ? 0 : (double)Telegrams / Calls;
+        }
+        
+        public double AvgCallMillis()
+        {
+            return Calls==0 ? 0 : CallNanos / 1000000.0 / Calls;
+        }
+        
+        // Average time between the sending of a telegram and the first byte of its reply
+        public double AvgWaitMillis()
+        {
+            return Replies==0 ? 0 : WaitNanos / 1000000.0 / Replies;
+        }
+        
+        // Average time between the first and the last byte of a reply
+        public double AvgTransferMillis()
+        {
+            return Replies==0 ? 0 : TransferNanos / 1000000.0 / Replies;
+        }
+        
+        @Override
+        public String toString()
+        {
+            StringBuilder Text = new StringBuilder();
+            Text.append("Calls=").append(Calls)
+                .append(" Telegrams=").append(Telegrams)
+                .append(" Replies=").append(Replies)
+                .append(" BytesSent=").append(BytesSent)
+                .append(" BytesReceived=").append(BytesReceived)
+                .append(String.format(" Call=%.3fms Wait=%.3fms Transfer=%.3fms", AvgCallMillis(), AvgWaitMillis(), AvgTransferMillis()))
+                .append(" Timeouts=").append(Timeouts);
+            for (int c = 0; c < Errors.length; c++)
+            {
+                if (Errors[c]!=0)
+                    Text.append(" Error[0x").append(Integer.toHexString(c)).append("]=").append(Errors[c]);
+            }
+            return Text.toString();
+        }
+    }
+}
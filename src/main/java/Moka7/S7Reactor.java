@@ -0,0 +1,218 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non blocking transport shared by many S7Session : a few selector threads
+ * drive the sockets (handshake, PDU negotiation, read/write telegrams) of
+ * hundreds of PLCs, instead of one blocked thread per S7Client.
+ * 
+ * Each session is bound to one loop and all its state is touched only by
+ * the loop thread, the public calls of the session post tasks to it.
+ * A session failing unexpectedly is logged and closed (its pending requests
+ * fail), the other sessions of the loop go on.
+ */
+public class S7Reactor {
+    
+    private static final Logger Log = Logger.getLogger(S7Reactor.class.getName());
+    
+    private static final int TickMillis = 10; // Resolution of the timeouts
+    private static S7Reactor DefaultReactor;
+    
+    private final Loop[] Loops;
+    private final AtomicInteger NextLoop = new AtomicInteger();
+    
+    public S7Reactor(int Threads) throws IOException
+    {
+        Loops = new Loop[Math.max(1, Threads)];
+        for (int c = 0; c < Loops.length; c++)
+            Loops[c] = new Loop("S7Reactor-" + c);
+    }
+    
+    /**
+     * Reactor shared by the sessions that don't supply their own
+     * (one selector thread every 4 cores, at least 1)
+     */
+    public static synchronized S7Reactor Default()
+    {
+        if (DefaultReactor==null)
+        {
+            try {
+                DefaultReactor = new S7Reactor(Math.max(1, Runtime.getRuntime().availableProcessors() / 4));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return DefaultReactor;
+    }
+    
+    // Sessions are spread round robin among the loops
+    Loop Next()
+    {
+        return Loops[Math.floorMod(NextLoop.getAndIncrement(), Loops.length)];
+    }
+    
+    // Stops the selector threads, the sessions still open are closed
+    public void Close()
+    {
+        for (Loop L : Loops)
+            L.Close();
+    }
+    
+    static final class Loop implements Runnable
+    {
+        final Selector Selector;
+        private final ConcurrentLinkedQueue<Task> Tasks = new ConcurrentLinkedQueue<>();
+        private final ArrayList<S7Session> Sessions = new ArrayList<>(); // Loop thread only
+        private final Thread Worker;
+        private volatile boolean Running = true;
+        
+        Loop(String Name) throws IOException
+        {
+            Selector = java.nio.channels.Selector.open();
+            Worker = new Thread(this, Name);
+            Worker.setDaemon(true);
+            Worker.start();
+        }
+        
+        // Runs the task of the session on the loop thread
+        void Execute(S7Session Session, Runnable Action)
+        {
+            Tasks.add(new Task(Session, Action));
+            if (Thread.currentThread()!=Worker)
+                Selector.wakeup();
+        }
+        
+        // Loop thread only : the session is ticked for its timeouts while open
+        void Attach(S7Session Session)
+        {
+            if (!Sessions.contains(Session))
+                Sessions.add(Session);
+        }
+        
+        void Detach(S7Session Session)
+        {
+            Sessions.remove(Session);
+        }
+        
+        void Close()
+        {
+            Running = false;
+            Selector.wakeup();
+        }
+        
+        @Override
+        public void run()
+        {
+            long NextTick = System.nanoTime();
+            while (Running)
+            {
+                try {
+                    Selector.select(TickMillis);
+                } catch (IOException | RuntimeException ex) {
+                    Log.log(Level.SEVERE, "S7Reactor select failed", ex);
+                }
+                
+                // A failing session must not stop the others : each step is guarded on its own
+                Iterator<SelectionKey> Keys = Selector.selectedKeys().iterator();
+                while (Keys.hasNext())
+                {
+                    SelectionKey Key = Keys.next();
+                    Keys.remove();
+                    S7Session Session = (S7Session) Key.attachment();
+                    try {
+                        if (Key.isValid())
+                            Session.Ready(Key);
+                    } catch (IOException | RuntimeException ex) {
+                        Fail(Session, ex);
+                    }
+                }
+                    
+                Task T;
+                while ((T = Tasks.poll())!=null)
+                {
+                    try {
+                        T.Action.run();
+                    } catch (RuntimeException ex) {
+                        Fail(T.Session, ex);
+                    }
+                }
+                    
+                long Now = System.nanoTime();
+                if (Now-NextTick>=0)
+                {
+                    for (int c = Sessions.size()-1; c >= 0; c--)
+                    {
+                        S7Session Session = Sessions.get(c);
+                        try {
+                            Session.Tick(Now);
+                        } catch (RuntimeException ex) {
+                            Fail(Session, ex);
+                        }
+                    }
+                    NextTick = Now + TickMillis * 1000000L;
+                }
+            }
+            
+            for (int c = Sessions.size()-1; c >= 0; c--)
+                Sessions.get(c).Close(S7Client.errTCPConnectionReset);
+            try {
+                Selector.close();
+            } catch (IOException ex) {
+            }
+        }
+        
+        // Logs the unexpected error of a session and closes it, its pending requests fail
+        private void Fail(S7Session Session, Throwable Error)
+        {
+            Log.log(Level.SEVERE, "S7Session " + Session + " failed, closed", Error);
+            try {
+                Session.Close(S7Client.errTCPConnectionReset);
+            } catch (RuntimeException ex) {
+                Log.log(Level.SEVERE, "S7Session " + Session + " close failed", ex);
+            }
+        }
+    }
+
+    // A task posted by a session to its loop
+    private static final class Task
+    {
+        final S7Session Session;
+        final Runnable Action;
+        
+        Task(S7Session Session, Runnable Action)
+        {
+            this.Session=Session;
+            this.Action=Action;
+        }
+    }
+}
@@ -0,0 +1,568 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lightweight, embeddable S7 server (PLC simulator) for tests and benchmarks.
+ * 
+ * It speaks ISO-on-TCP (RFC 1006), the PDU negotiation, read/write var (S7ANY)
+ * for the PE/PA/MK/DB/CT/TM areas, the SZL module identification (0x0011) and
+ * the block info of the DBs : enough for S7Client, S7Session and the PLC4X s7 driver.
+ * 
+ * The memory areas are byte arrays : registered with RegisterArea() or created
+ * on the fly (AutoArea). The replies can be delayed to simulate the PLC scan.
+ */
+public class S7Server {
+    
+    public static final int DefaultAreaSize = 65536;
+    
+    // Public fields
+    public boolean AutoArea = true;  // Unknown areas are created on first access (else error "not available")
+    
+    private int LocalPort = S7Client.ISOTCP;
+    private String LocalAddress = "127.0.0.1";
+    private int Latency = 0;         // Artificial delay of each reply (ms)
+    private int PduSize = S7Client.DefaultPduSizeRequested;
+    private int MaxJobs = 8;
+    private String OrderCode = "6ES7 288-1SR40-0AA0 ";
+    
+    private final Map<Long, byte[]> Areas = new ConcurrentHashMap<>();
+    private final AtomicLong Requests = new AtomicLong();
+    private volatile int PduRequested = 0;
+    private final Set<Socket> Clients = ConcurrentHashMap.newKeySet();
+    private ServerSocket Listener;
+    private ScheduledExecutorService Scheduler;
+    private volatile boolean Running = false;
+    
+    public S7Server()
+    {
+        // Placeholder for future implementations
+    }
+    
+    /**
+     * Port to listen (102 by default, 0 : any free port, see LocalPort() once started)
+     */
+    public void SetLocalPort(int Port)
+    {
+        LocalPort=Port;
+    }
+    
+    public int LocalPort()
+    {
+        return LocalPort;
+    }
+    
+    public void SetLocalAddress(String Address)
+    {
+        LocalAddress=Address;
+    }
+    
+    // Artificial delay of each reply (ms), simulates the PLC scan time
+    public void SetLatency(int Millis)
+    {
+        Latency=Math.max(0, Millis);
+    }
+    
+    // Max PDU accepted during the negotiation
+    public void SetPduSize(int Size)
+    {
+        PduSize=Math.max(S7Client.MinPduSizeRequested, Math.min(Size, S7Client.MaxPduSizeRequested));
+    }
+    
+    // Max parallel jobs (AmQ) accepted during the negotiation
+    public void SetMaxJobs(int Jobs)
+    {
+        MaxJobs=Math.max(1, Math.min(Jobs, 0x0FFFF));
+    }
+    
+    // Order code (MLFB) returned by the SZL 0x0011
+    public void SetOrderCode(String Code)
+    {
+        OrderCode=Code;
+    }
+    
+    // Telegrams served since the start
+    public long Requests()
+    {
+        return Requests.get();
+    }
+    
+    // Clients currently connected
+    public int ClientsCount()
+    {
+        return Clients.size();
+    }
+    
+    // PDU size requested by the client of the last negotiation (0 if none yet)
+    public int PduRequested()
+    {
+        return PduRequested;
+    }
+    
+    private static long AreaKey(int Area, int DBNumber)
+    {
+        return ((long)Area<<16) | (Area==S7.S7AreaDB ? DBNumber & 0x0FFFF : 0);
+    }
+    
+    /**
+     * Shares a memory area with the server : the array is read and written in place
+     * (so its contents can be prepared or checked by the test).
+     */
+    public void RegisterArea(int Area, int DBNumber, byte[] Data)
+    {
+        Areas.put(AreaKey(Area, DBNumber), Data);
+    }
+    
+    public void UnregisterArea(int Area, int DBNumber)
+    {
+        Areas.remove(AreaKey(Area, DBNumber));
+    }
+    
+    // The memory of an area (null if not registered and AutoArea is false)
+    public byte[] Area(int Area, int DBNumber)
+    {
+        if (AutoArea)
+            return Areas.computeIfAbsent(AreaKey(Area, DBNumber), k -> new byte[DefaultAreaSize]);
+        return Areas.get(AreaKey(Area, DBNumber));
+    }
+    
+    public int Start()
+    {
+        if (Running)
+            return 0;
+        try {
+            Listener = new ServerSocket();
+            Listener.setReuseAddress(true);
+            Listener.bind(new InetSocketAddress(InetAddress.getByName(LocalAddress), LocalPort));
+            LocalPort = Listener.getLocalPort();
+        } catch (IOException ex) {
+            return S7Client.errTCPConnectionFailed;
+        }
+        Scheduler = Executors.newSingleThreadScheduledExecutor(r -> Daemon(r, "S7Server-Replies"));
+        Running = true;
+        Daemon(this::Listen, "S7Server-" + LocalPort).start();
+        return 0;
+    }
+    
+    public void Stop()
+    {
+        Running = false;
+        try {
+            if (Listener!=null)
+                Listener.close();
+        } catch (IOException ex) {
+        }
+        if (Scheduler!=null)
+            Scheduler.shutdownNow();
+        // Drops the connected clients too, as a PLC going offline would
+        for (Socket Client : Clients)
+        {
+            try {
+                Client.close();
+            } catch (IOException ex) {
+            }
+        }
+        Clients.clear();
+    }
+    
+    private static Thread Daemon(Runnable Task, String Name)
+    {
+        Thread T = new Thread(Task, Name);
+        T.setDaemon(true);
+        return T;
+    }
+    
+    private void Listen()
+    {
+        while (Running)
+        {
+            try {
+                Socket Client = Listener.accept();
+                Client.setTcpNoDelay(true);
+                Clients.add(Client);
+                Daemon(() -> Serve(Client), "S7Server-Client").start();
+            } catch (IOException ex) {
+                // Closed by Stop()
+            }
+        }
+    }
+    
+    // One thread per client : reads the telegrams, the replies are sent now or after the latency
+    private void Serve(Socket Client)
+    {
+        try (Socket S = Client) {
+            DataInputStream In = new DataInputStream(S.getInputStream());
+            OutputStream Out = S.getOutputStream();
+            byte[] Frame = new byte[8192];
+            while (Running)
+            {
+                In.readFully(Frame, 0, 4);
+                int Size = S7.GetWordAt(Frame, 2);
+                if ((Size<S7Client.IsoHSize) || (Size>Frame.length))
+                    break;
+                In.readFully(Frame, 4, Size-4);
+                Requests.incrementAndGet();
+                
+                byte[] Reply = Reply(Frame, Size);
+                if (Reply==null)
+                    continue;
+                if ((Latency>0) && (Frame[5]!=(byte)0xE0))
+                    Scheduler.schedule(() -> Send(Out, Reply), Latency, TimeUnit.MILLISECONDS);
+                else
+                    Send(Out, Reply);
+            }
+        } catch (IOException ex) {
+            // Client gone
+        } finally {
+            Clients.remove(Client);
+        }
+    }
+    
+    private static void Send(OutputStream Out, byte[] Reply)
+    {
+        synchronized (Out)
+        {
+            try {
+                Out.write(Reply);
+                Out.flush();
+            } catch (IOException ex) {
+            }
+        }
+    }
+    
+    // Builds the reply of a request frame (null : nothing to answer)
+    private byte[] Reply(byte[] Frame, int Size)
+    {
+        // COTP Connection Request : confirms with the same parameters
+        if (Frame[5]==(byte)0xE0)
+        {
+            byte[] CC = new byte[Size];
+            System.arraycopy(Frame, 0, CC, 0, Size);
+            CC[5] = (byte)0xD0;
+            CC[6] = Frame[8];    // Dst Reference = Src Reference of the request
+            CC[7] = Frame[9];
+            CC[8] = 0x00;        // Our Src Reference
+            CC[9] = 0x01;
+            return CC;
+        }
+        // Only COTP Data with S7 payload
+        if ((Frame[5]!=(byte)0xF0) || (Size<17) || (Frame[7]!=0x32))
+            return null;
+        
+        int Ref = S7.GetWordAt(Frame, 11);
+        int ParLen = S7.GetWordAt(Frame, 13);
+        int DataLen = S7.GetWordAt(Frame, 15);
+        int Par = 17;
+        int Data = Par + ParLen;
+        if (Data + DataLen > Size)
+            return null;
+        
+        if (Frame[8]==0x01)      // Job
+        {
+            switch (Frame[Par])
+            {
+                case (byte)0xF0 : return Negotiate(Frame, Par, Ref);
+                case 0x04       : return ReadVar(Frame, Par, Ref);
+                case 0x05       : return WriteVar(Frame, Par, Data, Ref);
+                default         : return AckData(Ref, 0x81, 0x04, new byte[] {Frame[Par], 0x00}, new byte[0]); // Function not supported
+            }
+        }
+        if (Frame[8]==0x07)      // Userdata
+            return UserData(Frame, Par, Data, DataLen, Ref);
+        return null;
+    }
+    
+    // Ack data telegram (ISO header + S7 header + parameters + data)
+    private static byte[] AckData(int Ref, int ErrorClass, int ErrorCode, byte[] Params, byte[] Data)
+    {
+        int Size = 7 + 12 + Params.length + Data.length;
+        byte[] T = new byte[Size];
+        T[0]=0x03; S7.SetWordAt(T, 2, Size);
+        T[4]=0x02; T[5]=(byte)0xF0; T[6]=(byte)0x80;
+        T[7]=0x32; T[8]=0x03;
+        S7.SetWordAt(T, 11, Ref);
+        S7.SetWordAt(T, 13, Params.length);
+        S7.SetWordAt(T, 15, Data.length);
+        T[17]=(byte)ErrorClass; T[18]=(byte)ErrorCode;
+        System.arraycopy(Params, 0, T, 19, Params.length);
+        System.arraycopy(Data, 0, T, 19+Params.length, Data.length);
+        return T;
+    }
+    
+    private byte[] Negotiate(byte[] Frame, int Par, int Ref)
+    {
+        int Requested = S7.GetWordAt(Frame, Par+6);
+        PduRequested = Requested;
+        byte[] Params = new byte[8];
+        Params[0] = (byte)0xF0;
+        S7.SetWordAt(Params, 2, Math.min(MaxJobs, Math.max(1, S7.GetWordAt(Frame, Par+2))));
+        S7.SetWordAt(Params, 4, Math.min(MaxJobs, Math.max(1, S7.GetWordAt(Frame, Par+4))));
+        S7.SetWordAt(Params, 6, Math.min(PduSize, Requested));
+        return AckData(Ref, 0, 0, Params, new byte[0]);
+    }
+    
+    // Element size of a transport size (S7WLxxx)
+    private static int ElementSize(int WordLen)
+    {
+        int Size = S7Client.DataSizeByte(WordLen);
+        return Size>0 ? Size : 1;
+    }
+    
+    // Transport size of the data of the reply, and if its length is expressed in bits
+    private static int ReplyTransportSize(int WordLen)
+    {
+        switch (WordLen)
+        {
+            case S7Client.S7WLBit     : return 0x03;
+            case S7Client.S7WLInt     :
+            case S7Client.S7WLDInt    : return 0x05;
+            case S7Client.S7WLReal    : return 0x07;
+            case S7Client.S7WLChar    :
+            case S7Client.S7WLCounter :
+            case S7Client.S7WLTimer   : return 0x09;
+            default                   : return 0x04;
+        }
+    }
+    
+    // Return code of an item : 0xFF ok, 0x05 address out of range, 0x0A object does not exist
+    private int CheckItem(byte[] Memory, int WordLen, int Address, int Bytes)
+    {
+        if (Memory==null)
+            return 0x0A;
+        int ByteAddress = (WordLen==S7Client.S7WLBit) ? Address>>3 : Address;
+        if ((ByteAddress<0) || (ByteAddress+Bytes>Memory.length))
+            return 0x05;
+        return 0xFF;
+    }
+    
+    // Byte address into the area of a var spec (bits for S7WLBit)
+    private static int ItemAddress(byte[] Frame, int Spec, int WordLen)
+    {
+        int Address = ((Frame[Spec+9] & 0x0FF)<<16) | ((Frame[Spec+10] & 0x0FF)<<8) | (Frame[Spec+11] & 0x0FF);
+        if ((WordLen==S7Client.S7WLBit))
+            return Address;
+        if ((WordLen==S7Client.S7WLCounter) || (WordLen==S7Client.S7WLTimer))
+            return Address*2;  // Timers and counters are addressed by element
+        return Address>>3;
+    }
+    
+    private byte[] ReadVar(byte[] Frame, int Par, int Ref)
+    {
+        int Count = Frame[Par+1] & 0x0FF;
+        byte[] Data = new byte[PduSize];
+        int Offset = 0;
+        
+        for (int c = 0; c < Count; c++)
+        {
+            int Spec = Par + 2 + c*12;
+            int WordLen = Frame[Spec+3];
+            int Amount = S7.GetWordAt(Frame, Spec+4);
+            int DBNumber = S7.GetWordAt(Frame, Spec+6);
+            int Area = Frame[Spec+8] & 0x0FF;
+            int Address = ItemAddress(Frame, Spec, WordLen);
+            int Bytes = (WordLen==S7Client.S7WLBit) ? 1 : Amount*ElementSize(WordLen);
+            byte[] Memory = Area(Area, DBNumber);
+            int Code = CheckItem(Memory, WordLen, Address, Bytes);
+            
+            if (Offset+4+Bytes>Data.length)
+                Code = 0x06; // Reply larger than the PDU
+            if (Code!=0xFF)
+            {
+                Data[Offset] = (byte)Code;
+                Offset += 4;
+                continue;
+            }
+            
+            int TransportSize = ReplyTransportSize(WordLen);
+            Data[Offset] = (byte)0xFF;
+            Data[Offset+1] = (byte)TransportSize;
+            if (WordLen==S7Client.S7WLBit)
+            {
+                S7.SetWordAt(Data, Offset+2, 1);
+                Data[Offset+4] = (byte)((Memory[Address>>3]>>(Address & 0x07)) & 0x01);
+            }
+            else
+            {
+                S7.SetWordAt(Data, Offset+2, (TransportSize==0x04 || TransportSize==0x05) ? Bytes<<3 : Bytes);
+                synchronized (Memory)
+                {
+                    System.arraycopy(Memory, Address, Data, Offset+4, Bytes);
+                }
+            }
+            Offset += 4 + Bytes;
+            // Every item but the last is padded to an even length
+            if (((Bytes & 0x01)!=0) && (c<Count-1))
+                Offset++;
+        }
+        
+        byte[] Result = new byte[Offset];
+        System.arraycopy(Data, 0, Result, 0, Offset);
+        return AckData(Ref, 0, 0, new byte[] {0x04, (byte)Count}, Result);
+    }
+    
+    private byte[] WriteVar(byte[] Frame, int Par, int Data, int Ref)
+    {
+        int Count = Frame[Par+1] & 0x0FF;
+        byte[] Codes = new byte[Count];
+        int Offset = Data;
+        
+        for (int c = 0; c < Count; c++)
+        {
+            int Spec = Par + 2 + c*12;
+            int WordLen = Frame[Spec+3];
+            int DBNumber = S7.GetWordAt(Frame, Spec+6);
+            int Area = Frame[Spec+8] & 0x0FF;
+            int Address = ItemAddress(Frame, Spec, WordLen);
+            int TransportSize = Frame[Offset+1];
+            int Bytes = S7.GetWordAt(Frame, Offset+2);
+            if ((TransportSize==0x03) || (TransportSize==0x04) || (TransportSize==0x05))
+                Bytes = (Bytes + 7) >> 3;
+            byte[] Memory = Area(Area, DBNumber);
+            int Code = CheckItem(Memory, WordLen, Address, Bytes);
+            
+            if (Code==0xFF)
+            {
+                synchronized (Memory)
+                {
+                    if (WordLen==S7Client.S7WLBit)
+                    {
+                        int Mask = 1<<(Address & 0x07);
+                        if ((Frame[Offset+4] & 0x01)!=0)
+                            Memory[Address>>3] |= (byte)Mask;
+                        else
+                            Memory[Address>>3] &= (byte)~Mask;
+                    }
+                    else
+                        System.arraycopy(Frame, Offset+4, Memory, Address, Bytes);
+                }
+            }
+            Codes[c] = (byte)Code;
+            Offset += 4 + Bytes;
+            if ((Bytes & 0x01)!=0)
+                Offset++;
+        }
+        return AckData(Ref, 0, 0, new byte[] {0x05, (byte)Count}, Codes);
+    }
+    
+    // Userdata reply (ISO header + S7 header + 12 bytes parameters + data)
+    private static byte[] UserDataReply(int Ref, int Group, int SubFunction, int Seq, int ReturnCode, byte[] Payload)
+    {
+        int DataLen = 4 + Payload.length;
+        int Size = 7 + 10 + 12 + DataLen;
+        byte[] T = new byte[Size];
+        T[0]=0x03; S7.SetWordAt(T, 2, Size);
+        T[4]=0x02; T[5]=(byte)0xF0; T[6]=(byte)0x80;
+        T[7]=0x32; T[8]=0x07;
+        S7.SetWordAt(T, 11, Ref);
+        S7.SetWordAt(T, 13, 12);
+        S7.SetWordAt(T, 15, DataLen);
+        // Parameters : head, length, method response, type/group, subfunction, sequence, data unit, last data unit, error
+        T[17]=0x00; T[18]=0x01; T[19]=0x12; T[20]=0x08; T[21]=0x12;
+        T[22]=(byte)(0x80 | Group); T[23]=(byte)SubFunction; T[24]=(byte)Seq;
+        T[25]=0x00; T[26]=0x00; T[27]=0x00; T[28]=0x00;
+        // Data : return code, transport size (octet string), length
+        T[29]=(byte)ReturnCode;
+        T[30]=(byte)(ReturnCode==0xFF ? 0x09 : 0x00);
+        S7.SetWordAt(T, 31, Payload.length);
+        System.arraycopy(Payload, 0, T, 33, Payload.length);
+        return T;
+    }
+    
+    private byte[] UserData(byte[] Frame, int Par, int Data, int DataLen, int Ref)
+    {
+        int Group = Frame[Par+5] & 0x0F;
+        int SubFunction = Frame[Par+6] & 0x0FF;
+        int Seq = Frame[Par+7] & 0x0FF;
+        
+        // CPU functions : read SZL
+        if ((Group==0x04) && (SubFunction==0x01) && (DataLen>=8))
+        {
+            int ID = S7.GetWordAt(Frame, Data+4);
+            int Index = S7.GetWordAt(Frame, Data+6);
+            if ((ID & 0x00FF)==0x11)
+                return UserDataReply(Ref, Group, SubFunction, Seq, 0xFF, ModuleIdentification(ID, Index));
+            return UserDataReply(Ref, Group, SubFunction, Seq, 0x0A, new byte[0]);
+        }
+        // Block functions : get block info (DB only)
+        if ((Group==0x03) && (SubFunction==0x03) && (DataLen>=12))
+        {
+            int Number = 0;
+            // Data : return code, transport size, length, '0', block type, 5 ASCII digits, 'A'
+            for (int c = 0; c < 5; c++)
+                Number = Number*10 + (Frame[Data+6+c]-0x30);
+            byte[] Memory = (Frame[Data+5]==S7.Block_DB) ? Areas.get(AreaKey(S7.S7AreaDB, Number)) : null;
+            if (Memory==null)
+                return UserDataReply(Ref, Group, SubFunction, Seq, 0x0A, new byte[0]);
+            // 9 bytes of header (as parsed by S7Client.BlockInfoReply) then the 96 bytes of block info
+            byte[] Info = new byte[9+96];
+            Info[9+1] = 0x05;                               // Language : DB
+            Info[9+2] = S7.Block_DB;
+            S7.SetWordAt(Info, 9+3, Number);
+            S7.SetDIntAt(Info, 9+5, Memory.length + 92);    // Load size
+            S7.SetWordAt(Info, 9+31, Math.min(Memory.length, 0x0FFFF)); // MC7 size
+            return UserDataReply(Ref, Group, SubFunction, Seq, 0xFF, Info);
+        }
+        return UserDataReply(Ref, Group, SubFunction, Seq, 0x0A, new byte[0]);
+    }
+    
+    // SZL 0x0011 : module identification (order code of the module, hardware and firmware)
+    private byte[] ModuleIdentification(int ID, int Index)
+    {
+        int[] Indexes = {0x0001, 0x0006, 0x0007};
+        byte[] Payload = new byte[8 + Indexes.length*28];
+        S7.SetWordAt(Payload, 0, ID);
+        S7.SetWordAt(Payload, 2, Index);
+        S7.SetWordAt(Payload, 4, 28);            // LENTHDR
+        S7.SetWordAt(Payload, 6, Indexes.length); // N_DR
+        for (int c = 0; c < Indexes.length; c++)
+        {
+            int Record = 8 + c*28;
+            S7.SetWordAt(Payload, Record, Indexes[c]);
+            byte[] Code = OrderCode.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < 20; i++)
+                Payload[Record+2+i] = i<Code.length ? Code[i] : (byte)0x20;
+            if (Indexes[c]==0x0007)
+            {
+                Payload[Record+24] = 'V';
+                Payload[Record+25] = 2;  // Firmware V2.0.0
+            }
+            else
+                S7.SetWordAt(Payload, Record+24, 0x0001);
+        }
+        return Payload;
+    }
+}
@@ -0,0 +1,743 @@
+/*=============================================================================|
+|  PROJECT Moka7                                                         1.0.2 |
+|==============================================================================|
+|  Copyright (C) 2013, 2016 Davide Nardella                                    |
+|  All rights reserved.                                                        |
+|==============================================================================|
+|  SNAP7 is free software: you can redistribute it and/or modify               |
+|  it under the terms of the Lesser GNU General Public License as published by |
+|  the Free Software Foundation, either version 3 of the License, or under     |
+|  EPL Eclipse Public License 1.0.                                             |
+|                                                                              |
+|  This means that you have to chose in advance which take before you import   |
+|  the library into your project.                                              |
+|                                                                              |
+|  SNAP7 is distributed in the hope that it will be useful,                    |
+|  but WITHOUT ANY WARRANTY; without even the implied warranty of              |
+|  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE whatever license you    |
+|  decide to adopt.                                                            |
+|                                                                              |
+|=============================================================================*/
+package Moka7;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non blocking connection to one PLC, driven by a S7Reactor loop as a state machine :
+ * TCP connect -> ISO connection request -> PDU negotiation -> read/write telegrams.
+ * 
+ * Up to the negotiated number of parallel jobs (AmQ) are in flight, the others wait
+ * in a queue, replies are matched by PDU reference. The requests never block : they
+ * return a future completed by the receive path (on the loop thread, so the stages
+ * chained to it should be short or use the *Async variants of CompletableFuture).
+ * 
+ * Requests failing complete exceptionally with a S7Exception (see S7Exception.ErrorCode()),
+ * the ones returning CompletableFuture<Integer> complete with the error code as S7Client does.
+ */
+public class S7Session {
+    
+    // States
+    public static final int StateClosed      = 0;
+    public static final int StateConnecting  = 1; // TCP connection
+    public static final int StateIsoConnect  = 2; // ISO connection request sent
+    public static final int StateNegotiating = 3; // PDU negotiation sent
+    public static final int StateConnected   = 4;
+    
+    // Public fields
+    public int RecvTimeout = 2000;
+    public int ConnectTimeout = 5000;
+    
+    private final S7Reactor.Loop Loop;
+    private final String IPAddress;
+    private final int Port;
+    private final int LocalTSAP;
+    private final int RemoteTSAP;
+    private int PduSizeRequested = S7Client.DefaultPduSizeRequested;
+    private int JobsRequested = S7Client.DefaultJobsRequested;
+    private S7Metrics Metrics = new S7Metrics();
+    
+    private volatile int State = StateClosed;
+    private volatile int _PDULength = 0;
+    private volatile int _MaxJobs = 1;
+    
+    // Loop thread only
+    private SocketChannel Channel;
+    private SelectionKey Key;
+    private ByteBuffer InBuffer;
+    private final ArrayDeque<ByteBuffer> Outgoing = new ArrayDeque<>();
+    private final ArrayDeque<Job> Waiting = new ArrayDeque<>();
+    private final HashMap<Integer, Job> InFlight = new HashMap<>();
+    private final HashMap<Integer, Long> Abandoned = new HashMap<>(); // Timed out jobs still owning an AmQ slot
+    private CompletableFuture<Integer> ConnectFuture;
+    private long ConnectDeadline;
+    private int PduRef = 0x0100;
+    private long FirstByteAt; // nanoTime of the first byte of the frame being received
+    
+    // A telegram waiting for its reply
+    private static final class Job
+    {
+        final byte[] Telegram;
+        final int Size;
+        final long Deadline;
+        final CompletableFuture<byte[]> Reply = new CompletableFuture<>();
+        long SentAt;
+        
+        Job(byte[] Telegram, int Size, long Deadline)
+        {
+            this.Telegram=Telegram;
+            this.Size=Size;
+            this.Deadline=Deadline;
+        }
+    }
+    
+    public S7Session(String Address, int Rack, int Slot)
+    {
+        this(S7Reactor.Default(), Address, S7Client.ISOTCP, 0x0100, (S7.PG<<8) + (Rack * 0x20) + Slot);
+    }
+    
+    public S7Session(S7Reactor Reactor, String Address, int Port, int LocalTSAP, int RemoteTSAP)
+    {
+        this.Loop=Reactor.Next();
+        this.IPAddress=Address;
+        this.Port=Port;
+        this.LocalTSAP=LocalTSAP & 0x0FFFF;
+        this.RemoteTSAP=RemoteTSAP & 0x0FFFF;
+    }
+    
+    // See S7Client.SetPduSizeRequested(), used by the next Connect()
+    public void SetPduSizeRequested(int PduSize)
+    {
+        PduSizeRequested=Math.max(S7Client.MinPduSizeRequested, Math.min(PduSize, S7Client.MaxPduSizeRequested));
+    }
+    
+    // See S7Client.SetJobsRequested(), used by the next Connect()
+    public void SetJobsRequested(int Jobs)
+    {
+        JobsRequested=Math.max(1, Math.min(Jobs, 0x0FFFF));
+    }
+    
+    // Sets the metrics recording the telegrams of this session (e.g. those of the owner S7Client), before Connect()
+    public void SetMetrics(S7Metrics Metrics)
+    {
+        this.Metrics=Metrics;
+    }
+    
+    public S7Metrics Metrics()
+    {
+        return Metrics;
+    }
+    
+    public int State()
+    {
+        return State;
+    }
+    
+    public boolean Connected()
+    {
+        return State==StateConnected;
+    }
+    
+    public int PDULength()
+    {
+        return _PDULength;
+    }
+    
+    public int MaxJobs()
+    {
+        return _MaxJobs;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return IPAddress + ":" + Port;
+    }
+    
+    /**
+     * Starts the connection (TCP + ISO + PDU negotiation).
+     * Completes with 0 or the error code, a connection in progress is shared.
+     */
+    public CompletableFuture<Integer> Connect()
+    {
+        CompletableFuture<Integer> Result = new CompletableFuture<>();
+        Loop.Execute(this, () -> StartConnect(Result));
+        return Result;
+    }
+    
+    // Closes the connection, the pending requests fail with errTCPConnectionReset
+    public void Disconnect()
+    {
+        Loop.Execute(this, () -> Close(S7Client.errTCPConnectionReset));
+    }
+    
+    /**
+     * Sends a telegram (ISO frame already built, its PDU reference is set by the session)
+     * and completes with a copy of the reply frame.
+     */
+    public CompletableFuture<byte[]> Exchange(byte[] Telegram, int Size)
+    {
+        Job J = new Job(Telegram, Size, System.nanoTime() + RecvTimeout * 1000000L);
+        Loop.Execute(this, () -> Submit(J));
+        return J.Reply;
+    }
+    
+    /**
+     * Reads a memory area, split in chunks of the negotiated PDU (pipelined).
+     * Completes with the data or exceptionally with the error.
+     */
+    public CompletableFuture<byte[]> ReadArea(int Area, int DBNumber, int Start, int Amount)
+    {
+        // The chunks are sized only once the PDU is negotiated (a closing session resets it to 0)
+        int PDULength = _PDULength;
+        if ((State!=StateConnected) || (PDULength==0))
+            return Failed(S7Client.errTCPConnectionFailed);
+        
+        int WordSize = ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM)) ? 2 : 1;
+        int MaxElements = (PDULength-18) / WordSize; // 18 = Reply telegram header
+        if (MaxElements<=0)
+            return Failed(S7Client.errISONegotiatingPDU);
+        if (Amount<=0)
+            return CompletableFuture.completedFuture(new byte[0]);
+        
+        byte[] Data = new byte[Amount * WordSize];
+        int Chunks = (Amount+MaxElements-1) / MaxElements;
+        CompletableFuture<?>[] Parts = new CompletableFuture<?>[Chunks];
+        for (int c = 0; c < Chunks; c++)
+        {
+            int NumElements = Math.min(MaxElements, Amount-c*MaxElements);
+            int SizeRequested = NumElements * WordSize;
+            int Offset = c * MaxElements * WordSize;
+            // Timers and counters are addressed by element, the others by byte
+            int Address = Start + (WordSize==2 ? c*MaxElements : Offset);
+            byte[] Telegram = new byte[S7Client.Size_RD];
+            
+            S7Client.ReadAreaTelegram(Telegram, Area, DBNumber, Address, NumElements, 0);
+            Parts[c] = Exchange(Telegram, S7Client.Size_RD).thenAccept(Reply -> {
+                int Error = S7Client.ReadAreaReply(Reply, Reply.length, SizeRequested, Data, Offset);
+                if (Error!=0)
+                    throw new CompletionException(new S7Exception(Error));
+            });
+        }
+        return CompletableFuture.allOf(Parts).thenApply(v -> Data);
+    }
+    
+    /**
+     * Writes a memory area, split in chunks of the negotiated PDU (pipelined).
+     * Completes with 0 or the error code.
+     */
+    public CompletableFuture<Integer> WriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data)
+    {
+        return WriteArea(Area, DBNumber, Start, Amount, Data, 0);
+    }
+    
+    // Writes from a slice of Data starting at DataOffset
+    public CompletableFuture<Integer> WriteArea(int Area, int DBNumber, int Start, int Amount, byte[] Data, int DataOffset)
+    {
+        int PDULength = _PDULength;
+        if ((State!=StateConnected) || (PDULength==0))
+            return CompletableFuture.completedFuture(S7Client.errTCPConnectionFailed);
+        
+        int WordSize = ((Area==S7.S7AreaCT) || (Area==S7.S7AreaTM)) ? 2 : 1;
+        int MaxElements = (PDULength-35) / WordSize; // 35 = Write telegram header
+        if (MaxElements<=0)
+            return CompletableFuture.completedFuture(S7Client.errISONegotiatingPDU);
+        if ((Amount>0) && ((Data==null) || (DataOffset<0) || (Data.length-DataOffset<Amount*WordSize)))
+            return CompletableFuture.completedFuture(S7Client.errS7InvalidParams);
+        
+        int Chunks = Amount>0 ? (Amount+MaxElements-1) / MaxElements : 0;
+        ArrayList<CompletableFuture<Integer>> Parts = new ArrayList<>(Chunks);
+        for (int c = 0; c < Chunks; c++)
+        {
+            int NumElements = Math.min(MaxElements, Amount-c*MaxElements);
+            int Offset = c * MaxElements * WordSize;
+            int Address = Start + (WordSize==2 ? c*MaxElements : Offset);
+            byte[] Telegram = new byte[S7Client.Size_WR + NumElements*WordSize];
+            
+            int Size = S7Client.WriteAreaTelegram(Telegram, Area, DBNumber, Address, NumElements, Data, DataOffset+Offset, 0);
+            Parts.add(Exchange(Telegram, Size).handle((Reply, Error) -> 
+                Error!=null ? S7Exception.ErrorCode(Error) : S7Client.WriteAreaReply(Reply, Reply.length)));
+        }
+        return FirstError(Parts);
+    }
+    
+    /**
+     * Reads several scattered variables, packed as S7Client.ReadMultiVars() does.
+     * Completes with 0 if all the telegrams were exchanged (check each Item.Result), else the error.
+     */
+    public CompletableFuture<Integer> ReadMultiVars(S7DataItem[] Items, int ItemsCount)
+    {
+        if ((Items==null) || (ItemsCount<0) || (ItemsCount>Items.length))
+            return CompletableFuture.completedFuture(S7Client.errS7InvalidParams);
+        if (State!=StateConnected)
+            return FailItems(Items, 0, ItemsCount, S7Client.errTCPConnectionFailed);
+        
+        int PDULength = _PDULength;
+        ArrayList<CompletableFuture<Integer>> Parts = new ArrayList<>();
+        int First = 0;
+        while (First<ItemsCount)
+        {
+            S7DataItem Item = Items[First];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
+            {
+                Item.Result = S7Client.errS7InvalidParams;
+                First++;
+                continue;
+            }
+            // Items that can't fit a PDU by themselves are read with ReadArea (chunked)
+            if (12 + 2 + 4 + ItemSize > PDULength)
+            {
+                if (S7Client.ItemWordLen(Item)==S7Client.S7WLByte)
+                {
+                    Parts.add(ReadArea(Item.Area, Item.DBNumber, Item.Start, ItemSize).handle((Data, Error) -> {
+                        if (Error==null)
+                            System.arraycopy(Data, 0, Item.Data, Item.DataOffset, ItemSize);
+                        Item.Result = Error==null ? 0 : S7Exception.ErrorCode(Error);
+                        return 0;
+                    }));
+                }
+                else
+                    Item.Result = S7Client.errS7InvalidDataSize;
+                First++;
+                continue;
+            }
+            
+            int From = First;
+            int Count = S7Client.ReadVarsFit(Items, First, ItemsCount, PDULength);
+            byte[] Telegram = new byte[PDULength + S7Client.IsoHSize];
+            int Size = S7Client.MultiReadTelegram(Telegram, Items, From, Count, 0);
+            Parts.add(Exchange(Telegram, Size).handle((Reply, Error) -> {
+                if (Error!=null)
+                    return FailItems(Items, From, Count, S7Exception.ErrorCode(Error)).join();
+                return S7Client.MultiReadReply(Reply, Reply.length, Items, From, Count);
+            }));
+            First+=Count;
+        }
+        return FirstError(Parts);
+    }
+    
+    /**
+     * Writes several scattered variables, packed as S7Client.WriteMultiVars() does.
+     * Completes with 0 if all the telegrams were exchanged (check each Item.Result), else the error.
+     */
+    public CompletableFuture<Integer> WriteMultiVars(S7DataItem[] Items, int ItemsCount)
+    {
+        if ((Items==null) || (ItemsCount<0) || (ItemsCount>Items.length))
+            return CompletableFuture.completedFuture(S7Client.errS7InvalidParams);
+        if (State!=StateConnected)
+            return FailItems(Items, 0, ItemsCount, S7Client.errTCPConnectionFailed);
+        
+        int PDULength = _PDULength;
+        ArrayList<CompletableFuture<Integer>> Parts = new ArrayList<>();
+        int First = 0;
+        while (First<ItemsCount)
+        {
+            S7DataItem Item = Items[First];
+            int ItemSize = Item.DataSize();
+            if (ItemSize<=0 || Item.Data==null || Item.DataOffset<0 || Item.Data.length-Item.DataOffset<ItemSize)
+            {
+                Item.Result = S7Client.errS7InvalidParams;
+                First++;
+                continue;
+            }
+            // Items that can't fit a PDU by themselves are written with WriteArea (chunked)
+            if (10 + 2 + 12 + 4 + ItemSize > PDULength)
+            {
+                if (S7Client.ItemWordLen(Item)==S7Client.S7WLByte)
+                {
+                    Parts.add(WriteArea(Item.Area, Item.DBNumber, Item.Start, ItemSize, Item.Data, Item.DataOffset).thenApply(Error -> {
+                        Item.Result = Error;
+                        return 0;
+                    }));
+                }
+                else
+                    Item.Result = S7Client.errS7InvalidDataSize;
+                First++;
+                continue;
+            }
+            
+            int From = First;
+            int Count = S7Client.WriteVarsFit(Items, First, ItemsCount, PDULength);
+            byte[] Telegram = new byte[PDULength + S7Client.IsoHSize];
+            int Size = S7Client.MultiWriteTelegram(Telegram, Items, From, Count, 0);
+            Parts.add(Exchange(Telegram, Size).handle((Reply, Error) -> {
+                if (Error!=null)
+                    return FailItems(Items, From, Count, S7Exception.ErrorCode(Error)).join();
+                return S7Client.MultiWriteReply(Reply, Reply.length, Items, From, Count);
+            }));
+            First+=Count;
+        }
+        return FirstError(Parts);
+    }
+    
+    /**
+     * Gets the info of a block (see S7Client.GetAgBlockInfo()).
+     * Completes with 0 or the error code.
+     */
+    public CompletableFuture<Integer> GetAgBlockInfo(int BlockType, int BlockNumber, S7BlockInfo Block)
+    {
+        byte[] Telegram = new byte[64];
+        int Size = S7Client.BlockInfoTelegram(Telegram, BlockType, BlockNumber);
+        return Exchange(Telegram, Size).handle((Reply, Error) ->
+            Error!=null ? S7Exception.ErrorCode(Error) : S7Client.BlockInfoReply(Reply, Reply.length, Block));
+    }
+    
+    /**
+     * Reads a whole DB, its size is queried first (see S7Client.DBGet()).
+     * Completes with the DB data or exceptionally with the error.
+     */
+    public CompletableFuture<byte[]> DBGet(int DBNumber)
+    {
+        S7BlockInfo Block = new S7BlockInfo();
+        return GetAgBlockInfo(S7.Block_DB, DBNumber, Block).thenCompose(Error ->
+            Error!=0 ? Failed(Error) : ReadArea(S7.S7AreaDB, DBNumber, 0, Block.MC7Size()));
+    }
+    
+    /**
+     * Reads a partial list of the system status (see S7Client.ReadSZL()),
+     * the slices are requested one after the other.
+     * Completes with 0 or the error code.
+     */
+    public CompletableFuture<Integer> ReadSZL(int ID, int Index, S7Szl SZL)
+    {
+        byte[] Telegram = new byte[64];
+        SZL.DataSize=0;
+        return SzlSlice(Telegram, S7Client.SzlFirstTelegram(Telegram, ID, Index, 0), true, SZL);
+    }
+    
+    private CompletableFuture<Integer> SzlSlice(byte[] Telegram, int Size, boolean First, S7Szl SZL)
+    {
+        return Exchange(Telegram, Size).handle((Reply, Error) -> {
+            if (Error!=null)
+                return CompletableFuture.completedFuture(S7Exception.ErrorCode(Error));
+            int Result = S7Client.SzlReply(Reply, Reply.length, First, SZL);
+            if ((Result!=0) || (Reply[26]==0x00))
+                return CompletableFuture.completedFuture(Result);
+            byte[] Next = new byte[64];
+            return SzlSlice(Next, S7Client.SzlNextTelegram(Next, Reply[24], 0), false, SZL);
+        }).thenCompose(Result -> Result);
+    }
+    
+    static <T> CompletableFuture<T> Failed(int Error)
+    {
+        CompletableFuture<T> Result = new CompletableFuture<>();
+        Result.completeExceptionally(new S7Exception(Error));
+        return Result;
+    }
+    
+    private static CompletableFuture<Integer> FailItems(S7DataItem[] Items, int First, int Count, int Error)
+    {
+        for (int c = First; c < First+Count; c++)
+            Items[c].Result = Error;
+        return CompletableFuture.completedFuture(Error);
+    }
+    
+    // Completes with the first error code of the parts (0 if none), a part failed with a S7Exception gives its own code
+    private static CompletableFuture<Integer> FirstError(List<CompletableFuture<Integer>> Parts)
+    {
+        return CompletableFuture.allOf(Parts.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+            for (CompletableFuture<Integer> Part : Parts)
+            {
+                int Error = Part.handle((Result, Failure) -> Failure!=null ? S7Exception.ErrorCode(Failure) : Result).join();
+                if (Error!=0)
+                    return Error;
+            }
+            return 0;
+        });
+    }
+    
+    /* ----------------------------------------------------------------------
+     * Loop thread only
+     * ---------------------------------------------------------------------- */
+    
+    private void StartConnect(CompletableFuture<Integer> Result)
+    {
+        if (State==StateConnected)
+        {
+            Result.complete(0);
+            return;
+        }
+        if (State!=StateClosed)
+        {
+            ConnectFuture.whenComplete((Error, e) -> Result.complete(Error));
+            return;
+        }
+        
+        ConnectFuture = Result;
+        ConnectDeadline = System.nanoTime() + ConnectTimeout * 1000000L;
+        InBuffer = ByteBuffer.allocate(PduSizeRequested + S7Client.IsoHSize);
+        State = StateConnecting;
+        Loop.Attach(this);
+        try {
+            Channel = SocketChannel.open();
+            Channel.configureBlocking(false);
+            Channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (Channel.connect(new InetSocketAddress(IPAddress, Port)))
+            {
+                Key = Channel.register(Loop.Selector, SelectionKey.OP_READ, this);
+                IsoConnect();
+            }
+            else
+                Key = Channel.register(Loop.Selector, SelectionKey.OP_CONNECT, this);
+        } catch (IOException | RuntimeException ex) {
+            Close(S7Client.errTCPConnectionFailed);
+        }
+    }
+    
+    private void IsoConnect()
+    {
+        byte[] Telegram = new byte[22];
+        State = StateIsoConnect;
+        Send(ByteBuffer.wrap(Telegram, 0, S7Client.IsoConnectTelegram(Telegram, LocalTSAP, RemoteTSAP, PduSizeRequested)));
+    }
+    
+    private void Submit(Job J)
+    {
+        if (State==StateClosed)
+        {
+            J.Reply.completeExceptionally(new S7Exception(S7Client.errTCPConnectionFailed));
+            return;
+        }
+        Waiting.add(J);
+        Pump();
+    }
+    
+    // Sends the waiting jobs while the negotiated AmQ allows
+    private void Pump()
+    {
+        while ((State==StateConnected) && !Waiting.isEmpty() && (InFlight.size()+Abandoned.size()<_MaxJobs))
+        {
+            Job J = Waiting.poll();
+            int Ref = PduRef;
+            PduRef = (PduRef + 1) & 0x0FFFF;
+            S7.SetWordAt(J.Telegram, 11, Ref);
+            InFlight.put(Ref, J);
+            J.SentAt = System.nanoTime();
+            Metrics.Sent(J.Size);
+            Send(ByteBuffer.wrap(J.Telegram, 0, J.Size));
+        }
+    }
+    
+    private void Send(ByteBuffer Buffer)
+    {
+        Outgoing.add(Buffer);
+        Flush();
+    }
+    
+    private void Flush()
+    {
+        try {
+            while (!Outgoing.isEmpty())
+            {
+                ByteBuffer Buffer = Outgoing.peek();
+                Channel.write(Buffer);
+                if (Buffer.hasRemaining())
+                {
+                    // Socket buffer full : goes on when writable
+                    Key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                Outgoing.poll();
+            }
+            Key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            Close(S7Client.errTCPDataSend);
+        }
+    }
+    
+    // Called by the loop when the channel is ready
+    void Ready(SelectionKey Key) throws IOException
+    {
+        if (Key.isConnectable())
+        {
+            try {
+                if (!Channel.finishConnect())
+                    return;
+            } catch (IOException ex) {
+                Close(S7Client.errTCPConnectionFailed);
+                return;
+            }
+            Key.interestOps(SelectionKey.OP_READ);
+            IsoConnect();
+            return;
+        }
+        if (Key.isWritable())
+            Flush();
+        if ((State!=StateClosed) && Key.isReadable())
+            Receive();
+    }
+    
+    private void Receive()
+    {
+        int Read;
+        boolean Empty = InBuffer.position()==0;
+        try {
+            Read = Channel.read(InBuffer);
+        } catch (IOException ex) {
+            Close(S7Client.errTCPDataRecv);
+            return;
+        }
+        if (Read<0)
+        {
+            Close(S7Client.errTCPConnectionReset);
+            return;
+        }
+        
+        if (Empty && (Read>0))
+            FirstByteAt = System.nanoTime();
+        
+        // Splits the stream into ISO frames (TPKT length)
+        byte[] Buffer = InBuffer.array();
+        while (InBuffer.position()>=4)
+        {
+            int Avail = InBuffer.position();
+            int Size = S7.GetWordAt(Buffer, 2);
+            if ((Size>Buffer.length) || ((Size!=S7Client.IsoHSize) && (Size<S7Client.MinPduSize)))
+            {
+                Close(S7Client.errISOInvalidPDU);
+                return;
+            }
+            if (Avail<Size)
+                break;
+            
+            // 0 bytes Data Packet (only TPKT+COTP = 7 bytes) are skipped
+            if (Size!=S7Client.IsoHSize)
+                Frame(Buffer, Size);
+            if (State==StateClosed)
+                return;
+            System.arraycopy(Buffer, Size, Buffer, 0, Avail-Size);
+            InBuffer.position(Avail-Size);
+        }
+    }
+    
+    private void Frame(byte[] Buffer, int Size)
+    {
+        switch (State)
+        {
+            case StateIsoConnect :
+                if (Size!=22)
+                    Close(S7Client.errISOInvalidPDU);
+                else if (Buffer[5]!=(byte)0xD0) // 0xD0 = CC Connection confirm
+                    Close(S7Client.errISOConnectionFailed);
+                else
+                {
+                    byte[] Telegram = new byte[25];
+                    State = StateNegotiating;
+                    Send(ByteBuffer.wrap(Telegram, 0, S7Client.NegotiateTelegram(Telegram, PduSizeRequested, JobsRequested)));
+                }
+                break;
+                
+            case StateNegotiating :
+                if ((Size==27) && (Buffer[17]==0) && (Buffer[18]==0) && (S7.GetWordAt(Buffer,25)>0))
+                {
+                    _PDULength = Math.min(S7.GetWordAt(Buffer,25), PduSizeRequested);
+                    _MaxJobs = Math.max(1, Math.min(S7.GetWordAt(Buffer,21), JobsRequested));
+                    State = StateConnected;
+                    ConnectFuture.complete(0);
+                    Pump();
+                }
+                else
+                    Close(S7Client.errISONegotiatingPDU);
+                break;
+                
+            case StateConnected :
+                int Ref = S7.GetWordAt(Buffer,11);
+                Job J = InFlight.remove(Ref);
+                if (J!=null)
+                {
+                    long Now = System.nanoTime();
+                    Metrics.Received(Size, FirstByteAt-J.SentAt, Now-FirstByteAt);
+                    J.Reply.complete(Arrays.copyOf(Buffer, Size));
+                }
+                else
+                    Abandoned.remove(Ref); // Late reply of a timed out job
+                Pump();
+                break;
+                
+            default :
+                break;
+        }
+    }
+    
+    // Called by the loop every tick : timeouts
+    void Tick(long Now)
+    {
+        if ((State!=StateConnected) && (State!=StateClosed))
+        {
+            if (Now-ConnectDeadline>=0)
+                Close(State==StateConnecting ? S7Client.errTCPConnectionFailed : S7Client.errTCPDataRecvTout);
+            return;
+        }
+        
+        Iterator<Map.Entry<Integer, Job>> Jobs = InFlight.entrySet().iterator();
+        while (Jobs.hasNext())
+        {
+            Map.Entry<Integer, Job> Entry = Jobs.next();
+            if (Now-Entry.getValue().Deadline>=0)
+            {
+                Jobs.remove();
+                // The slot is kept until the late reply arrives (or the PLC has surely dropped it)
+                Abandoned.put(Entry.getKey(), Now + RecvTimeout * 1000000L);
+                Metrics.Timeout();
+                Entry.getValue().Reply.completeExceptionally(new S7Exception(S7Client.errTCPDataRecvTout));
+            }
+        }
+        Abandoned.values().removeIf(Expiry -> Now-Expiry>=0);
+        
+        Iterator<Job> Queued = Waiting.iterator();
+        while (Queued.hasNext())
+        {
+            Job J = Queued.next();
+            if (Now-J.Deadline>=0)
+            {
+                Queued.remove();
+                J.Reply.completeExceptionally(new S7Exception(S7Client.errTCPDataRecvTout));
+            }
+        }
+        Pump();
+    }
+    
+    // Closes the channel and fails every pending request with Error
+    void Close(int Error)
+    {
+        if (State==StateClosed)
+            return;
+        State = StateClosed;
+        _PDULength = 0;
+        _MaxJobs = 1;
+        Loop.Detach(this);
+        if (Key!=null)
+            Key.cancel();
+        try {
+            if (Channel!=null)
+                Channel.close();
+        } catch (IOException ex) {
+        }
+        Channel = null;
+        Key = null;
+        Outgoing.clear();
+        Abandoned.clear();
+        
+        if ((ConnectFuture!=null) && !ConnectFuture.isDone())
+            ConnectFuture.complete(Error);
+        for (Job J : InFlight.values())
+            J.Reply.completeExceptionally(new S7Exception(Error));
+        InFlight.clear();
+        while (!Waiting.isEmpty())
+            Waiting.poll().Reply.completeExceptionally(new S7Exception(Error));
+    }
+}
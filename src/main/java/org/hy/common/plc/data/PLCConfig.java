@@ -3,6 +3,8 @@ package org.hy.common.plc.data;
 import org.hy.common.Help;
 import org.hy.common.XJavaID;
 
+import Moka7.S7Metrics;
+
 
 
 
@@ -15,15 +17,30 @@ import org.hy.common.XJavaID;
  * @version     v1.0
  *              v2.0  2025-08-28  添加：出现异常时，是否重新连接
  *              v3.0  2026-02-10  添加：连接池
+ *              v4.0  2026-10-18  添加：协商请求的PDU大小
+ *                                添加：汇总本设备所有S7连接的通讯指标（报文数、字节数、时延、超时及错误码）
+ *                                添加：合并读取的间隙
+ *                                添加：后台重连的退避时长
+ *                                添加：大数据报文并行拆分读取的阈值
+ *                                添加：配置的PDU大小是否已确认被设备准许（PLC4X按PDU拆分请求时使用）
  */
 public class PLCConfig implements XJavaID
 {
     
     /** 默认端口 */
-    public static final int    $Port             = 102;
+    public static final int    $Port              = 102;
+    
+    /** 所有S7设备都准许的PDU大小。单位：字节 */
+    public static final int    $MinPduSize        = 240;
     
     /** 默认超时时长。单位：毫秒 */
-    public static final long   $Timeout          = 5000L;
+    public static final long   $Timeout           = 5000L;
+    
+    /** 默认后台重连的初始等待时长。单位：毫秒 */
+    public static final long   $ReconnectDelay    = 1000L;
+    
+    /** 默认后台重连的最大等待时长。单位：毫秒 */
+    public static final long   $ReconnectMaxDelay = 60000L;
     
     
     
@@ -69,6 +86,32 @@ public class PLCConfig implements XJavaID
     /** 最大空闲连接 */
     private Integer       maxIdle;
     
+    /**
+     * 协商请求的PDU大小（单位：字节）。NULL时为默认值480，S7-1500可协商到960或更大。
+     * 
+     * 注：设备准许的PDU大小可能小于请求的大小。PLC4X不公开设备准许的大小，所以PLC4X快照分块及并行拆分时，
+     *     按不超过240字节（所有S7设备都准许的大小）拆分，除非 pduSizeGranted 为真
+     */
+    private Integer       pduSize;
+    
+    /** 配置的PDU大小（pduSize）是否已确认被设备准许。为真时PLC4X按配置的PDU大小拆分请求。NULL时为假 */
+    private Boolean       pduSizeGranted;
+    
+    /** 合并读取的间隙（单位：字节）。相邻数据项之间未使用的字节数不超过此值时合并为一次读取。NULL时为默认值8，小于0时不合并 */
+    private Integer       readGap;
+    
+    /** 并行拆分读取的阈值（单位：字节）。数据报文读取的总字节数超过此值时（PLC4X），按PDU大小拆分为多个请求，在多个连接上并行读取。NULL或小于等于0时不拆分 */
+    private Integer       splitSize;
+    
+    /** 后台重连的初始等待时长（单位：毫秒）。之后每次失败翻倍（加随机抖动），NULL时为默认值1秒 */
+    private Long          reconnectDelay;
+    
+    /** 后台重连的最大等待时长（单位：毫秒）。NULL时为默认值60秒 */
+    private Long          reconnectMaxDelay;
+    
+    /** 本设备所有S7连接的通讯指标的汇总（仅内部使用） */
+    private S7Metrics     metrics;
+    
     
     
     public PLCConfig()
@@ -338,6 +381,139 @@ public class PLCConfig implements XJavaID
     }
 
     
+    /**
+     * 获取：协商请求的PDU大小（单位：字节）。NULL时为默认值480，S7-1500可协商到960或更大
+     */
+    public Integer getPduSize()
+    {
+        return pduSize;
+    }
+
+
+    /**
+     * 设置：协商请求的PDU大小（单位：字节）。NULL时为默认值480，S7-1500可协商到960或更大
+     * 
+     * @param i_PduSize 协商请求的PDU大小（单位：字节）
+     */
+    public void setPduSize(Integer i_PduSize)
+    {
+        this.pduSize = i_PduSize;
+    }
+
+    
+    /**
+     * 获取：配置的PDU大小（pduSize）是否已确认被设备准许。为真时PLC4X按配置的PDU大小拆分请求。NULL时为假
+     */
+    public Boolean getPduSizeGranted()
+    {
+        return pduSizeGranted;
+    }
+
+
+    /**
+     * 设置：配置的PDU大小（pduSize）是否已确认被设备准许。为真时PLC4X按配置的PDU大小拆分请求。NULL时为假
+     * 
+     * @param i_PduSizeGranted 配置的PDU大小是否已确认被设备准许
+     */
+    public void setPduSizeGranted(Boolean i_PduSizeGranted)
+    {
+        this.pduSizeGranted = i_PduSizeGranted;
+    }
+
+    
+    /**
+     * 获取：合并读取的间隙（单位：字节）。相邻数据项之间未使用的字节数不超过此值时合并为一次读取。NULL时为默认值8，小于0时不合并
+     */
+    public Integer getReadGap()
+    {
+        return readGap;
+    }
+
+
+    /**
+     * 设置：合并读取的间隙（单位：字节）。相邻数据项之间未使用的字节数不超过此值时合并为一次读取。NULL时为默认值8，小于0时不合并
+     * 
+     * @param i_ReadGap 合并读取的间隙（单位：字节）
+     */
+    public void setReadGap(Integer i_ReadGap)
+    {
+        this.readGap = i_ReadGap;
+    }
+
+
+    /**
+     * 获取：并行拆分读取的阈值（单位：字节）。数据报文读取的总字节数超过此值时（PLC4X），按PDU大小拆分为多个请求，在多个连接上并行读取。NULL或小于等于0时不拆分
+     */
+    public Integer getSplitSize()
+    {
+        return splitSize;
+    }
+    
+    
+    /**
+     * 设置：并行拆分读取的阈值（单位：字节）。数据报文读取的总字节数超过此值时（PLC4X），按PDU大小拆分为多个请求，在多个连接上并行读取。NULL或小于等于0时不拆分
+     * 
+     * @param i_SplitSize 并行拆分读取的阈值（单位：字节）
+     */
+    public void setSplitSize(Integer i_SplitSize)
+    {
+        this.splitSize = i_SplitSize;
+    }
+    
+    
+    /**
+     * 获取：后台重连的初始等待时长（单位：毫秒）。之后每次失败翻倍（加随机抖动），NULL时为默认值1秒
+     */
+    public Long getReconnectDelay()
+    {
+        return reconnectDelay;
+    }
+
+
+    /**
+     * 设置：后台重连的初始等待时长（单位：毫秒）。之后每次失败翻倍（加随机抖动），NULL时为默认值1秒
+     * 
+     * @param i_ReconnectDelay 后台重连的初始等待时长（单位：毫秒）
+     */
+    public void setReconnectDelay(Long i_ReconnectDelay)
+    {
+        this.reconnectDelay = i_ReconnectDelay;
+    }
+
+
+    /**
+     * 获取：后台重连的最大等待时长（单位：毫秒）。NULL时为默认值60秒
+     */
+    public Long getReconnectMaxDelay()
+    {
+        return reconnectMaxDelay;
+    }
+
+
+    /**
+     * 设置：后台重连的最大等待时长（单位：毫秒）。NULL时为默认值60秒
+     * 
+     * @param i_ReconnectMaxDelay 后台重连的最大等待时长（单位：毫秒）
+     */
+    public void setReconnectMaxDelay(Long i_ReconnectMaxDelay)
+    {
+        this.reconnectMaxDelay = i_ReconnectMaxDelay;
+    }
+
+    
+    /**
+     * 获取：本设备所有S7连接的通讯指标的汇总（仅内部使用）。首次访问时创建
+     */
+    public synchronized S7Metrics gatMetrics()
+    {
+        if ( this.metrics == null )
+        {
+            this.metrics = new S7Metrics();
+        }
+        return metrics;
+    }
+
+    
     /**
      * 设置XJava池中对象的ID标识。此方法不用用户调用设置值，是自动的。
      * 
@@ -14,6 +14,7 @@ import org.hy.common.plc.enums.PLCRegisterType;
  * @author      ZhengWei(HY)
  * @createDate  2024-05-14
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：定时器、计数器的请求地址
  */
 public class PLCDataItemConfig
 {
@@ -69,6 +70,7 @@ public class PLCDataItemConfig
      * @author      ZhengWei(HY)
      * @createDate  2024-05-15
      * @version     v1.0
+     *              v2.0  2026-10-18  添加：定时器、计数器的请求地址
      *
      * @return
      */
@@ -86,20 +88,31 @@ public class PLCDataItemConfig
             return this.plcTagAddress;
         }
         
-        if ( this.registerNo == null || this.registerNo < 0 )
+        if ( Help.isNull(this.registerOffset) )
         {
             this.plcTagAddress = "";
             return this.plcTagAddress;
         }
         
-        if ( Help.isNull(this.registerOffset) )
+        StringBuilder v_Builder = new StringBuilder();
+        
+        // 定时器、计数器按编号寻址，没有寄存器编号。如：%T5:S5TIME、%C3:COUNTER
+        if ( PLCRegisterType.Timer  .equals(this.registerType)
+          || PLCRegisterType.Counter.equals(this.registerType) )
+        {
+            v_Builder.append("%").append(this.registerOffset.trim());
+            v_Builder.append(":").append(this.dataType.getCode());
+            
+            this.plcTagAddress = v_Builder.toString();
+            return plcTagAddress;
+        }
+        
+        if ( this.registerNo == null || this.registerNo < 0 )
         {
             this.plcTagAddress = "";
             return this.plcTagAddress;
         }
         
-        StringBuilder v_Builder = new StringBuilder();
-        
         v_Builder.append("%").append(this.registerType.getCode());
         v_Builder.append(this.registerNo);
         v_Builder.append(".").append(this.registerOffset.trim());
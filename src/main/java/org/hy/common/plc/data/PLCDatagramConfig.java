@@ -3,8 +3,11 @@ package org.hy.common.plc.data;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.hy.common.XJavaID;
+import org.hy.common.plc.util.PLCDatagramPlan;
+import org.hy.common.plc.util.PLCTagPlan;
 
 
 
@@ -16,6 +19,9 @@ import org.hy.common.XJavaID;
  * @author      ZhengWei(HY)
  * @createDate  2024-05-15
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：缓存编译后的执行计划，数据项集合变化时失效
+ *                                添加：快照模式
+ *              v3.0  2026-10-18  添加：按通讯协议缓存PLC4X解析后的请求标签，数据项集合变化时失效
  */
 public class PLCDatagramConfig implements XJavaID
 {
@@ -29,6 +35,15 @@ public class PLCDatagramConfig implements XJavaID
     /** 数据项集合（仅内部使用）。Map.key为数据项的code */
     private Map<String ,PLCDataItemConfig> itemMap;
     
+    /** 编译后的执行计划（仅内部使用）。数据项集合变化时失效 */
+    private volatile PLCDatagramPlan       plan;
+    
+    /** PLC4X的请求计划（仅内部使用）。Map.key为通讯协议及模式。数据项集合变化时失效 */
+    private final Map<String ,PLCTagPlan>  tagPlans;
+    
+    /** 快照模式（range、block）。为空时不启用，数据项按相邻区间合并读取 */
+    private String                         snapshot;
+    
     /** 注释。可用于日志的输出等帮助性的信息 */
     private String                         comment;
     
@@ -39,7 +54,8 @@ public class PLCDatagramConfig implements XJavaID
     
     public PLCDatagramConfig()
     {
-        this.items = new ArrayList<PLCDataItemConfig>();
+        this.items    = new ArrayList<PLCDataItemConfig>();
+        this.tagPlans = new ConcurrentHashMap<String ,PLCTagPlan>();
     }
     
     
@@ -80,6 +96,8 @@ public class PLCDatagramConfig implements XJavaID
     public void setItems(List<PLCDataItemConfig> i_DataItems)
     {
         this.items = i_DataItems;
+        this.plan  = null;
+        this.tagPlans.clear();
     }
 
     
@@ -103,6 +121,75 @@ public class PLCDatagramConfig implements XJavaID
     }
     
     
+    /**
+     * 获取：编译后的执行计划（仅内部使用）。数据项集合变化时失效，返回NULL
+     */
+    public PLCDatagramPlan gatPlan()
+    {
+        return plan;
+    }
+
+
+    /**
+     * 设置：编译后的执行计划（仅内部使用）。直接修改了数据项集合中的元素时，可设置为NULL使其失效（PLC4X的请求计划一并失效）
+     * 
+     * @param i_Plan 编译后的执行计划
+     */
+    public void satPlan(PLCDatagramPlan i_Plan)
+    {
+        this.plan = i_Plan;
+        if ( i_Plan == null )
+        {
+            this.tagPlans.clear();
+        }
+    }
+    
+    
+    /**
+     * 获取：PLC4X的请求计划（仅内部使用）。数据项集合变化时失效，返回NULL
+     * 
+     * @param i_Key 缓存关键字。见 PLCTagPlan.makeKey()
+     */
+    public PLCTagPlan gatTagPlan(String i_Key)
+    {
+        return this.tagPlans.get(i_Key);
+    }
+    
+    
+    /**
+     * 设置：PLC4X的请求计划（仅内部使用）。按计划的通讯协议及模式缓存
+     * 
+     * @param i_TagPlan PLC4X的请求计划
+     */
+    public void satTagPlan(PLCTagPlan i_TagPlan)
+    {
+        this.tagPlans.put(i_TagPlan.getKey() ,i_TagPlan);
+    }
+    
+    
+    /**
+     * 获取：快照模式（range、block）。为空时不启用，数据项按相邻区间合并读取
+     */
+    public String getSnapshot()
+    {
+        return snapshot;
+    }
+
+
+    /**
+     * 设置：快照模式（range、block）。为空时不启用，数据项按相邻区间合并读取
+     * 
+     *   range：读取数据项覆盖的字节区间，同一数据块（寄存器区域）的所有数据项合并为一个区间
+     *   block：读取整个数据块（大小通过块信息查询）
+     * 
+     * @param i_Snapshot 快照模式
+     */
+    public void setSnapshot(String i_Snapshot)
+    {
+        this.snapshot = i_Snapshot;
+    }
+    
+    
     /**
      * 获取：外界自定义的配置信息
      */
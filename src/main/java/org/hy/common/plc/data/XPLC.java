@@ -10,6 +10,7 @@ import org.hy.common.plc.enums.PLCProtocolType;
 import org.hy.common.plc.io.IPlcIO;
 import org.hy.common.plc.io.PlcIO4X;
 import org.hy.common.plc.io.PlcIOS200;
+import org.hy.common.plc.io.PlcSubscription;
 import org.hy.common.xml.log.Logger;
 
 
@@ -22,6 +23,8 @@ import org.hy.common.xml.log.Logger;
  * @author      ZhengWei(HY)
  * @createDate  2024-05-11
  * @version     v1.0
+ *              v2.0  2026-10-18  修正：重复连接时，先关闭原来的连接（连接池及后台重连），防止泄漏
+ *                                添加：重复连接时，订阅迁移到新的PLC读写上继续
  */
 public class XPLC implements XJavaID ,Serializable
 {
@@ -84,6 +87,7 @@ public class XPLC implements XJavaID ,Serializable
             return new Return<PlcConnection>(false);
         }
         
+        IPlcIO v_OldIO = this.plcIO;
         if ( PLCProtocolType.S7_200_Smart.equals(PLCProtocolType.get(this.plcConfig.getProtocol())) )
         {
             this.plcIO = new PlcIOS200(this.plcConfig);
@@ -93,6 +97,16 @@ public class XPLC implements XJavaID ,Serializable
             this.plcIO = new PlcIO4X(this.plcConfig);
         }
         
+        if ( v_OldIO != null )
+        {
+            // 订阅迁移到新的PLC读写上继续，再关闭原来的（不迁移时，订阅随之取消）
+            for (PlcSubscription v_Subscription : v_OldIO.getSubscriptions())
+            {
+                this.plcIO.subscribe(v_Subscription);
+            }
+            v_OldIO.close(null);
+        }
+        
         try
         {
             return this.plcIO.connect();
@@ -117,7 +131,7 @@ public class XPLC implements XJavaID ,Serializable
      */
     public boolean isConnected()
     {
-        return this.plcIO.isConnected();
+        return this.plcIO != null && this.plcIO.isConnected();
     }
     
     
@@ -10,6 +10,7 @@ package org.hy.common.plc.enums;
  * @author      ZhengWei(HY)
  * @createDate  2024-05-14
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：S5时间、计数器值
  */
 public enum PLCDataType
 {
@@ -40,6 +41,10 @@ public enum PLCDataType
     
     WString("DString" ,"WSTRING" ,"字符串Unicode"),
     
+    S5Time ("DS5Time" ,"WORD"    ,"S5时间（定时器值，单位：毫秒）。按16位字读写，本地编解码"),
+    
+    Counter("DCounter","COUNTER" ,"计数器值（3位BCD码）"),
+    
     ;
     
     
@@ -13,17 +13,22 @@ import Moka7.S7;
  * @createDate  2024-05-14
  * @version     v1.0
  *              v2.0  2025-08-19  添加：S7-200 Smart对应的常量值
+ *              v3.0  2026-10-18  添加：定时器、计数器。按编号寻址，每个元素2个字节
  */
 public enum PLCRegisterType
 {
     
-    Input ("RI" ,"I"  ,"输入寄存器" ,S7.S7AreaPE),
+    Input  ("RI" ,"I"  ,"输入寄存器" ,S7.S7AreaPE),
     
-    Output("RQ" ,"Q"  ,"输出寄存器" ,S7.S7AreaPA),
+    Output ("RQ" ,"Q"  ,"输出寄存器" ,S7.S7AreaPA),
     
-    Memory("RM" ,"M"  ,"内存寄存器" ,S7.S7AreaMK),
+    Memory ("RM" ,"M"  ,"内存寄存器" ,S7.S7AreaMK),
     
-    Data(  "RD" ,"DB" ,"数据区块类" ,S7.S7AreaDB),
+    Data   ("RD" ,"DB" ,"数据区块类" ,S7.S7AreaDB),
+    
+    Timer  ("RT" ,"T"  ,"定时器"     ,S7.S7AreaTM),
+    
+    Counter("RC" ,"C"  ,"计数器"     ,S7.S7AreaCT),
     
     ;
     
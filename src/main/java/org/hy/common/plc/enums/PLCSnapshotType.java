@@ -0,0 +1,93 @@
+package org.hy.common.plc.enums;
+
+
+
+
+
+/**
+ * 数据报文的快照模式。
+ * 
+ * 数据项密集的报文，一次读取整个字节区间（按PDU大小分块），再在本地解析所有数据项，比逐项读取更快
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public enum PLCSnapshotType
+{
+    
+    Range("range" ,"读取数据项覆盖的字节区间。同一寄存器区域（数据块）的所有数据项合并为一个区间"),
+    
+    Block("block" ,"读取整个数据块（大小通过块信息查询）。仅对数据块有效，其它寄存器区域按字节区间读取"),
+    
+    ;
+    
+    
+    
+    /** 值 */
+    private String  value;
+    
+    /** 描述 */
+    private String  comment;
+    
+    
+    
+    /**
+     * 数值转为常量
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Value
+     * @return
+     */
+    public static PLCSnapshotType get(String i_Value)
+    {
+        if ( i_Value == null )
+        {
+            return null;
+        }
+        
+        String v_Value = i_Value.trim();
+        for (PLCSnapshotType v_Enum : PLCSnapshotType.values())
+        {
+            if ( v_Enum.value.equalsIgnoreCase(v_Value) )
+            {
+                return v_Enum;
+            }
+        }
+        
+        return null;
+    }
+    
+    
+    
+    PLCSnapshotType(String i_Value ,String i_Comment)
+    {
+        this.value   = i_Value;
+        this.comment = i_Comment;
+    }
+
+    
+    
+    public String getValue()
+    {
+        return this.value;
+    }
+    
+    
+    
+    public String getComment()
+    {
+        return this.comment;
+    }
+    
+    
+
+    public String toString()
+    {
+        return this.value + "";
+    }
+    
+}
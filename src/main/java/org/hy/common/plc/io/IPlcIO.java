@@ -1,6 +1,8 @@
 package org.hy.common.plc.io;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.plc4x.java.api.PlcConnection;
 import org.hy.common.Return;
@@ -17,6 +19,9 @@ import org.hy.common.plc.data.PLCDatagramConfig;
  * @author      ZhengWei(HY)
  * @createDate  2025-08-19
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：异步读写。调用线程不再等待PLC的响应，连接在响应完成时归还
+ *                                添加：订阅数据报文，按周期或变化推送给监听者
+ *                                添加：订阅登记在PLC读写上，关闭时取消，或迁移到新的PLC读写上继续
  */
 public interface IPlcIO
 {
@@ -82,6 +87,87 @@ public interface IPlcIO
     
     
     
+    /**
+     * 异步写入数据。调用线程不等待PLC的响应，连接在写入完成时归还。
+     * 
+     * 返回的Future不会异常完成，写入失败时（含超时）完成结果为假，异常信息记录在日志中
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Datas     数据集合
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）
+     * @return
+     */
+    public CompletableFuture<Boolean> writeDatasAsync(PLCDatagramConfig i_Datagram ,Map<String ,Object> i_Datas ,long i_Timeout);
+    
+    
+    
+    /**
+     * 异步读取数据。调用线程不等待PLC的响应，连接在读取完成时归还。
+     * 
+     * 返回的Future不会异常完成，读取失败时（含超时）完成结果为空集合或部分数据项，异常信息记录在日志中
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）
+     * @return
+     */
+    public CompletableFuture<Map<String ,Object>> readDatasAsync(PLCDatagramConfig i_Datagram ,long i_Timeout);
+    
+    
+    
+    /**
+     * 订阅数据报文。后台按订阅周期读取，推送给监听者，调用者不再自行轮询。
+     * 
+     * 连接被替换（断线重连）后，订阅自动在新连接上继续。不再需要时，调用返回对象的 close() 方法取消订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Cycle     订阅周期（单位：毫秒）。变化模式下为检查变化的周期
+     * @param i_OnChange  是否为变化模式（仅推送值变化了的数据项）。为假时为周期模式（每个周期推送所有数据项）
+     * @param i_Listener  监听者
+     * @return
+     */
+    public PlcSubscription subscribe(PLCDatagramConfig i_Datagram ,long i_Cycle ,boolean i_OnChange ,IPlcListener i_Listener);
+    
+    
+    
+    /**
+     * 接管订阅。订阅从原来的PLC读写迁移到本读写上继续（如XPLC重新连接时），监听者无须重新订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Subscription  订阅
+     * @return                订阅已取消时返回原订阅（不再开始）
+     */
+    public PlcSubscription subscribe(PlcSubscription i_Subscription);
+    
+    
+    
+    /**
+     * 获取本读写上所有未取消的订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public List<PlcSubscription> getSubscriptions();
+    
+    
+    
     /**
      * 连接物联设备
      * 
@@ -116,8 +202,9 @@ public interface IPlcIO
      * @createDate  2025-08-19
      * @version     v1.0
      *              v2.0  2026-02-09  添加：升级为连接池
+     *              v3.0  2026-10-18  添加：关闭PLC读写时，取消其上的所有订阅
      * 
-     * @param i_PlcConnection  PLC连接对象
+     * @param i_PlcConnection  PLC连接对象。为NULL时表示关闭PLC读写
      */
     public void close(PlcConnection i_PlcConnection);
     
@@ -0,0 +1,38 @@
+package org.hy.common.plc.io;
+
+import java.util.Map;
+
+import org.hy.common.plc.data.PLCDatagramConfig;
+
+
+
+
+
+/**
+ * PLC数据订阅的监听者
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public interface IPlcListener
+{
+    
+    /**
+     * 收到订阅的数据
+     * 
+     * 周期模式：每个周期读取成功后通知，数据集合为报文的所有数据项。
+     * 变化模式：仅在数据变化时通知，数据集合为值变化了的数据项（首次为所有数据项）。
+     * 
+     * 注：在订阅的后台线程上调用，不应长时间阻塞
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Datas     数据集合。Map.key为数据项编码，Map.value为数据值
+     */
+    public void onDatas(PLCDatagramConfig i_Datagram ,Map<String ,Object> i_Datas);
+    
+}
@@ -1,9 +1,13 @@
 package org.hy.common.plc.io;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.plc4x.java.api.PlcConnection;
 import org.apache.plc4x.java.api.messages.PlcReadRequest;
@@ -11,6 +15,7 @@ import org.apache.plc4x.java.api.messages.PlcReadResponse;
 import org.apache.plc4x.java.api.messages.PlcWriteRequest;
 import org.apache.plc4x.java.api.messages.PlcWriteResponse;
 import org.apache.plc4x.java.api.types.PlcResponseCode;
+import org.apache.plc4x.java.api.value.PlcValue;
 import org.hy.common.Date;
 import org.hy.common.Help;
 import org.hy.common.Return;
@@ -18,9 +23,16 @@ import org.hy.common.plc.data.PLCConfig;
 import org.hy.common.plc.data.PLCDataItemConfig;
 import org.hy.common.plc.data.PLCDatagramConfig;
 import org.hy.common.plc.enums.PLCDataType;
+import org.hy.common.plc.enums.PLCSnapshotType;
 import org.hy.common.plc.pool.PlcConnectionPool;
+import org.hy.common.plc.util.PLCByteData;
+import org.hy.common.plc.util.PLCDatagramPlan;
+import org.hy.common.plc.util.PLCTagDecoder;
+import org.hy.common.plc.util.PLCTagPlan;
 import org.hy.common.xml.log.Logger;
 
+import Moka7.S7;
+
 
 
 
@@ -36,6 +48,15 @@ import org.hy.common.xml.log.Logger;
  *              v1.2  2026-01-08  优化：日志输出逻辑，方便在《日志分析》页面上排查问题
  *              v1.3  2026-02-08  修正：超时时长从秒变为毫秒单位
  *              v2.0  2026-02-10  添加：连接池
+ *              v3.0  2026-10-18  添加：快照模式。一次读取数据项覆盖的整个字节区间（按PDU大小分块），再在本地解析
+ *                                添加：计数器区域、S5时间及计数器值的数据类型。PLC4X不支持定时器区域
+ *                                优化：缓存解析后的请求标签，轮询读写时不再拼接地址字符串，PLC4X也不再重复解析
+ *                                优化：数据项的解码器在请求计划中一次选定，替换逐个比较数据类型的解析方法
+ *              v4.0  2026-10-18  添加：异步读写。请求发出后不再阻塞调用线程，响应完成时解析数据并归还连接
+ *                                修正：超时时长小于等于0时立即超时的问题，改为PLC设备配置的超时时长
+ *                                添加：订阅数据报文，后台按周期或变化推送给监听者
+ *              v5.0  2026-10-18  添加：大数据报文按PDU拆分为多个请求，在多个连接上并行读取
+ *                                添加：关闭时（连接对象为NULL）取消本读写上的所有订阅
  */
 public class PlcIO4X implements IPlcIO
 {
@@ -44,16 +65,20 @@ public class PlcIO4X implements IPlcIO
     
     
     /** PLC设备配置 */
-    private PLCConfig         plcConfig;
+    private PLCConfig                  plcConfig;
+    
+    /** PLC连接池（关闭时为NULL，再读写时重新创建） */
+    private volatile PlcConnectionPool plcConnectPool;
     
-    /** PLC连接池 */
-    private PlcConnectionPool plcConnectPool;
+    /** 本读写上的所有订阅 */
+    private final PlcSubscriptions     subscriptions;
     
     
     
     public PlcIO4X(PLCConfig i_PLCConfig)
     {
-        this.plcConfig = i_PLCConfig;
+        this.plcConfig     = i_PLCConfig;
+        this.subscriptions = new PlcSubscriptions(this);
     }
     
     
@@ -100,6 +125,7 @@ public class PlcIO4X implements IPlcIO
      * @author      ZhengWei(HY)
      * @createDate  2024-11-27
      * @version     v1.0
+     *              v4.0  2026-10-18  优化：等待异步写入的结果
      *
      * @param i_Datagram  数据报文
      * @param i_Datas     数据集合
@@ -107,9 +133,27 @@ public class PlcIO4X implements IPlcIO
      * @return
      */
     public boolean writeDatas(PLCDatagramConfig i_Datagram ,Map<String ,Object> i_Datas ,long i_Timeout)
+    {
+        return this.writeDatasAsync(i_Datagram ,i_Datas ,i_Timeout).join();
+    }
+    
+    
+    
+    /**
+     * 异步写入数据。在调用线程上借用连接、组装请求，PLC4X响应后在其通讯线程上检查结果并归还连接
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Datas     数据集合
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @return
+     */
+    public CompletableFuture<Boolean> writeDatasAsync(PLCDatagramConfig i_Datagram ,Map<String ,Object> i_Datas ,long i_Timeout)
     {
         StringBuilder v_LogBuffer = new StringBuilder();
-        boolean       v_Ret       = true;
         PlcConnection v_PlcConn   = null;
         
         try
@@ -117,35 +161,32 @@ public class PlcIO4X implements IPlcIO
             if ( i_Datagram == null )
             {
                 $Logger.error("Datagram is null");
-                v_Ret = false;
-                return v_Ret;
+                return CompletableFuture.completedFuture(false);
             }
             
             v_PlcConn = this.connect().getParamObj();
             if ( v_PlcConn == null )
             {
                 $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
-                v_Ret = false;
-                return v_Ret;
+                return CompletableFuture.completedFuture(false);
             }
             
             String v_Titel = "PLC Write " + Help.NVL(this.plcConfig.getComment()) + this.plcConfig.getXid() + "." + Help.NVL(i_Datagram.getComment()) + i_Datagram.getXid();
             $Logger.info(v_Titel);
             v_LogBuffer.append(v_Titel).append("\n");
             
-            List<PLCDataItemConfig> v_Items     = i_Datagram.getItems();
-            int                     v_ItemCount = 0;
-            PlcWriteResponse        v_Response  = null;
-            //synchronized (this)
-            //{
+            PLCTagPlan              v_TagPlan            = this.getTagPlan(i_Datagram ,v_PlcConn);
+            int                     v_ItemCount          = 0;
             PlcWriteRequest.Builder v_PlcWriteReqBuilder = v_PlcConn.writeRequestBuilder();
             
-            for (PLCDataItemConfig v_Item : v_Items)
+            for (int x=0; x<v_TagPlan.getCount(); x++)
             {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
+                PLCDataItemConfig v_Item          = v_TagPlan.getItem(x);
+                String            v_PLCTagAddress = v_TagPlan.getTagAddress(x);
+                if ( v_TagPlan.getTag(x) == null )
                 {
-                    continue;
+                    $Logger.error("PLC4X不支持定时器区域：" + v_Item.getCode() + " " + v_Item.getName() + " " + v_PLCTagAddress);
+                    return CompletableFuture.completedFuture(false);
                 }
                 
                 Object v_DataItemValue = Help.getValueIgnoreCase(i_Datas ,v_Item.getCode());
@@ -156,68 +197,70 @@ public class PlcIO4X implements IPlcIO
                                 + "\n寄存编号：" + v_Item.getRegisterNo()
                                 + "\n偏移数量：" + v_Item.getRegisterOffset()
                                 + "\n数据类型：" + v_Item.getDataType().getValue());
-                    v_Ret = false;
-                    break;
+                    return CompletableFuture.completedFuture(false);
                 }
                 
                 v_LogBuffer.append("PLC Write " + v_Item.getName() + v_Item.getCode() + "：" + v_PLCTagAddress + "=" + v_DataItemValue).append("\n");
-                v_PlcWriteReqBuilder.addTagAddress(v_Item.getCode() ,v_PLCTagAddress ,v_DataItemValue);
+                v_PlcWriteReqBuilder.addTag(v_Item.getCode() ,v_TagPlan.getTag(x) ,makeWriteValue(v_Item.getDataType() ,v_DataItemValue));
                 v_ItemCount++;
             }
             
             if ( v_ItemCount <= 0 )
             {
-                v_Ret = false;
                 $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
-                return v_Ret;
-            }
-            else if ( v_Ret )
-            {
-                long            v_Timeout         = i_Timeout <= 0L ? 0L : i_Timeout;
-                PlcWriteRequest v_PlcWriteRequest = v_PlcWriteReqBuilder.build();
-                v_Response = v_PlcWriteRequest.execute().get(v_Timeout ,TimeUnit.MILLISECONDS);
-            }
-            else
-            {
-                return v_Ret;
+                return CompletableFuture.completedFuture(false);
             }
-            //}
             
-            // 检查是否成功
-            for (PLCDataItemConfig v_Item : v_Items)
-            {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
-                {
-                    continue;
-                }
-                
-                if ( v_Response.getResponseCode(v_Item.getCode()) != PlcResponseCode.OK )
-                {
-                    $Logger.error("写入PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName()
-                                + "\n" + v_Response.getResponseCode(v_Item.getCode()).getValue() + "=" + v_Response.getResponseCode(v_Item.getCode()).name()
-                                + "\n寄存器名：" + v_Item.getRegisterType().getValue()
-                                + "\n寄存编号：" + v_Item.getRegisterNo()
-                                + "\n偏移数量：" + v_Item.getRegisterOffset()
-                                + "\n数据类型：" + v_Item.getDataType().getValue());
-                    v_Ret = false;
-                    break;
-                }
-            }
+            CompletableFuture<Boolean> v_Ret = this.execute(v_PlcWriteReqBuilder.build().execute()
+                                                           ,i_Timeout
+                                                           ,(i_Response) -> checkWriteResponse(v_TagPlan ,i_Response)
+                                                           ,false
+                                                           ,v_PlcConn
+                                                           ,v_LogBuffer);
+            v_PlcConn = null;   // 连接已交由请求完成时归还
+            return v_Ret;
         }
         catch (Exception exce)
         {
-            v_Ret = false;
             $Logger.error(exce);
+            return CompletableFuture.completedFuture(false);
         }
         finally
         {
-            this.close(v_PlcConn);
+            this.returnConnection(v_PlcConn);
         }
+    }
         
-        $Logger.info(v_LogBuffer.toString());
         
-        return v_Ret;
+    
+    /**
+     * 检查写入结果，所有数据项写入成功时为真
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_TagPlan   请求计划
+     * @param i_Response  PLC写入结果
+     * @return
+     */
+    private static boolean checkWriteResponse(PLCTagPlan i_TagPlan ,PlcWriteResponse i_Response)
+    {
+        for (int x=0; x<i_TagPlan.getCount(); x++)
+        {
+            PLCDataItemConfig v_Item = i_TagPlan.getItem(x);
+            if ( i_Response.getResponseCode(v_Item.getCode()) != PlcResponseCode.OK )
+            {
+                $Logger.error("写入PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName()
+                            + "\n" + i_Response.getResponseCode(v_Item.getCode()).getValue() + "=" + i_Response.getResponseCode(v_Item.getCode()).name()
+                            + "\n寄存器名：" + v_Item.getRegisterType().getValue()
+                            + "\n寄存编号：" + v_Item.getRegisterNo()
+                            + "\n偏移数量：" + v_Item.getRegisterOffset()
+                            + "\n数据类型：" + v_Item.getDataType().getValue());
+                return false;
+            }
+        }
+        return true;
     }
     
     
@@ -228,6 +271,7 @@ public class PlcIO4X implements IPlcIO
      * @author      ZhengWei(HY)
      * @createDate  2024-11-27
      * @version     v1.0
+     *              v4.0  2026-10-18  优化：等待异步读取的结果
      *
      * @param i_Datagram  数据报文
      * @param i_Timeout   数据读写超时时长（单位：毫秒）
@@ -235,9 +279,79 @@ public class PlcIO4X implements IPlcIO
      */
     public Map<String ,Object> readDatas(PLCDatagramConfig i_Datagram ,long i_Timeout)
     {
-        StringBuilder       v_LogBuffer = new StringBuilder();
-        Map<String ,Object> v_Datas     = new LinkedHashMap<String ,Object>();
-        PlcConnection       v_PlcConn   = null;
+        return this.readDatasAsync(i_Datagram ,i_Timeout).join();
+    }
+    
+    
+    
+    /**
+     * 订阅数据报文。后台按订阅周期异步读取，推送给监听者
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Cycle     订阅周期（单位：毫秒）。变化模式下为检查变化的周期
+     * @param i_OnChange  是否为变化模式（仅推送值变化了的数据项）。为假时为周期模式（每个周期推送所有数据项）
+     * @param i_Listener  监听者
+     * @return
+     */
+    public PlcSubscription subscribe(PLCDatagramConfig i_Datagram ,long i_Cycle ,boolean i_OnChange ,IPlcListener i_Listener)
+    {
+        return this.subscriptions.add(new PlcSubscription(this ,i_Datagram ,i_Cycle ,i_OnChange ,i_Listener));
+    }
+    
+    
+    
+    /**
+     * 接管订阅。订阅从原来的PLC读写迁移到本读写上继续（如XPLC重新连接时），监听者无须重新订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Subscription  订阅
+     * @return                订阅已取消时返回原订阅（不再开始）
+     */
+    public PlcSubscription subscribe(PlcSubscription i_Subscription)
+    {
+        return this.subscriptions.add(i_Subscription);
+    }
+    
+    
+    
+    /**
+     * 获取本读写上所有未取消的订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public List<PlcSubscription> getSubscriptions()
+    {
+        return this.subscriptions.getSubscriptions();
+    }
+    
+    
+    
+    /**
+     * 异步读取数据。在调用线程上借用连接、组装请求，PLC4X响应后在其通讯线程上解析数据并归还连接
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @return
+     */
+    public CompletableFuture<Map<String ,Object>> readDatasAsync(PLCDatagramConfig i_Datagram ,long i_Timeout)
+    {
+        StringBuilder v_LogBuffer = new StringBuilder();
+        PlcConnection v_PlcConn   = null;
         
         v_LogBuffer.append(Date.getNowTime().getFullMilli()).append("\n");
         
@@ -246,188 +360,529 @@ public class PlcIO4X implements IPlcIO
             if ( i_Datagram == null )
             {
                 $Logger.error("Datagram is null");
-                return v_Datas;
+                return CompletableFuture.completedFuture(new LinkedHashMap<String ,Object>());
             }
             
             v_PlcConn = this.connect().getParamObj();
             if ( v_PlcConn == null )
             {
                 $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
-                return v_Datas;
+                return CompletableFuture.completedFuture(new LinkedHashMap<String ,Object>());
             }
             
             String v_Titel = "PLC Read " + Help.NVL(this.plcConfig.getComment()) + this.plcConfig.getXid() + "." + Help.NVL(i_Datagram.getComment()) + i_Datagram.getXid();
             $Logger.info(v_Titel);
             v_LogBuffer.append(v_Titel).append("\n");
             
-            int                     v_ItemCount       = 0;
-            List<PLCDataItemConfig> v_Items           = i_Datagram.getItems();
-            PlcReadResponse         v_PLCReadResponse = null;
-            // synchronized ( this )
-            // {
-            PlcReadRequest.Builder v_PLCReadReqBuilder = v_PlcConn.readRequestBuilder();
-            
-            for (PLCDataItemConfig v_Item : v_Items)
+            CompletableFuture<Map<String ,Object>> v_Ret = null;
+            if ( PLCSnapshotType.get(i_Datagram.getSnapshot()) != null )
             {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
-                {
-                    continue;
-                }
-                
-                v_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "：" + v_PLCTagAddress).append("\n");
-                v_PLCReadReqBuilder.addTagAddress(v_Item.getCode() ,v_PLCTagAddress);
-                v_ItemCount++;
+                v_Ret = this.readSnapshot(v_PlcConn ,i_Datagram ,i_Timeout ,v_LogBuffer);
             }
-            
-            if ( v_ItemCount <= 0 )
+            else
             {
-                $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
-                return v_Datas;
+                v_Ret = this.readItems(v_PlcConn ,i_Datagram ,i_Timeout ,v_LogBuffer);
             }
             
-            long           v_Timeout        = i_Timeout <= 0L ? 0L : i_Timeout;
-            PlcReadRequest v_PlcReadRequest = v_PLCReadReqBuilder.build();
-            v_PLCReadResponse = v_PlcReadRequest.execute().get(v_Timeout ,TimeUnit.MILLISECONDS);
-            // }
-            
-            for (PLCDataItemConfig v_Item : v_Items)
+            if ( v_Ret == null )
             {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
-                {
-                    continue;
-                }
-                
-                if ( v_PLCReadResponse.getResponseCode(v_Item.getCode()) != PlcResponseCode.OK )
-                {
-                    $Logger.error("读取PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName() 
-                                + "\n" + v_PLCReadResponse.getResponseCode(v_Item.getCode()).getValue() + "=" + v_PLCReadResponse.getResponseCode(v_Item.getCode()).name()
-                                + "\n寄存器名：" + v_Item.getRegisterType().getValue()
-                                + "\n寄存编号：" + v_Item.getRegisterNo()
-                                + "\n偏移数量：" + v_Item.getRegisterOffset()
-                                + "\n数据类型：" + v_Item.getDataType().getValue());
-                    continue;
-                }
-                
-                Object v_DataValue = this.readItemData(v_PLCReadResponse ,v_Item.getCode() ,v_Item.getDataType().getValue());
-                if ( v_DataValue != null )
-                {
-                    v_Datas.put(v_Item.getCode() ,v_DataValue);
-                }
-                
-                v_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "=" + v_DataValue).append("\n");
+                return CompletableFuture.completedFuture(new LinkedHashMap<String ,Object>());
             }
+            
+            v_PlcConn = null;   // 连接已交由请求完成时归还
+            return v_Ret.exceptionally((i_Error) ->
+            {
+                $Logger.error(i_Error);
+                return new LinkedHashMap<String ,Object>();
+            })
+            .whenComplete((i_Datas ,i_Error) -> $Logger.info(v_LogBuffer.toString()));
         }
         catch (Exception exce)
         {
             $Logger.error(exce);
+            return CompletableFuture.completedFuture(new LinkedHashMap<String ,Object>());
         }
         finally
         {
-            this.close(v_PlcConn);
+            this.returnConnection(v_PlcConn);
         }
-        
-        $Logger.info(v_LogBuffer.toString());
-        
-        return v_Datas;
     }
     
     
     
     /**
-     * 读取PLC结果中的一项数据
+     * 数据项模式：每个数据项一个请求标签，打包在一次请求中读取（大数据报文拆分为多个请求并行读取）
      * 
      * @author      ZhengWei(HY)
-     * @createDate  2024-12-04
+     * @createDate  2026-10-18
      * @version     v1.0
      *
-     * @param i_PLCReadResponse  PLC结果集
-     * @param i_ItemCode         PLC变量名称
-     * @param i_DataType         PLC数据类型
-     * @return                   未成功时返回NULL
+     * @param i_PlcConn     PLC连接。请求发出后，由请求完成时归还
+     * @param i_Datagram    数据报文
+     * @param i_Timeout     数据读写超时时长（单位：毫秒）
+     * @param io_LogBuffer  日志
+     * @return              没有可读取的数据项时返回NULL（连接仍由调用者归还）
      */
-    private Object readItemData(PlcReadResponse i_PLCReadResponse ,String i_ItemCode ,String i_DataType)
+    private CompletableFuture<Map<String ,Object>> readItems(PlcConnection i_PlcConn ,PLCDatagramConfig i_Datagram ,long i_Timeout ,StringBuilder io_LogBuffer)
     {
-        PLCDataType v_DataType  = PLCDataType.get(i_DataType);
-        int         v_NumValues = i_PLCReadResponse.getNumberOfValues(i_ItemCode);
-        for (int v_Index=0; v_Index<v_NumValues; v_Index++)
+        int        v_ItemCount = 0;
+        PLCTagPlan v_TagPlan   = this.getTagPlan(i_Datagram ,i_PlcConn);
+            
+        for (int x=0; x<v_TagPlan.getCount(); x++)
         {
-            // 布尔
-            if ( PLCDataType.Bool.equals(v_DataType) )
+            PLCDataItemConfig v_Item          = v_TagPlan.getItem(x);
+            String            v_PLCTagAddress = v_TagPlan.getTagAddress(x);
+            if ( v_TagPlan.getTag(x) == null )
             {
-                Boolean v_Value = i_PLCReadResponse.getBoolean(i_ItemCode ,v_Index);
-                return v_Value;
+                $Logger.error("PLC4X不支持定时器区域：" + v_Item.getCode() + " " + v_Item.getName() + " " + v_PLCTagAddress);
+                continue;
             }
-            // 字节
-            else if ( PLCDataType.Byte.equals(v_DataType) )
+                
+            io_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "：" + v_PLCTagAddress).append("\n");
+            v_ItemCount++;
+        }
+            
+        if ( v_ItemCount <= 0 )
+        {
+            $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
+            return null;
+        }
+            
+        return this.readParts(i_PlcConn ,v_TagPlan ,i_Timeout ,io_LogBuffer).thenApply((i_Responses) -> parseItems(v_TagPlan ,i_Responses ,io_LogBuffer));
+    }
+            
+    
+    
+    /**
+     * 解析数据项模式的读取结果
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_TagPlan     请求计划
+     * @param i_Responses   各请求标签所在的PLC读取结果。请求失败的为NULL
+     * @param io_LogBuffer  日志
+     * @return
+     */
+    private static Map<String ,Object> parseItems(PLCTagPlan i_TagPlan ,PlcReadResponse [] i_Responses ,StringBuilder io_LogBuffer)
+    {
+        Map<String ,Object> v_Datas = new LinkedHashMap<String ,Object>();
+        
+        for (int x=0; x<i_TagPlan.getCount(); x++)
+        {
+            PLCDataItemConfig v_Item     = i_TagPlan.getItem(x);
+            PlcReadResponse   v_Response = i_Responses[x];
+            if ( v_Response == null )
             {
-                Byte v_Value = i_PLCReadResponse.getByte(i_ItemCode ,v_Index);
-                return v_Value;
+                continue;   // PLC4X不支持的，或请求失败的（已记录日志）
             }
-            // 字
-            else if ( PLCDataType.Word.equals(v_DataType) )
+                
+            if ( v_Response.getResponseCode(v_Item.getCode()) != PlcResponseCode.OK )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                $Logger.error("读取PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName() 
+                            + "\n" + v_Response.getResponseCode(v_Item.getCode()).getValue() + "=" + v_Response.getResponseCode(v_Item.getCode()).name()
+                            + "\n寄存器名：" + v_Item.getRegisterType().getValue()
+                            + "\n寄存编号：" + v_Item.getRegisterNo()
+                            + "\n偏移数量：" + v_Item.getRegisterOffset()
+                            + "\n数据类型：" + v_Item.getDataType().getValue());
+                continue;
             }
-            // 双字
-            else if ( PLCDataType.DWord.equals(v_DataType) )
+                
+            PLCTagDecoder v_Decoder   = i_TagPlan.getDecoder(x);
+            Object        v_DataValue = v_Decoder == null ? null : v_Decoder.decode(v_Response ,v_Item.getCode());
+            if ( v_DataValue != null )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                v_Datas.put(v_Item.getCode() ,v_DataValue);
             }
-            // 8位整数
-            else if ( PLCDataType.SInt.equals(v_DataType) )
+                
+            io_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "=" + v_DataValue).append("\n");
+        }
+        
+        return v_Datas;
+    }
+    
+    
+    
+    /**
+     * 快照模式：同一数据块（寄存器区域）的所有数据项合并为一个字节区间，按PDU大小分块后打包在一次请求中读取，
+     * 再在本地解析所有数据项。
+     * 
+     * 注：PLC4X无法查询数据块的大小，block模式也按字节区间读取
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *              v2.0  2026-10-18  优化：异步读取，返回读取结果的Future
+     *              v3.0  2026-10-18  添加：大数据报文按PDU拆分为多个请求，在多个连接上并行读取
+     *
+     * @param i_PlcConn     PLC连接。请求发出后，由请求完成时归还
+     * @param i_Datagram    数据报文
+     * @param i_Timeout     数据读写超时时长（单位：毫秒）
+     * @param io_LogBuffer  日志
+     * @return              没有可读取的数据项时返回NULL（连接仍由调用者归还）
+     */
+    private CompletableFuture<Map<String ,Object>> readSnapshot(PlcConnection i_PlcConn ,PLCDatagramConfig i_Datagram ,long i_Timeout ,StringBuilder io_LogBuffer)
+    {
+        PLCDatagramPlan v_Plan = i_Datagram.gatPlan();
+        if ( v_Plan == null || !v_Plan.isValid(i_Datagram.getItems() ,PLCDatagramPlan.$SnapshotGap ,0) )
+        {
+            v_Plan = new PLCDatagramPlan(i_Datagram.getItems() ,PLCDatagramPlan.$SnapshotGap ,0);
+            i_Datagram.satPlan(v_Plan);
+        }
+        
+        if ( v_Plan.getItemCount() <= 0 )
+        {
+            $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
+            return null;
+        }
+        
+        // 分块大小：设备准许的PDU大小 - 18字节的响应报文头及读取项头。取偶数，计数器每个编号2个字节
+        int        v_Chunk    = (this.getPduSize() - 18) / 2 * 2;
+        String     v_Protocol = this.plcConfig.getProtocol();
+        PLCTagPlan v_TagPlan  = i_Datagram.gatTagPlan(PLCTagPlan.makeKey(v_Protocol ,true));
+        if ( v_TagPlan == null || !v_TagPlan.isValid(v_Plan ,v_Chunk ,v_Protocol) )
+        {
+            v_TagPlan = new PLCTagPlan(v_Plan ,v_Chunk ,v_Protocol ,i_PlcConn);
+            i_Datagram.satTagPlan(v_TagPlan);
+        }
+        
+        for (int x=0; x<v_Plan.getRangeCount(); x++)
+        {
+            if ( v_Plan.getRangeArea(x) == S7.S7AreaTM )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                $Logger.error("PLC4X不支持定时器区域：DatagramXID[" + i_Datagram.getXid() + "] R" + x);
             }
-            // 8位无符号整数
-            else if ( PLCDataType.USInt.equals(v_DataType) )
+        }
+        
+        io_LogBuffer.append("PLC Read " + v_Plan.getItemCount() + " items in " + v_Plan.getRangeCount() + " ranges, snapshot").append("\n");
+        
+        PLCDatagramPlan v_SnapshotPlan = v_Plan;
+        PLCTagPlan      v_SnapshotTags = v_TagPlan;
+        return this.readParts(i_PlcConn ,v_TagPlan ,i_Timeout ,io_LogBuffer).thenApply((i_Responses) -> parseSnapshot(i_Datagram ,v_SnapshotPlan ,v_SnapshotTags ,i_Responses ,io_LogBuffer));
+    }
+    
+    
+    
+    /**
+     * 解析快照模式的读取结果：各分块的数据先复制到过程映像中，再在本地解析所有数据项
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram    数据报文
+     * @param i_Plan        执行计划
+     * @param i_TagPlan     快照的请求计划
+     * @param i_Responses   各请求标签所在的PLC读取结果。请求失败的为NULL
+     * @param io_LogBuffer  日志
+     * @return
+     */
+    private static Map<String ,Object> parseSnapshot(PLCDatagramConfig i_Datagram ,PLCDatagramPlan i_Plan ,PLCTagPlan i_TagPlan ,PlcReadResponse [] i_Responses ,StringBuilder io_LogBuffer)
+    {
+        Map<String ,Object> v_Datas   = new LinkedHashMap<String ,Object>();
+        byte []             v_Image   = new byte[i_Plan.getImageSize()];
+        boolean []          v_Succeed = new boolean[i_Plan.getRangeCount()];
+        
+        for (int x=0; x<i_Plan.getRangeCount(); x++)
+        {
+            v_Succeed[x] = i_Plan.getRangeArea(x) != S7.S7AreaTM;
+        }
+        
+        for (int x=0; x<i_TagPlan.getCount(); x++)
+        {
+            int             v_Range    = i_TagPlan.getChunkRange(x);
+            String          v_TagName  = i_TagPlan.getName(x);
+            PlcReadResponse v_Response = i_Responses[x];
+            if ( v_Response == null )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                v_Succeed[v_Range] = false;   // 请求失败（已记录日志）
+                continue;
             }
-            // 16位整数
-            else if ( PLCDataType.Int.equals(v_DataType) )
+            
+            if ( v_Response.getResponseCode(v_TagName) != PlcResponseCode.OK )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                $Logger.error("读取PLC数据失败：DatagramXID[" + i_Datagram.getXid() + "] " + v_TagName
+                            + "\n" + v_Response.getResponseCode(v_TagName).getValue() + "=" + v_Response.getResponseCode(v_TagName).name());
+                v_Succeed[v_Range] = false;
+                continue;
             }
-            // 32位整数
-            else if ( PLCDataType.DInt.equals(v_DataType) )
+                
+            // PLC4X的BYTE为无符号数（0~255），按整数取值后截为字节。计数器按字取值（原始的BCD码）
+            int      v_Element = PLCDatagramPlan.getElementSize(i_Plan.getRangeArea(v_Range));
+            int      v_Offset  = i_Plan.getRangeOffset(v_Range) + i_TagPlan.getChunkStart(x);
+            PlcValue v_Values  = v_Response.getPlcValue(v_TagName);
+            for (PlcValue v_Value : v_Values.isList() ? v_Values.getList() : Collections.singletonList(v_Values))
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                if ( v_Element > 1 )
+                {
+                    S7.SetWordAt(v_Image ,v_Offset ,v_Value.getInt());
+                }
+                else
+                {
+                    v_Image[v_Offset] = (byte) v_Value.getInt();
+                }
+                v_Offset += v_Element;
             }
-            // 32位无符号整数
-            else if ( PLCDataType.UDInt.equals(i_DataType) )
+        }
+        
+        for (int v_Index=0; v_Index<i_Plan.getItemCount(); v_Index++)
+        {
+            PLCDataItemConfig v_Item = i_Plan.getItem(v_Index);
+            if ( !v_Succeed[i_Plan.getItemRange(v_Index)] )
             {
-                Integer v_Value = i_PLCReadResponse.getInteger(i_ItemCode ,v_Index);
-                return v_Value;
+                $Logger.error("读取PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName() 
+                            + "\n寄存器名：" + v_Item.getRegisterType().getValue()
+                            + "\n寄存编号：" + v_Item.getRegisterNo()
+                            + "\n偏移数量：" + v_Item.getRegisterOffset()
+                            + "\n数据类型：" + v_Item.getDataType().getValue());
+                continue;
             }
-            // 浮点
-            else if ( PLCDataType.Real.equals(v_DataType) )
+            
+            Object v_DataValue = PLCByteData.getByteData(i_Plan.getDataType(v_Index) ,i_Plan.getAddress(v_Index) ,v_Image ,i_Plan.getItemOffset(v_Index));
+            if ( v_DataValue != null )
             {
-                Float v_Value = i_PLCReadResponse.getFloat(i_ItemCode ,v_Index);
-                return v_Value;
+                v_Datas.put(v_Item.getCode() ,v_DataValue);
             }
-            // 双精度浮点
-            else if ( PLCDataType.LReal.equals(v_DataType) )
+            
+            io_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "：" + i_Plan.getTagAddress(v_Index) + "=" + v_DataValue).append("\n");
+        }
+        
+        return v_Datas;
+    }
+    
+    
+    
+    /**
+     * 发出读取请求。请求计划读取的总字节数超过并行拆分的阈值时，按PDU大小拆分为多个部分，
+     * 每个部分一个请求，在多个连接上并行读取；否则在一个连接上用一次请求读取。
+     * 
+     * 额外的连接不等待地从连接池借用，借不到时按已借到的连接数拆分，所以不会超过设备的连接数限制。
+     * 各连接在各自的请求完成时归还。某个部分失败时，只影响该部分的请求标签。
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PlcConn     PLC连接。请求发出后，由请求完成时归还
+     * @param i_TagPlan     请求计划
+     * @param i_Timeout     数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @param io_LogBuffer  日志
+     * @return              各请求标签所在的PLC读取结果（下标同请求计划）。PLC4X不支持的、请求失败的为NULL
+     */
+    private CompletableFuture<PlcReadResponse []> readParts(PlcConnection i_PlcConn ,PLCTagPlan i_TagPlan ,long i_Timeout ,StringBuilder io_LogBuffer)
+    {
+        int                 v_PduSize   = this.getPduSize();
+        int                 v_SplitSize = Help.NVL(this.plcConfig.getSplitSize() ,0);
+        int                 v_MaxConn   = Help.max(Help.NVL(this.plcConfig.getMaxConn()) ,1);
+        int [][]            v_Parts     = i_TagPlan.split(v_PduSize ,v_SplitSize > 0 && i_TagPlan.getByteSize() > v_SplitSize ? v_MaxConn : 1);
+        List<PlcConnection> v_PlcConns  = new ArrayList<PlcConnection>();
+        PlcConnectionPool   v_Pool      = this.plcConnectPool;
+        
+        v_PlcConns.add(i_PlcConn);
+        for (int x=1; x<v_Parts.length && v_Pool != null; x++)
+        {
+            PlcConnection v_PlcConn = v_Pool.tryBorrowConnection();
+            if ( v_PlcConn == null )
             {
-                Double v_Value = i_PLCReadResponse.getDouble(i_ItemCode ,v_Index);
-                return v_Value;
+                break;
             }
-            // 字符串
-            else if ( PLCDataType.String.equals(v_DataType) )
+            v_PlcConns.add(v_PlcConn);
+        }
+        if ( v_PlcConns.size() < v_Parts.length )
+        {
+            v_Parts = i_TagPlan.split(v_PduSize ,v_PlcConns.size());
+        }
+        
+        // 先组装所有请求再一起发出。组装异常时归还额外借用的连接，首个连接仍由调用者归还
+        PlcReadRequest [] v_Requests = new PlcReadRequest[v_Parts.length];
+        try
+        {
+            for (int v_Part=0; v_Part<v_Parts.length; v_Part++)
+            {
+                PlcReadRequest.Builder v_Builder = v_PlcConns.get(v_Part).readRequestBuilder();
+                for (int v_Index : v_Parts[v_Part])
+                {
+                    v_Builder.addTag(i_TagPlan.getName(v_Index) ,i_TagPlan.getTag(v_Index));
+                }
+                v_Requests[v_Part] = v_Builder.build();
+            }
+        }
+        catch (RuntimeException exce)
+        {
+            for (int x=1; x<v_PlcConns.size(); x++)
             {
-                String v_Value = i_PLCReadResponse.getString(i_ItemCode ,v_Index);
-                return v_Value;
+                this.returnConnection(v_PlcConns.get(x));
             }
+            throw exce;
+        }
+        
+        if ( v_Parts.length > 1 )
+        {
+            io_LogBuffer.append("PLC Read " + i_TagPlan.getByteSize() + " bytes in " + v_Parts.length + " parallel requests").append("\n");
+        }
+        
+        PlcReadResponse []      v_Responses = new PlcReadResponse[i_TagPlan.getCount()];
+        CompletableFuture<?> [] v_Futures   = new CompletableFuture<?>[v_Parts.length];
+        long                    v_Timeout   = this.getTimeout(i_Timeout);
+        for (int v_Part=0; v_Part<v_Parts.length; v_Part++)
+        {
+            int []        v_Indexes = v_Parts[v_Part];
+            PlcConnection v_PlcConn = v_PlcConns.get(v_Part);
+            
+            v_Futures[v_Part] = v_Requests[v_Part].execute().orTimeout(v_Timeout ,TimeUnit.MILLISECONDS).handle((i_Response ,i_Error) ->
+            {
+                this.returnConnection(v_PlcConn);
+                if ( i_Error != null )
+                {
+                    $Logger.error(i_Error);
+                }
+                else
+                {
+                    for (int v_Index : v_Indexes)
+                    {
+                        v_Responses[v_Index] = i_Response;
+                    }
+                }
+                return null;
+            });
         }
         
-        return null;
+        return CompletableFuture.allOf(v_Futures).thenApply((i_Void) -> v_Responses);
+    }
+    
+    
+    
+    /**
+     * 按PDU拆分请求时的PDU大小（单位：字节）
+     * 
+     * PLC4X不公开设备准许的PDU大小，配置的只是请求的大小，设备可能准许得更小（如请求960，准许480）。
+     * 所以不超过所有S7设备都准许的240字节，除非配置声明了请求的大小已被设备准许
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    private int getPduSize()
+    {
+        int v_PduSize = Help.NVL(this.plcConfig.getPduSize() ,PLCConfig.$MinPduSize);
+        if ( Boolean.TRUE.equals(this.plcConfig.getPduSizeGranted()) )
+        {
+            return v_PduSize;
+        }
+        return Math.min(v_PduSize ,PLCConfig.$MinPduSize);
+    }
+    
+    
+    
+    /**
+     * 本次读写的超时时长
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Timeout  数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @return
+     */
+    private long getTimeout(long i_Timeout)
+    {
+        return i_Timeout <= 0L ? Help.NVL(this.plcConfig.getTimeout() ,PLCConfig.$Timeout) : i_Timeout;
+    }
+    
+    
+    
+    /**
+     * 等待请求完成（不占用线程）：超时后失败，响应后在PLC4X的通讯线程上解析，最后归还连接并输出日志。
+     * 
+     * 返回的Future不会异常完成，超时或解析异常时记录日志，完成结果为失败时的默认值
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param <R>           PLC4X的响应类型
+     * @param <T>           完成结果的类型
+     * @param i_Request     已发出的请求
+     * @param i_Timeout     数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @param i_Parser      响应的解析方法
+     * @param i_Failed      失败时的完成结果
+     * @param i_PlcConn     PLC连接。请求完成时归还
+     * @param i_LogBuffer   日志
+     * @return
+     */
+    private <R ,T> CompletableFuture<T> execute(CompletableFuture<R> i_Request ,long i_Timeout ,Function<R ,T> i_Parser ,T i_Failed ,PlcConnection i_PlcConn ,StringBuilder i_LogBuffer)
+    {
+        return i_Request.orTimeout(this.getTimeout(i_Timeout) ,TimeUnit.MILLISECONDS)
+                        .thenApply(i_Parser)
+                        .exceptionally((i_Error) ->
+                        {
+                            $Logger.error(i_Error);
+                            return i_Failed;
+                        })
+                        .whenComplete((i_Result ,i_Error) ->
+                        {
+                            this.returnConnection(i_PlcConn);
+                            $Logger.info(i_LogBuffer.toString());
+                        });
+    }
+    
+    
+    
+    /**
+     * 获取数据报文的请求计划（数据项模式）。首次或数据项集合变化后，生成并由PLC4X的驱动解析请求标签
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_PlcConn   PLC连接。用于解析请求地址
+     * @return
+     */
+    private PLCTagPlan getTagPlan(PLCDatagramConfig i_Datagram ,PlcConnection i_PlcConn)
+    {
+        String     v_Protocol = this.plcConfig.getProtocol();
+        PLCTagPlan v_TagPlan  = i_Datagram.gatTagPlan(PLCTagPlan.makeKey(v_Protocol ,false));
+        if ( v_TagPlan == null || !v_TagPlan.isValid(i_Datagram.getItems() ,v_Protocol) )
+        {
+            v_TagPlan = new PLCTagPlan(i_Datagram.getItems() ,v_Protocol ,i_PlcConn);
+            i_Datagram.satTagPlan(v_TagPlan);
+        }
+        return v_TagPlan;
+    }
+    
+    
+    
+    /**
+     * 转为PLC4X写入的数据。S5时间、计数器值在本地编码后写入，其它类型原样写入。
+     * 
+     * 注：PLC4X的S5TIME类型在读写数据块时异常，所以S5时间按字读写
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_DataType  PLC数据类型
+     * @param i_Value     数据
+     * @return
+     */
+    private static Object makeWriteValue(PLCDataType i_DataType ,Object i_Value)
+    {
+        if ( PLCDataType.S5Time.equals(i_DataType) )
+        {
+            return PLCByteData.toS5Time(Long.parseLong(i_Value.toString()));
+        }
+        else if ( PLCDataType.Counter.equals(i_DataType) )
+        {
+            return PLCByteData.toBCD(Integer.parseInt(i_Value.toString()));
+        }
+        else
+        {
+            return i_Value;
+        }
     }
     
     
@@ -516,19 +971,77 @@ public class PlcIO4X implements IPlcIO
      * @createDate  2025-08-19
      * @version     v1.0
      *              v2.0  2026-02-09  添加：升级为连接池
+     *              v5.0  2026-10-18  添加：连接对象为NULL时表示关闭PLC读写，取消本读写上的所有订阅并关闭连接池。
+     *                                之后再读写时，连接池按需重新创建
      * 
      * @param i_PlcConnection  PLC连接对象
      */
     public void close(PlcConnection i_PlcConnection)
     {
-        if ( this.plcConnectPool == null )
+        if ( i_PlcConnection != null )
         {
+            this.returnConnection(i_PlcConnection);
             return;
         }
         
+        this.subscriptions.close();
+        
+        synchronized ( this )
+        {
+            if ( this.plcConnectPool == null )
+            {
+                return;
+            }
+            
+            try
+            {
+                this.plcConnectPool.close();
+            }
+            catch (Exception exce)
+            {
+                $Logger.error(this.plcConfig.getXid() + " 连接关闭时异常" ,exce);
+            }
+            this.plcConnectPool = null;
+        }
+    }
+    
+    
+    
+    /**
+     * 归还连接到连接池。
+     * 
+     * 连接池已关闭（请求仍在途时关闭了PLC读写）或已重新创建时，连接不属于当前的连接池，直接断开
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     * 
+     * @param i_PlcConnection  PLC连接对象
+     */
+    private void returnConnection(PlcConnection i_PlcConnection)
+    {
+        if ( i_PlcConnection == null )
+        {
+            return;
+        }
+        
+        PlcConnectionPool v_Pool = this.plcConnectPool;
+        try
+        {
+            if ( v_Pool != null )
+            {
+                v_Pool.returnConnection(i_PlcConnection);
+                return;
+            }
+        }
+        catch (Exception exce)
+        {
+            $Logger.error(this.plcConfig.getXid() + " 连接归还时异常，直接断开" ,exce);
+        }
+        
         try
         {
-            this.plcConnectPool.returnConnection(i_PlcConnection);
+            i_PlcConnection.close();
         }
         catch (Exception exce)
         {
@@ -1,8 +1,19 @@
 package org.hy.common.plc.io;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
 
 import org.apache.plc4x.java.api.PlcConnection;
 import org.hy.common.Help;
@@ -10,11 +21,16 @@ import org.hy.common.Return;
 import org.hy.common.plc.data.PLCConfig;
 import org.hy.common.plc.data.PLCDataItemConfig;
 import org.hy.common.plc.data.PLCDatagramConfig;
-import org.hy.common.plc.util.PLCAddress;
+import org.hy.common.plc.enums.PLCSnapshotType;
+import org.hy.common.plc.pool.S7ClientPool;
 import org.hy.common.plc.util.PLCByteData;
+import org.hy.common.plc.util.PLCDatagramPlan;
 import org.hy.common.xml.log.Logger;
 
+import Moka7.S7;
+import Moka7.S7BlockInfo;
 import Moka7.S7Client;
+import Moka7.S7DataItem;
 
 
 
@@ -29,25 +45,66 @@ import Moka7.S7Client;
  *              v1.1  2025-12-10  修正：自动重连机制的问题：在关闭close()时，将 plcConnect 赋值为空
  *              v1.2  2026-01-08  优化：日志输出逻辑，方便在《日志分析》页面上排查问题
  *              v1.3  2026-02-08  修正：超时时长从秒变为毫秒单位
+ *              v2.0  2026-10-18  优化：读取数据时，一次请求打包多个数据项（S7 ReadMultiVars），减少网络往返次数
+ *                                优化：写入数据时，一次请求打包多个数据项（S7 WriteMultiVars），减少网络往返次数
+ *                                添加：协商请求的PDU大小
+ *                                优化：一个报文的所有数据项共用一个预分配的过程映像缓冲区，不再为每个数据项创建字节数组
+ *                                修正：连接时使用配置的访问端口，而不是固定的102端口
+ *                                添加：通讯指标按PLC设备配置汇总
+ *                                优化：读取数据时，相邻的数据项合并为连续区间读取（读取计划），进一步减少读取项和报文数量
+ *                                优化：数据报文编译为执行计划并缓存，轮询读写时不再解析地址、不再创建数据项的Map集合
+ *                                修正：布尔类型按位写入（S7位传输），不再覆盖同一字节中的其它位
+ *              v3.0  2026-10-18  添加：升级为S7客户端连接池，不同的数据报文可并行读写。通讯异常时仅销毁出错的S7客户端
+ *                                添加：读写超时时长作为一次调用的截止时间，连接及所有报文往返共用，用尽后快速失败
+ *                                添加：后台重连（指数退避加随机抖动），设备不可用期间读写立即失败
+ *                                优化：读取失败的数据项不再中断整个报文，失败区间内的数据项逐项重读，真正失败的数据项放入隔离区
+ *                                添加：快照模式。一次读取数据项覆盖的整个字节区间（或整个数据块），按PDU大小分块，再在本地解析
+ *                                添加：定时器、计数器区域，与其它区域一样合并读取
+ *                                添加：写入优先借用S7客户端，连接数用尽时不会被轮询读取饿死
+ *              v4.0  2026-10-18  添加：异步读写。在设备的读写线程上排队执行（线程数为最大连接数，写入优先），调用线程不再等待
+ *                                添加：订阅数据报文，后台按周期或变化推送给监听者
+ *                                修正：关闭时取消订阅、关闭异步读写的执行者。之后再读写时按需重新创建
  */
 public class PlcIOS200 implements IPlcIO
 {
     
-    private static final Logger $Logger = new Logger(PlcIOS200.class);
+    private static final Logger     $Logger  = new Logger(PlcIOS200.class);
+    
+    /** 异步读写任务的序号。同一优先级的任务按提交的先后顺序执行 */
+    private static final AtomicLong $TaskSeq = new AtomicLong();
     
     
     
     /** PLC设备配置 */
-    private PLCConfig plcConfig;
+    private PLCConfig                   plcConfig;
+    
+    /** PLC连接池 */
+    private S7ClientPool                plcConnectPool;
+    
+    /** 过程映像缓冲区。报文的所有数据项按顺序读写在此缓冲区中，按需扩容、重复使用。每个线程独享一个 */
+    private final ThreadLocal<byte []>  processImage;
+    
+    /** 数据块快照的缓冲区（快照模式为block时使用）。按需扩容、重复使用。每个线程独享一个 */
+    private final ThreadLocal<byte []>  blockImage;
     
-    /** PLC连接对象 */
-    private S7Client  plcConnect;
+    /** 数据块的大小（快照模式为block时使用）。Map.key为数据块编号，Map.value为字节数 */
+    private final Map<Integer ,Integer> blockSizes;
+    
+    /** 异步读写的执行者（首次异步读写时创建） */
+    private ThreadPoolExecutor          asyncExecutor;
+    
+    /** 本读写上的所有订阅 */
+    private final PlcSubscriptions      subscriptions;
     
     
     
     public PlcIOS200(PLCConfig i_PLCConfig)
     {
-        this.plcConfig = i_PLCConfig;
+        this.plcConfig     = i_PLCConfig;
+        this.processImage  = new ThreadLocal<byte []>();
+        this.blockImage    = new ThreadLocal<byte []>();
+        this.blockSizes    = new ConcurrentHashMap<Integer ,Integer>();
+        this.subscriptions = new PlcSubscriptions(this);
     }
     
     
@@ -83,7 +140,7 @@ public class PlcIOS200 implements IPlcIO
     @Deprecated
     public Object getConnectObject()
     {
-        return this.plcConnect;
+        return this.plcConnectPool;
     }
     
     
@@ -104,6 +161,7 @@ public class PlcIOS200 implements IPlcIO
     {
         StringBuilder v_LogBuffer = new StringBuilder();
         boolean       v_Ret       = true;
+        S7Client      v_Client    = null;
         
         try
         {
@@ -114,37 +172,28 @@ public class PlcIOS200 implements IPlcIO
                 return false;
             }
             
-            synchronized ( this )
+            v_Client = this.borrowClient(i_Timeout ,true);
+            if ( v_Client == null )
             {
-                if ( !this.isConnected() )
-                {
-                    if ( !this.connect().booleanValue() )
-                    {
-                        $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
-                        v_Ret = false;
-                        return false;
-                    }
-                }
+                $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
+                v_Ret = false;
+                return false;
             }
             
             String v_Titel = "PLC Write " + Help.NVL(this.plcConfig.getComment()) + this.plcConfig.getXid() + "." + Help.NVL(i_Datagram.getComment()) + i_Datagram.getXid();
             $Logger.info(v_Titel);
             v_LogBuffer.append(v_Titel).append("\n");
             
-            List<PLCDataItemConfig>        v_Items              = i_Datagram.getItems();
-            int                            v_ItemCount          = 0;
-            Map<String ,PLCDataItemConfig> v_PlcWriteReqBuilder = new LinkedHashMap<String ,PLCDataItemConfig>();
+            PLCDatagramPlan v_Plan = this.getPlan(i_Datagram ,v_Client);
+            byte []         v_Image = this.getProcessImage(v_Plan.getWriteImageSize());
             
-            for (PLCDataItemConfig v_Item : v_Items)
+            // 所有数据项按顺序编码到同一个过程映像缓冲区中
+            Arrays.fill(v_Image ,0 ,v_Plan.getWriteImageSize() ,(byte) 0);
+            for (int v_Index=0; v_Index<v_Plan.getItemCount(); v_Index++)
             {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
-                {
-                    continue;
-                }
-                
-                Object v_DataItemValue = Help.getValueIgnoreCase(i_Datas ,v_Item.getCode());
-                if ( v_DataItemValue == null )
+                PLCDataItemConfig v_Item  = v_Plan.getItem(v_Index);
+                Object            v_Value = Help.getValueIgnoreCase(i_Datas ,v_Item.getCode());
+                if ( v_Value == null )
                 {
                     $Logger.error("写入PLC数据为空：" + v_Item.getCode() + " " + v_Item.getName()
                                 + "\n寄存器名：" + v_Item.getRegisterType().getValue()
@@ -155,42 +204,54 @@ public class PlcIOS200 implements IPlcIO
                     break;
                 }
                 
-                v_LogBuffer.append("PLC Write " + v_Item.getName() + v_Item.getCode() + "：" + v_PLCTagAddress + "=" + v_DataItemValue).append("\n");
-                v_PlcWriteReqBuilder.put(v_Item.getCode() ,v_Item);
-                v_ItemCount++;
+                v_LogBuffer.append("PLC Write " + v_Item.getName() + v_Item.getCode() + "：" + v_Plan.getTagAddress(v_Index) + "=" + v_Value).append("\n");
+                PLCByteData.setByteData(v_Plan.getDataType(v_Index) ,v_Plan.getAddress(v_Index) ,v_Value ,v_Image ,v_Plan.getWriteOffset(v_Index));
             }
             
-            if ( v_ItemCount <= 0 )
+            if ( v_Plan.getItemCount() <= 0 )
             {
                 v_Ret = false;
                 $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
             }
             else if ( v_Ret )
             {
-                for (Map.Entry<String ,PLCDataItemConfig> v_KeyValue : v_PlcWriteReqBuilder.entrySet())
+                // 一次请求打包多个数据项，按协商的PDU大小自动拆分成尽量少的往返次数
+                S7DataItem [] v_S7Items = v_Plan.makeS7WriteItems(v_Image);
+                int           v_Result  = v_Client.WriteMultiVars(v_S7Items ,v_S7Items.length);
+                if ( v_Result != 0 )
                 {
-                    PLCDataItemConfig v_Item     = v_KeyValue.getValue();
-                    PLCAddress        v_PA       = new PLCAddress(v_Item.getRegisterNo() ,v_Item.getRegisterOffset());
-                    Object            v_Value    = Help.getValueIgnoreCase(i_Datas ,v_KeyValue.getKey());
-                    byte []           v_ByteData = PLCByteData.setByteData(v_Item.getDataType() ,v_PA ,v_Value);
-                    int               v_Result   = this.plcConnect.WriteArea(v_PA.getRegisterType().getS200() 
-                                                                            ,v_PA.getRegisterNo()
-                                                                            ,v_PA.getOffsetByte() 
-                                                                            ,1
-                                                                            ,v_ByteData);
-                    if ( v_Result != 0 )
+                    $Logger.error("写入PLC数据失败：DatagramXID[" + i_Datagram.getXid() + "]" 
+                                + "\n异常编码：" + v_Result + " " + S7Client.ErrorText(v_Result));
+                    v_Ret = false;
+                }
+                
+                for (int v_Index=0; v_Index<v_S7Items.length; v_Index++)
+                {
+                    if ( v_S7Items[v_Index].Result != 0 )
                     {
-                        $Logger.error("写入PLC数据失败：" + v_KeyValue.getKey() + " " + v_Item.getName()
-                                    + "\n异常编码：" + v_Result
+                        PLCDataItemConfig v_Item = v_Plan.getItem(v_Index);
+                        $Logger.error("写入PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName()
+                                    + "\n异常编码：" + v_S7Items[v_Index].Result
                                     + "\n寄存器名：" + v_Item.getRegisterType().getValue()
                                     + "\n寄存编号：" + v_Item.getRegisterNo()
                                     + "\n偏移数量：" + v_Item.getRegisterOffset()
                                     + "\n数据类型：" + v_Item.getDataType().getValue());
                         v_Ret = false;
-                        break;
                     }
                 }
             }
+            
+            // 隔离区中的数据项（读取时已判定地址错误）不写入，报告写入失败
+            for (Map.Entry<String ,Integer> v_Bad : v_Plan.getQuarantine().entrySet())
+            {
+                if ( Help.getValueIgnoreCase(i_Datas ,v_Bad.getKey()) != null )
+                {
+                    $Logger.error("写入PLC数据失败：" + v_Bad.getKey()
+                                + "\n异常编码：" + v_Bad.getValue()
+                                + "\n已隔离，数据报文的配置变化前不再读写");
+                    v_Ret = false;
+                }
+            }
         }
         catch (Exception exce)
         {
@@ -198,9 +259,14 @@ public class PlcIOS200 implements IPlcIO
             $Logger.error(exce);
             if ( this.plcConfig.getReconnect() >= 1 )
             {
-                this.close(null);
+                this.invalidateClient(v_Client);
+                v_Client = null;
             }
         }
+        finally
+        {
+            this.returnClient(v_Client);
+        }
         
         $Logger.info(v_LogBuffer.toString());
         
@@ -209,6 +275,29 @@ public class PlcIOS200 implements IPlcIO
     
     
     
+    /**
+     * 异步写入数据。写入任务在设备的读写线程上排队（优先于排队中的读取），由读写线程借用S7客户端、写入并归还，
+     * 调用线程不再等待。
+     * 
+     * 注：S7客户端的连接是阻塞式的，同时进行的读写不超过最大连接数，更多的读写在队列中等待，不占用调用者的线程。
+     *     排队的时长也计入超时时长，超时后不再写入
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Datas     数据集合
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @return
+     */
+    public CompletableFuture<Boolean> writeDatasAsync(PLCDatagramConfig i_Datagram ,Map<String ,Object> i_Datas ,long i_Timeout)
+    {
+        return this.submit((i_Remaining) -> this.writeDatas(i_Datagram ,i_Datas ,i_Remaining) ,i_Timeout ,true ,false);
+    }
+    
+    
+    
     /**
      * 读取数据
      * 
@@ -224,6 +313,7 @@ public class PlcIOS200 implements IPlcIO
     {
         StringBuilder       v_LogBuffer = new StringBuilder();
         Map<String ,Object> v_Datas     = new LinkedHashMap<String ,Object>();
+        S7Client            v_Client    = null;
         
         try
         {
@@ -233,73 +323,84 @@ public class PlcIOS200 implements IPlcIO
                 return v_Datas;
             }
             
-            synchronized ( this )
+            v_Client = this.borrowClient(i_Timeout ,false);
+            if ( v_Client == null )
             {
-                if ( !this.isConnected() )
-                {
-                    if ( !this.connect().booleanValue() )
-                    {
-                        $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
-                        return v_Datas;
-                    }
-                }
+                $Logger.error("PlcXID[" + this.plcConfig.getXid() + "] connect error.");
+                return v_Datas;
             }
             
             String v_Titel = "PLC Read " + Help.NVL(this.plcConfig.getComment()) + this.plcConfig.getXid() + "." + Help.NVL(i_Datagram.getComment()) + i_Datagram.getXid();
             $Logger.info(v_Titel);
             v_LogBuffer.append(v_Titel).append("\n");
             
-            List<PLCDataItemConfig>        v_Items             = i_Datagram.getItems();
-            int                            v_ItemCount         = 0;
-            Map<String ,PLCDataItemConfig> v_PLCReadReqBuilder = new LinkedHashMap<String ,PLCDataItemConfig>();
+            // 相邻的数据项合并为连续区间，再将所有区间打包到一次请求中，按协商的PDU大小自动拆分成尽量少的往返次数
+            PLCDatagramPlan v_Plan = this.getPlan(i_Datagram ,v_Client);
+            if ( v_Plan.getItemCount() <= 0 )
+            {
+                $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
+                return v_Datas;
+            }
+            
+            PLCSnapshotType v_Snapshot = PLCSnapshotType.get(i_Datagram.getSnapshot());
+            byte []         v_Image    = this.getProcessImage(v_Plan.getImageSize());
+            S7DataItem []   v_S7Items  = v_Plan.makeS7Items(v_Image);
             
-            for (PLCDataItemConfig v_Item : v_Items)
+            v_LogBuffer.append("PLC Read " + v_Plan.getItemCount() + " items in " + v_S7Items.length + " ranges");
+            if ( v_Snapshot != null )
             {
-                String v_PLCTagAddress = v_Item.makePLCTagAddress();
-                if ( Help.isNull(v_PLCTagAddress) )
-                {
-                    continue;
-                }
-                
-                v_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "：" + v_PLCTagAddress).append("\n");
-                v_PLCReadReqBuilder.put(v_Item.getCode() ,v_Item);
-                v_ItemCount++;
+                v_LogBuffer.append(", snapshot " + v_Snapshot.getValue());
             }
+            if ( !v_Plan.getQuarantine().isEmpty() )
+            {
+                v_LogBuffer.append(", quarantine " + v_Plan.getQuarantine().keySet());
+            }
+            v_LogBuffer.append("\n");
             
-            if ( v_ItemCount <= 0 )
+            int                  v_Result      = v_Snapshot == null ? v_Client.ReadMultiVars(v_S7Items ,v_S7Items.length)
+                                                                    : this.readSnapshot(v_Client ,v_Plan ,v_Snapshot ,v_S7Items ,v_Image);
+            int []               v_ItemResults = new int[v_Plan.getItemCount()];
+            Map<String ,Integer> v_Bads        = null;
+            if ( v_Result != 0 )
             {
-                $Logger.error("DatagramXID[" + i_Datagram.getXid() + "] itemCount is 0");
-                return v_Datas;
+                $Logger.error("读取PLC数据失败：DatagramXID[" + i_Datagram.getXid() + "]" 
+                            + "\n异常编码：" + v_Result + " " + S7Client.ErrorText(v_Result));
+                Arrays.fill(v_ItemResults ,v_Result);
+            }
+            else
+            {
+                v_Bads = this.readFailedRanges(v_Client ,v_Plan ,v_S7Items ,v_Image ,v_ItemResults);
+                if ( !v_Bads.isEmpty() )
+                {
+                    // 真正失败的数据项放入隔离区，直到数据报文的配置变化为止，之后的读取不再受其影响
+                    i_Datagram.satPlan(v_Plan.quarantine(v_Bads));
+                }
             }
             
-            for (Map.Entry<String ,PLCDataItemConfig> v_KeyValue : v_PLCReadReqBuilder.entrySet())
+            for (int v_Index=0; v_Index<v_Plan.getItemCount(); v_Index++)
             {
-                PLCDataItemConfig v_Item     = v_KeyValue.getValue();
-                PLCAddress        v_PA       = new PLCAddress(v_Item.getRegisterNo() ,v_Item.getRegisterOffset());
-                byte []           v_ByteData = PLCByteData.newByte(v_Item.getDataType());
-                int               v_Result   = this.plcConnect.ReadArea(v_PA.getRegisterType().getS200() 
-                                                                       ,v_PA.getRegisterNo()
-                                                                       ,v_PA.getOffsetByte()
-                                                                       ,1
-                                                                       ,v_ByteData); 
-                if ( v_Result != 0 )
+                PLCDataItemConfig v_Item = v_Plan.getItem(v_Index);
+                
+                if ( v_ItemResults[v_Index] != 0 )
                 {
+                    // 仅跳过失败的数据项，其它数据项照常解析
                     $Logger.error("读取PLC数据失败：" + v_Item.getCode() + " " + v_Item.getName() 
-                                + "\n异常编码：" + v_Result
+                                + "\n异常编码：" + v_ItemResults[v_Index] + " " + S7Client.ErrorText(v_ItemResults[v_Index])
                                 + "\n寄存器名：" + v_Item.getRegisterType().getValue()
                                 + "\n寄存编号：" + v_Item.getRegisterNo()
                                 + "\n偏移数量：" + v_Item.getRegisterOffset()
-                                + "\n数据类型：" + v_Item.getDataType().getValue());
-                    break;
+                                + "\n数据类型：" + v_Item.getDataType().getValue()
+                                + (v_Bads != null && v_Bads.containsKey(v_Item.getCode()) ? "\n已隔离，数据报文的配置变化前不再读取" : ""));
+                    continue;
                 }
                 
-                Object v_DataValue = PLCByteData.getByteData(v_Item.getDataType() ,v_PA ,v_ByteData);
+                Object v_DataValue = PLCByteData.getByteData(v_Plan.getDataType(v_Index) ,v_Plan.getAddress(v_Index) ,v_Image ,v_Plan.getItemOffset(v_Index));
                 if ( v_DataValue != null )
                 {
                     v_Datas.put(v_Item.getCode() ,v_DataValue);
                 }
                 
-                v_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "=" + v_DataValue).append("\n");
+                v_LogBuffer.append("PLC Read " + v_Item.getName() + v_Item.getCode() + "：" + v_Plan.getTagAddress(v_Index) + "=" + v_DataValue).append("\n");
             }
         }
         catch (Exception exce)
@@ -307,9 +408,14 @@ public class PlcIOS200 implements IPlcIO
             $Logger.error(exce);
             if ( this.plcConfig.getReconnect() >= 1 )
             {
-                this.close(null);
+                this.invalidateClient(v_Client);
+                v_Client = null;
             }
         }
+        finally
+        {
+            this.returnClient(v_Client);
+        }
         
         $Logger.info(v_LogBuffer.toString());
         
@@ -318,37 +424,556 @@ public class PlcIOS200 implements IPlcIO
     
     
     
+    /**
+     * 异步读取数据。读取任务在设备的读写线程上排队，由读写线程借用S7客户端、读取并归还，调用线程不再等待。
+     * 
+     * 注：排队的时长也计入超时时长，超时后不再读取
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @return
+     */
+    public CompletableFuture<Map<String ,Object>> readDatasAsync(PLCDatagramConfig i_Datagram ,long i_Timeout)
+    {
+        return this.submit((i_Remaining) -> this.readDatas(i_Datagram ,i_Remaining) ,i_Timeout ,false ,new LinkedHashMap<String ,Object>());
+    }
+    
+    
+    
+    /**
+     * 订阅数据报文。后台按订阅周期异步读取，推送给监听者
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Cycle     订阅周期（单位：毫秒）。变化模式下为检查变化的周期
+     * @param i_OnChange  是否为变化模式（仅推送值变化了的数据项）。为假时为周期模式（每个周期推送所有数据项）
+     * @param i_Listener  监听者
+     * @return
+     */
+    public PlcSubscription subscribe(PLCDatagramConfig i_Datagram ,long i_Cycle ,boolean i_OnChange ,IPlcListener i_Listener)
+    {
+        return this.subscriptions.add(new PlcSubscription(this ,i_Datagram ,i_Cycle ,i_OnChange ,i_Listener));
+    }
+    
+    
+    
+    /**
+     * 接管订阅。订阅从原来的PLC读写迁移到本读写上继续（如XPLC重新连接时），监听者无须重新订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Subscription  订阅
+     * @return                订阅已取消时返回原订阅（不再开始）
+     */
+    public PlcSubscription subscribe(PlcSubscription i_Subscription)
+    {
+        return this.subscriptions.add(i_Subscription);
+    }
+    
+    
+    
+    /**
+     * 获取本读写上所有未取消的订阅
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public List<PlcSubscription> getSubscriptions()
+    {
+        return this.subscriptions.getSubscriptions();
+    }
+    
+    
+    
+    /**
+     * 快照模式：逐个区间读取整个字节区间（或整个数据块），S7客户端按协商的PDU大小自动分块
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client    S7客户端
+     * @param i_Plan      执行计划（快照模式下同一数据块只有一个区间）
+     * @param i_Snapshot  快照模式
+     * @param io_S7Items  各区间的读取项，返回各区间的读取结果
+     * @param io_Image    过程映像缓冲区
+     * @return            通讯层面的异常编码（0表示通讯正常，区间的读取结果见 io_S7Items[].Result）
+     */
+    private int readSnapshot(S7Client i_Client ,PLCDatagramPlan i_Plan ,PLCSnapshotType i_Snapshot ,S7DataItem [] io_S7Items ,byte [] io_Image)
+    {
+        for (int x=0; x<i_Plan.getRangeCount(); x++)
+        {
+            int v_Area   = i_Plan.getRangeArea(x);
+            int v_No     = i_Plan.getRangeNo(x);
+            int v_Result = 0;
+            
+            if ( PLCSnapshotType.Block.equals(i_Snapshot) && v_Area == S7.S7AreaDB )
+            {
+                v_Result = this.readBlock(i_Client ,v_No ,i_Plan.getRangeStart(x) ,i_Plan.getRangeSize(x) ,io_Image ,i_Plan.getRangeOffset(x));
+            }
+            else
+            {
+                // 按读取项的起始地址及数量读取（定时器、计数器已转为编号及元素数量）
+                S7DataItem v_S7Item = io_S7Items[x];
+                v_Result = i_Client.ReadArea(v_Area ,v_No ,v_S7Item.Start ,v_S7Item.Amount ,io_Image ,v_S7Item.DataOffset);
+            }
+            
+            io_S7Items[x].Result = v_Result;
+            if ( S7ClientPool.isBroken(v_Result) )
+            {
+                return v_Result;
+            }
+        }
+        
+        return 0;
+    }
+    
+    
+    
+    /**
+     * 读取整个数据块，再将区间内的字节复制到过程映像缓冲区中
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client  S7客户端
+     * @param i_DBNo    数据块编号
+     * @param i_Start   区间的起始字节
+     * @param i_Size    区间的字节数
+     * @param io_Image  过程映像缓冲区
+     * @param i_Offset  区间在过程映像缓冲区中的偏移量
+     * @return          异常编码（0表示成功）
+     */
+    private int readBlock(S7Client i_Client ,int i_DBNo ,int i_Start ,int i_Size ,byte [] io_Image ,int i_Offset)
+    {
+        Integer v_BlockSize = this.blockSizes.get(i_DBNo);
+        if ( v_BlockSize == null )
+        {
+            S7BlockInfo v_Info   = new S7BlockInfo();
+            int         v_Result = i_Client.GetAgBlockInfo(S7.Block_DB ,i_DBNo ,v_Info);
+            if ( v_Result != 0 )
+            {
+                return v_Result;
+            }
+            
+            v_BlockSize = v_Info.MC7Size();
+            this.blockSizes.put(i_DBNo ,v_BlockSize);
+        }
+        
+        if ( i_Start + i_Size > v_BlockSize )
+        {
+            this.blockSizes.remove(i_DBNo);   // 数据块可能已被重新下载，下次重新查询
+            return S7Client.errS7AddressOutOfRange;
+        }
+        
+        byte [] v_Block = this.blockImage.get();
+        if ( v_Block == null || v_Block.length < v_BlockSize )
+        {
+            v_Block = new byte[v_BlockSize];
+            this.blockImage.set(v_Block);
+        }
+        
+        int v_Result = i_Client.ReadArea(S7.S7AreaDB ,i_DBNo ,0 ,v_BlockSize ,v_Block);
+        if ( v_Result == 0 )
+        {
+            System.arraycopy(v_Block ,i_Start ,io_Image ,i_Offset ,i_Size);
+        }
+        return v_Result;
+    }
+    
+    
+    
+    /**
+     * 区间读取失败时（如区间内有一个地址越界，整个区间都会失败），逐项重新读取这些区间内的数据项，
+     * 找出真正失败的数据项。重新读取的数据项仍打包在一次请求中（按PDU大小自动拆分）。
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client        S7客户端
+     * @param i_Plan          执行计划
+     * @param i_S7Items       各区间的读取结果
+     * @param io_Image        过程映像缓冲区。重新读取的数据写在各数据项原来的偏移位置上
+     * @param io_ItemResults  返回各数据项最终的异常编码（0表示成功）
+     * @return                真正失败的数据项。Map.key为数据项编码，Map.value为异常编码
+     */
+    private Map<String ,Integer> readFailedRanges(S7Client i_Client ,PLCDatagramPlan i_Plan ,S7DataItem [] i_S7Items ,byte [] io_Image ,int [] io_ItemResults)
+    {
+        int v_Failed = 0;
+        
+        for (int v_Index=0; v_Index<i_Plan.getItemCount(); v_Index++)
+        {
+            io_ItemResults[v_Index] = i_S7Items[i_Plan.getItemRange(v_Index)].Result;
+            if ( io_ItemResults[v_Index] != 0 )
+            {
+                v_Failed++;
+            }
+        }
+        
+        // 常态：所有区间都成功，轮询时不分配任何对象
+        if ( v_Failed <= 0 )
+        {
+            return Collections.emptyMap();
+        }
+        
+        Map<String ,Integer> v_Bads    = new LinkedHashMap<String ,Integer>();
+        int []               v_Retries = new int[v_Failed];
+        S7DataItem []        v_S7Items = new S7DataItem[v_Failed];
+        for (int v_Index=0 ,x=0; v_Index<i_Plan.getItemCount(); v_Index++)
+        {
+            if ( io_ItemResults[v_Index] != 0 )
+            {
+                v_Retries[x] = v_Index;
+                v_S7Items[x] = i_Plan.makeS7Item(v_Index ,io_Image);
+                x++;
+            }
+        }
+        
+        int v_Result = i_Client.ReadMultiVars(v_S7Items ,v_S7Items.length);
+        for (int x=0; x<v_S7Items.length; x++)
+        {
+            int v_Index = v_Retries[x];
+            if ( v_Result != 0 )
+            {
+                io_ItemResults[v_Index] = v_Result;      // 通讯异常，不能判定数据项的好坏
+            }
+            else
+            {
+                io_ItemResults[v_Index] = v_S7Items[x].Result;
+                if ( v_S7Items[x].Result != 0 )
+                {
+                    v_Bads.put(i_Plan.getItem(v_Index).getCode() ,v_S7Items[x].Result);
+                }
+            }
+        }
+        
+        return v_Bads;
+    }
+    
+    
+    
     /**
      * 连接物联设备
      * 
      * @author      ZhengWei(HY)
      * @createDate  2025-08-19
      * @version     v1.0
+     *              v3.0  2026-10-18  添加：升级为连接池。借用一个S7客户端校验连通性后立即归还
      *
      * @return  Return.boolean   表示是否连接成功
      *          Return.paramObj  表示PLC连接对象
      * @return
      */
-    public synchronized Return<PlcConnection> connect()
+    public Return<PlcConnection> connect()
+    {
+        S7Client v_Client = this.borrowClient(Help.NVL(this.plcConfig.getTimeout() ,PLCConfig.$Timeout) ,false);
+        if ( v_Client == null )
+        {
+            return new Return<PlcConnection>(false);
+        }
+        
+        this.returnClient(v_Client);
+        return new Return<PlcConnection>(true);
+    }
+    
+    
+    
+    /**
+     * 提交异步读写任务到设备的读写线程
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param <T>
+     * @param i_Task      读写任务。参数为扣除排队时长后剩余的超时时长（单位：毫秒）
+     * @param i_Timeout   数据读写超时时长（单位：毫秒）。小于等于0时为PLC设备配置的超时时长
+     * @param i_Priority  是否优先执行（写入时为真）
+     * @param i_Failed    排队超时、任务异常或关闭时仍在排队的完成结果
+     * @return            不会异常完成
+     */
+    private <T> CompletableFuture<T> submit(LongFunction<T> i_Task ,long i_Timeout ,boolean i_Priority ,T i_Failed)
+    {
+        CompletableFuture<T> v_Ret      = new CompletableFuture<T>();
+        long                 v_Timeout  = i_Timeout <= 0L ? Help.NVL(this.plcConfig.getTimeout() ,PLCConfig.$Timeout) : i_Timeout;
+        long                 v_Deadline = System.nanoTime() + v_Timeout * 1000000L;
+        
+        try
+        {
+            this.getAsyncExecutor().execute(new PlcTask(i_Priority ,() ->
+            {
+                try
+                {
+                    long v_Remaining = (v_Deadline - System.nanoTime()) / 1000000L;
+                    if ( v_Remaining <= 0L )
+                    {
+                        $Logger.error("PLC[" + this.plcConfig.getXid() + "] queue timeout " + v_Timeout + "ms.");
+                        v_Ret.complete(i_Failed);
+                    }
+                    else
+                    {
+                        v_Ret.complete(i_Task.apply(v_Remaining));
+                    }
+                }
+                catch (Throwable exce)
+                {
+                    $Logger.error(exce);
+                    v_Ret.complete(i_Failed);
+                }
+            } ,() -> v_Ret.complete(i_Failed)));
+        }
+        catch (RejectedExecutionException exce)
+        {
+            $Logger.error("PLC[" + this.plcConfig.getXid() + "] async task rejected." ,exce);
+            v_Ret.complete(i_Failed);
+        }
+        
+        return v_Ret;
+    }
+    
+    
+    
+    /**
+     * 获取异步读写的执行者（首次时创建）。
+     * 
+     * 线程数为最大连接数，每个线程同一时刻只借用一个S7客户端；任务在优先级队列中排队，写入优先，同一优先级先来先执行。
+     * 空闲的线程超时后退出
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    private synchronized ThreadPoolExecutor getAsyncExecutor()
+    {
+        if ( this.asyncExecutor == null )
+        {
+            int    v_Threads = Help.max(Help.NVL(this.plcConfig.getMaxConn()) ,1);
+            String v_Name    = "PLC-IO-" + this.plcConfig.getXid();
+            
+            this.asyncExecutor = new ThreadPoolExecutor(v_Threads ,v_Threads ,60L ,TimeUnit.SECONDS ,new PriorityBlockingQueue<Runnable>() ,(i_Task) ->
+            {
+                Thread v_Thread = new Thread(i_Task ,v_Name);
+                v_Thread.setDaemon(true);
+                return v_Thread;
+            });
+            this.asyncExecutor.allowCoreThreadTimeOut(true);
+        }
+        
+        return this.asyncExecutor;
+    }
+    
+    
+    
+    /**
+     * 获取连接池（首次时创建）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return  配置无效时返回NULL
+     */
+    private synchronized S7ClientPool getConnectPool()
+    {
+        if ( this.plcConnectPool == null )
+        {
+            if ( this.plcConfig == null )
+            {
+                Exception v_Error = new NullPointerException("PLC is null.");
+                $Logger.error(v_Error);
+                return null;
+            }
+            
+            if ( Help.isNull(this.plcConfig.getHost()) )
+            {
+                Exception v_Error = new NullPointerException("PLC[" + this.plcConfig.getXid() + "]'s Host is null.");
+                $Logger.error(v_Error);
+                return null;
+            }
+            
+            this.plcConnectPool = new S7ClientPool(this.plcConfig);
+        }
+        
+        return this.plcConnectPool;
+    }
+    
+    
+    
+    /**
+     * 从连接池借用一个S7客户端。借出后由当前线程独占，用完须调用 returnClient() 归还
+     * 
+     * 等待空闲连接、建立连接及之后所有报文的往返共用一个截止时间，用尽后快速失败，
+     * 离线的PLC设备不会长时间阻塞轮询线程
+     * 
+     * 写入为优先借用者：连接数用尽时，写入等待期间新来的读取先让行，大批量的轮询读取不会饿死联锁信号的写入
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Timeout   本次读写的超时时长（单位：毫秒）
+     * @param i_Priority  是否优先借用（写入时为真）
+     * @return  无法连接或等待超时时返回NULL
+     */
+    private S7Client borrowClient(long i_Timeout ,boolean i_Priority)
     {
-        // 创建S7客户端实例
-        this.plcConnect = new S7Client();
+        S7ClientPool v_Pool = this.getConnectPool();
+        if ( v_Pool == null )
+        {
+            return null;
+        }
         
-        // PLC机架号、槽号(S7-200 Smart通常为0,1)
-        Integer v_Rack = Help.NVL(this.plcConfig.getRack() ,0);
-        Integer v_Slot = Help.NVL(this.plcConfig.getSlot() ,1);
+        // 设备不可用（后台重连中）时，立即失败，不阻塞轮询线程
+        if ( !v_Pool.isAvailable() )
+        {
+            $Logger.error("PLC[" + this.plcConfig.getXid() + "] unavailable, reconnecting in background.");
+            return null;
+        }
         
-        // 连接到PLC
-        int v_Result = this.plcConnect.ConnectTo(this.plcConfig.getHost() ,v_Rack ,v_Slot);
-        if ( v_Result == 0 )
+        try
+        {
+            return v_Pool.borrowClient(i_Timeout ,i_Priority);
+        }
+        catch (Exception exce)
         {
-            return new Return<PlcConnection>(true);
+            $Logger.error("PLC[" + this.plcConfig.getXid() + "] connection error." ,exce);
+            return null;
+        }
+    }
+    
+    
+    
+    /**
+     * 归还S7客户端。出现通讯层面异常的S7客户端由连接池销毁，并由后台重连
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client
+     */
+    private void returnClient(S7Client i_Client)
+    {
+        S7ClientPool v_Pool = this.plcConnectPool;
+        if ( i_Client == null )
+        {
+            return;
+        }
+        else if ( v_Pool == null )
+        {
+            i_Client.Disconnect();   // 连接池已关闭
         }
         else
         {
-            $Logger.error("PLC[" + this.plcConfig.getXid() + "] connection error.");
-            return new Return<PlcConnection>(false);
+            v_Pool.returnClient(i_Client);
+        }
+    }
+    
+    
+    
+    /**
+     * 销毁S7客户端（不再归还到池）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client
+     */
+    private void invalidateClient(S7Client i_Client)
+    {
+        S7ClientPool v_Pool = this.plcConnectPool;
+        if ( i_Client == null )
+        {
+            return;
+        }
+        else if ( v_Pool == null )
+        {
+            i_Client.Disconnect();   // 连接池已关闭
+        }
+        else
+        {
+            v_Pool.invalidateClient(i_Client);
+        }
+    }
+    
+    
+    
+    /**
+     * 获取数据报文编译后的执行计划。
+     * 
+     * 计划缓存在数据报文中，仅在首次读写、数据项集合变化、合并间隙、快照模式或协商的PDU大小变化时重新编译。
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datagram  数据报文
+     * @param i_Client    已连接的S7客户端
+     * @return
+     */
+    private PLCDatagramPlan getPlan(PLCDatagramConfig i_Datagram ,S7Client i_Client)
+    {
+        List<PLCDataItemConfig> v_Items   = i_Datagram.getItems();
+        int                     v_Gap     = Help.NVL(this.plcConfig.getReadGap() ,PLCDatagramPlan.$Gap);
+        int                     v_MaxSize = i_Client.PDULength() - 18;   // 18 = 响应报文头 + 读取项头
+        PLCDatagramPlan         v_Plan    = i_Datagram.gatPlan();
+        
+        // 快照模式：同一数据块的所有数据项合并为一个区间，区间大小不受PDU限制（读取时自动分块）
+        if ( PLCSnapshotType.get(i_Datagram.getSnapshot()) != null )
+        {
+            v_Gap     = PLCDatagramPlan.$SnapshotGap;
+            v_MaxSize = 0;
+        }
+        
+        if ( v_Plan == null || !v_Plan.isValid(v_Items ,v_Gap ,v_MaxSize) )
+        {
+            v_Plan = new PLCDatagramPlan(v_Items ,v_Gap ,v_MaxSize);
+            i_Datagram.satPlan(v_Plan);
         }
+        
+        return v_Plan;
+    }
+    
+    
+    
+    /**
+     * 获取当前线程的过程映像缓冲区（容量不足时扩容）。
+     * 
+     * 每个线程独享一个，不同的数据报文可并行读写
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Size  报文所有数据项的总字节数
+     * @return
+     */
+    private byte [] getProcessImage(int i_Size)
+    {
+        byte [] v_Image = this.processImage.get();
+        if ( v_Image == null || v_Image.length < i_Size )
+        {
+            v_Image = new byte[i_Size];
+            this.processImage.set(v_Image);
+        }
+        return v_Image;
     }
     
     
@@ -359,18 +984,20 @@ public class PlcIOS200 implements IPlcIO
      * @author      ZhengWei(HY)
      * @createDate  2025-08-19
      * @version     v1.0
+     *              v3.0  2026-10-18  添加：升级为连接池。后台重连期间为假
      *
      * @return
      */
     public boolean isConnected()
     {
-        if ( this.plcConnect == null )
+        S7ClientPool v_Pool = this.plcConnectPool;
+        if ( v_Pool == null )
         {
             return false;
         }
         else
         {
-            return this.plcConnect.Connected;
+            return v_Pool.isAvailable();
         }
     }
     
@@ -382,20 +1009,39 @@ public class PlcIOS200 implements IPlcIO
      * @author      ZhengWei(HY)
      * @createDate  2025-08-19
      * @version     v1.0
+     *              v3.0  2026-10-18  添加：升级为连接池。关闭连接池及所有空闲的S7客户端，借出中的在归还时断开
+     *              v4.0  2026-10-18  添加：关闭异步读写的执行者。执行中的任务继续完成，排队中的任务按失败完成
+     *                                添加：取消本读写上的所有订阅。关闭后再读写时，连接池及执行者按需重新创建
      *
      * @param i_PlcConnection  PLC连接对象
      */
     public synchronized void close(PlcConnection i_PlcConnection)
     {
-        if ( this.plcConnect == null )
+        this.subscriptions.close();
+        
+        if ( this.asyncExecutor != null )
+        {
+            this.asyncExecutor.shutdown();
+            
+            List<Runnable> v_Queued = new ArrayList<Runnable>();
+            this.asyncExecutor.getQueue().drainTo(v_Queued);
+            for (Runnable v_Task : v_Queued)
+            {
+                ((PlcTask) v_Task).cancel();
+            }
+            this.asyncExecutor = null;
+        }
+        
+        if ( this.plcConnectPool == null )
         {
             return;
         }
         
         try
         {
-            this.plcConnect.Disconnect();
-            this.plcConnect = null;
+            this.plcConnectPool.close();
+            this.plcConnectPool = null;
+            this.blockSizes.clear();
         }
         catch (Exception exce)
         {
@@ -403,4 +1049,67 @@ public class PlcIOS200 implements IPlcIO
         }
     }
     
+    
+    
+    /**
+     * 异步读写任务。优先的任务（写入）排在前面，同一优先级按提交的先后顺序执行
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     */
+    private static class PlcTask implements Runnable ,Comparable<PlcTask>
+    {
+        
+        private final boolean  priority;
+        
+        private final long     seq;
+        
+        private final Runnable task;
+        
+        /** 未执行就被取消时的动作 */
+        private final Runnable failed;
+        
+        
+        
+        public PlcTask(boolean i_Priority ,Runnable i_Task ,Runnable i_Failed)
+        {
+            this.priority = i_Priority;
+            this.seq      = $TaskSeq.incrementAndGet();
+            this.task     = i_Task;
+            this.failed   = i_Failed;
+        }
+
+        
+        
+        @Override
+        public void run()
+        {
+            this.task.run();
+        }
+        
+        
+        
+        /**
+         * 取消未执行的任务
+         */
+        public void cancel()
+        {
+            this.failed.run();
+        }
+        
+        
+        
+        @Override
+        public int compareTo(PlcTask i_Other)
+        {
+            if ( this.priority != i_Other.priority )
+            {
+                return this.priority ? -1 : 1;
+            }
+            return Long.compare(this.seq ,i_Other.seq);
+        }
+        
+    }
+    
 }
@@ -0,0 +1,356 @@
+package org.hy.common.plc.io;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hy.common.plc.data.PLCDatagramConfig;
+import org.hy.common.xml.log.Logger;
+
+
+
+
+
+/**
+ * 数据报文的订阅（由 IPlcIO.subscribe() 创建）
+ *
+ * 按订阅周期在后台异步读取数据报文，再推送给监听者，调用者不再自行轮询：
+ *   1. 周期模式：每个周期读取成功后，推送报文的所有数据项。
+ *   2. 变化模式：与上次推送的值比较，仅推送值变化了的数据项，没有变化时不推送。
+ *
+ * 每个周期都从连接池借用连接，连接被替换（断线重连、销毁重建）后，订阅自动在新连接上继续，无须重新订阅。
+ * PLC读写关闭时订阅随之取消；XPLC重新连接时，订阅迁移到新的PLC读写上继续。
+ * 上一周期的读取未完成时跳过本周期，慢速的设备不会堆积读取请求。
+ *
+ * 注：PLC4X的S7驱动仅对S7-300/400提供推送（循环服务，须用专用的CYC地址），S7-1200/1500及S7-200 Smart均不支持，
+ *     所以订阅统一由本类在读写层完成
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ *              v1.1  2026-10-18  添加：登记在PLC读写上，随PLC读写关闭而取消，或迁移到新的PLC读写上继续
+ */
+public class PlcSubscription
+{
+    
+    private static final Logger                      $Logger    = new Logger(PlcSubscription.class);
+    
+    /** 所有订阅共用的计划线程。读取是异步的，计划线程只负责发起，少量线程即可 */
+    private static final ScheduledThreadPoolExecutor $Scheduler = newScheduler();
+    
+    
+    
+    /** PLC读写（迁移后为新的PLC读写） */
+    private volatile IPlcIO           plcIO;
+    
+    /** 登记本订阅的PLC读写上的所有订阅 */
+    private PlcSubscriptions          owner;
+    
+    /** 订阅的数据报文 */
+    private final PLCDatagramConfig   datagram;
+    
+    /** 订阅周期（单位：毫秒） */
+    private final long                cycle;
+    
+    /** 是否为变化模式 */
+    private final boolean             onChange;
+    
+    /** 监听者 */
+    private final IPlcListener        listener;
+    
+    /** 上次推送的数据（变化模式时使用） */
+    private final Map<String ,Object> lastDatas;
+    
+    /** 周期任务 */
+    private ScheduledFuture<?>        future;
+    
+    /** 上一周期的读取是否仍在进行中 */
+    private boolean                   reading;
+    
+    /** 是否已取消订阅 */
+    private volatile boolean          closed;
+    
+    
+    
+    private static ScheduledThreadPoolExecutor newScheduler()
+    {
+        ScheduledThreadPoolExecutor v_Scheduler = new ScheduledThreadPoolExecutor(2 ,(i_Task) ->
+        {
+            Thread v_Thread = new Thread(i_Task ,"PLC-Subscribe");
+            v_Thread.setDaemon(true);
+            return v_Thread;
+        });
+        v_Scheduler.setRemoveOnCancelPolicy(true);
+        return v_Scheduler;
+    }
+    
+    
+    
+    /**
+     * 构造器
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PlcIO     PLC读写
+     * @param i_Datagram  数据报文
+     * @param i_Cycle     订阅周期（单位：毫秒）。变化模式下为检查变化的周期
+     * @param i_OnChange  是否为变化模式
+     * @param i_Listener  监听者
+     */
+    public PlcSubscription(IPlcIO i_PlcIO ,PLCDatagramConfig i_Datagram ,long i_Cycle ,boolean i_OnChange ,IPlcListener i_Listener)
+    {
+        if ( i_PlcIO == null || i_Datagram == null || i_Listener == null )
+        {
+            throw new NullPointerException("PlcIO, Datagram or Listener is null.");
+        }
+        
+        this.plcIO     = i_PlcIO;
+        this.datagram  = i_Datagram;
+        this.cycle     = Math.max(i_Cycle ,1L);
+        this.onChange  = i_OnChange;
+        this.listener  = i_Listener;
+        this.lastDatas = new HashMap<String ,Object>();
+        this.reading   = false;
+        this.closed    = false;
+    }
+    
+    
+    
+    /**
+     * 开始订阅。立即读取一次，之后按订阅周期读取
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return  返回本订阅，方便链式调用
+     */
+    public synchronized PlcSubscription start()
+    {
+        if ( this.future == null && !this.closed )
+        {
+            this.future = $Scheduler.scheduleAtFixedRate(this::poll ,0L ,this.cycle ,TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+    
+    
+    
+    /**
+     * 取消订阅。之后不再推送（正在进行中的读取完成后也不推送）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    public void close()
+    {
+        PlcSubscriptions v_Owner = null;
+        synchronized ( this )
+        {
+            this.closed = true;
+            if ( this.future != null )
+            {
+                this.future.cancel(false);
+                this.future = null;
+            }
+            v_Owner    = this.owner;
+            this.owner = null;
+        }
+        
+        if ( v_Owner != null )
+        {
+            v_Owner.remove(this);
+        }
+    }
+    
+    
+    
+    /**
+     * 迁移到（或首次登记到）PLC读写上。之后的周期在新的PLC读写上读取，正在进行中的读取照常完成
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Owner  新的PLC读写上的所有订阅
+     * @return         已取消订阅时返回假
+     */
+    boolean moveTo(PlcSubscriptions i_Owner)
+    {
+        PlcSubscriptions v_Old = null;
+        synchronized ( this )
+        {
+            if ( this.closed )
+            {
+                return false;
+            }
+            v_Old      = this.owner;
+            this.owner = i_Owner;
+            this.plcIO = i_Owner.getPlcIO();
+        }
+        
+        if ( v_Old != null && v_Old != i_Owner )
+        {
+            v_Old.remove(this);
+        }
+        return true;
+    }
+    
+    
+    
+    /**
+     * 是否已取消订阅
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public boolean isClosed()
+    {
+        return this.closed;
+    }
+    
+    
+    
+    /**
+     * 计划线程执行一个周期：发起异步读取，读取完成后推送
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private void poll()
+    {
+        synchronized ( this )
+        {
+            if ( this.reading || this.closed )
+            {
+                return;
+            }
+            this.reading = true;
+        }
+        
+        try
+        {
+            // 超时时长为PLC设备配置的超时时长。读取慢于订阅周期时，之后的周期被跳过，直到本次读取完成
+            this.plcIO.readDatasAsync(this.datagram ,0L).whenComplete((i_Datas ,i_Error) ->
+            {
+                try
+                {
+                    if ( i_Error != null )
+                    {
+                        $Logger.error(i_Error);
+                    }
+                    else
+                    {
+                        this.publish(i_Datas);
+                    }
+                }
+                finally
+                {
+                    synchronized ( this )
+                    {
+                        this.reading = false;
+                    }
+                }
+            });
+        }
+        catch (Exception exce)
+        {
+            $Logger.error(exce);
+            synchronized ( this )
+            {
+                this.reading = false;
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * 推送一个周期读取到的数据。读取失败（没有数据）时不推送，失败的数据项也不视为变化
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Datas  本周期读取到的数据
+     */
+    private void publish(Map<String ,Object> i_Datas)
+    {
+        if ( this.closed || i_Datas == null || i_Datas.isEmpty() )
+        {
+            return;
+        }
+        
+        Map<String ,Object> v_Datas = i_Datas;
+        if ( this.onChange )
+        {
+            v_Datas = new LinkedHashMap<String ,Object>();
+            for (Map.Entry<String ,Object> v_Data : i_Datas.entrySet())
+            {
+                if ( !this.lastDatas.containsKey(v_Data.getKey()) || !Objects.equals(this.lastDatas.get(v_Data.getKey()) ,v_Data.getValue()) )
+                {
+                    v_Datas.put(v_Data.getKey() ,v_Data.getValue());
+                }
+            }
+            
+            if ( v_Datas.isEmpty() )
+            {
+                return;
+            }
+            this.lastDatas.putAll(v_Datas);
+        }
+        
+        try
+        {
+            this.listener.onDatas(this.datagram ,v_Datas);
+        }
+        catch (Exception exce)
+        {
+            $Logger.error("Datagram[" + this.datagram.getXid() + "] listener error." ,exce);
+        }
+    }
+    
+    
+    
+    /**
+     * 获取：订阅的数据报文
+     */
+    public PLCDatagramConfig getDatagram()
+    {
+        return this.datagram;
+    }
+    
+    
+    
+    /**
+     * 获取：订阅周期（单位：毫秒）
+     */
+    public long getCycle()
+    {
+        return this.cycle;
+    }
+    
+    
+    
+    /**
+     * 获取：是否为变化模式
+     */
+    public boolean isOnChange()
+    {
+        return this.onChange;
+    }
+    
+}
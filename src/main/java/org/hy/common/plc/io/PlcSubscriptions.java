@@ -0,0 +1,127 @@
+package org.hy.common.plc.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+
+
+
+/**
+ * 一个PLC读写（IPlcIO）上的所有订阅
+ *
+ * 订阅取消后自动移出；PLC读写关闭时取消所有订阅，不会在已关闭的读写上空转（关闭后再订阅的照常开始）。
+ * 订阅可从一个读写迁移到另一个读写上继续（如XPLC重新连接时），监听者无须重新订阅
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public class PlcSubscriptions
+{
+    
+    /** PLC读写 */
+    private final IPlcIO               plcIO;
+    
+    /** 未取消的订阅 */
+    private final Set<PlcSubscription> subscriptions;
+    
+    
+    
+    public PlcSubscriptions(IPlcIO i_PlcIO)
+    {
+        this.plcIO         = i_PlcIO;
+        this.subscriptions = ConcurrentHashMap.newKeySet();
+    }
+    
+    
+    
+    /**
+     * 登记订阅并开始。订阅原来在其它读写上时，迁移到本读写上继续
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Subscription  订阅
+     * @return                订阅已取消时返回原订阅（不再开始）
+     */
+    public PlcSubscription add(PlcSubscription i_Subscription)
+    {
+        if ( i_Subscription.moveTo(this) )
+        {
+            this.subscriptions.add(i_Subscription);
+            
+            // 登记期间被取消时，不留在登记中
+            if ( !i_Subscription.isClosed() )
+            {
+                return i_Subscription.start();
+            }
+            this.subscriptions.remove(i_Subscription);
+        }
+        return i_Subscription;
+    }
+    
+    
+    
+    /**
+     * 移出订阅（订阅取消或迁移到其它读写时）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Subscription  订阅
+     */
+    void remove(PlcSubscription i_Subscription)
+    {
+        this.subscriptions.remove(i_Subscription);
+    }
+    
+    
+    
+    /**
+     * 获取所有未取消的订阅
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public List<PlcSubscription> getSubscriptions()
+    {
+        return new ArrayList<PlcSubscription>(this.subscriptions);
+    }
+    
+    
+    
+    /**
+     * 关闭。取消所有订阅
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    public void close()
+    {
+        for (PlcSubscription v_Subscription : this.getSubscriptions())
+        {
+            v_Subscription.close();
+        }
+    }
+    
+    
+    
+    /**
+     * 获取：PLC读写
+     */
+    public IPlcIO getPlcIO()
+    {
+        return this.plcIO;
+    }
+    
+}
@@ -1,6 +1,7 @@
 package org.hy.common.plc.pool;
 
 import java.time.Duration;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
@@ -25,6 +26,8 @@ import org.hy.common.xml.log.Logger;
  * @author      ZhengWei(HY)
  * @createDate  2026-02-09
  * @version     v1.0
+ *              v1.1  2026-10-18  添加：协商请求的PDU大小
+ *              v1.2  2026-10-18  添加：不等待地借用连接（并行读取时额外借用的连接）
  */
 public class PlcConnectionPool
 {
@@ -78,6 +81,10 @@ public class PlcConnectionPool
         {
             v_ConnString.append("&remote-slot=").append(i_PLCConfig.getSlot());
         }
+        if ( i_PLCConfig.getPduSize() != null )
+        {
+            v_ConnString.append("&pdu-size=").append(i_PLCConfig.getPduSize());
+        }
         
         return v_ConnString.toString();
     }
@@ -140,6 +147,42 @@ public class PlcConnectionPool
             throw new PlcConnectionException("获取的连接已失效，触发重试");
         }
     }
+    
+    
+    
+    /**
+     * 不等待地从连接池获取连接：有空闲连接，或连接数未达上限（新建连接）时返回连接，否则返回NULL。
+     * 
+     * 用于并行读取时额外借用的连接，连接数用尽时不等待、也不超过设备的连接数限制
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public PlcConnection tryBorrowConnection()
+    {
+        try
+        {
+            PlcConnection v_PlcConn = this.pool.borrowObject(Duration.ZERO);
+            if ( v_PlcConn.isConnected() )
+            {
+                return v_PlcConn;
+            }
+            
+            this.pool.invalidateObject(v_PlcConn);
+        }
+        catch (NoSuchElementException exce)
+        {
+            // 连接数已用尽
+        }
+        catch (Exception exce)
+        {
+            $Logger.error(exce);
+        }
+        return null;
+    }
 
 
 
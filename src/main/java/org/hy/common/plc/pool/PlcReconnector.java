@@ -0,0 +1,240 @@
+package org.hy.common.plc.pool;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hy.common.xml.log.Logger;
+
+
+
+
+
+/**
+ * PLC设备的后台重连监管者（每个PLC设备一个）
+ *
+ * 设备断开后，由后台线程按指数退避（加随机抖动）重新建立连接，调用者不再在读写时同步等待连接。
+ * 设备不可用期间，调用者立即失败；重连成功后，调用者立即可以使用新建立的连接。
+ *
+ * 随机抖动：等待时长在退避时长的 [1/2 ,1] 之间随机，避免多台设备（或多个服务）同时重连
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public class PlcReconnector
+{
+    
+    private static final Logger                      $Logger    = new Logger(PlcReconnector.class);
+    
+    /** 所有PLC设备共用的重连线程。每次重连受连接超时时长限制，少量线程即可 */
+    private static final ScheduledThreadPoolExecutor $Scheduler = newScheduler();
+    
+    
+    
+    /** 设备名称（日志用） */
+    private final String            name;
+    
+    /** 建立连接的方法。返回真表示连接成功 */
+    private final Callable<Boolean> connector;
+    
+    /** 初始等待时长（单位：毫秒） */
+    private final long              minDelay;
+    
+    /** 最大等待时长（单位：毫秒） */
+    private final long              maxDelay;
+    
+    /** 设备是否可用 */
+    private volatile boolean        available;
+    
+    /** 当前的退避时长（单位：毫秒） */
+    private long                    delay;
+    
+    /** 连续重连失败的次数 */
+    private int                     attempts;
+    
+    /** 已计划的重连任务 */
+    private ScheduledFuture<?>      future;
+    
+    /** 是否已关闭 */
+    private boolean                 closed;
+    
+    
+    
+    private static ScheduledThreadPoolExecutor newScheduler()
+    {
+        ScheduledThreadPoolExecutor v_Scheduler = new ScheduledThreadPoolExecutor(2 ,(i_Task) ->
+        {
+            Thread v_Thread = new Thread(i_Task ,"PLC-Reconnect");
+            v_Thread.setDaemon(true);
+            return v_Thread;
+        });
+        v_Scheduler.setRemoveOnCancelPolicy(true);
+        return v_Scheduler;
+    }
+    
+    
+    
+    /**
+     * 构造器
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Name       设备名称（日志用）
+     * @param i_Connector  建立连接的方法。返回真表示连接成功，返回假或异常表示失败
+     * @param i_MinDelay   初始等待时长（单位：毫秒）
+     * @param i_MaxDelay   最大等待时长（单位：毫秒）
+     */
+    public PlcReconnector(String i_Name ,Callable<Boolean> i_Connector ,long i_MinDelay ,long i_MaxDelay)
+    {
+        this.name      = i_Name;
+        this.connector = i_Connector;
+        this.minDelay  = Math.max(i_MinDelay ,1L);
+        this.maxDelay  = Math.max(i_MaxDelay ,this.minDelay);
+        this.delay     = this.minDelay;
+        this.available = true;
+        this.closed    = false;
+    }
+    
+    
+    
+    /**
+     * 设备是否可用（不在重连中）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public boolean isAvailable()
+    {
+        return this.available;
+    }
+    
+    
+    
+    /**
+     * 获取：连续重连失败的次数
+     */
+    public synchronized int getAttempts()
+    {
+        return this.attempts;
+    }
+    
+    
+    
+    /**
+     * 标记设备不可用，并在后台开始重连。已在重连中时，不重复计划
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    public synchronized void markDown()
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+        
+        if ( this.available )
+        {
+            $Logger.error("PLC[" + this.name + "] unavailable, reconnecting in background.");
+            this.available = false;
+        }
+        
+        if ( this.future == null )
+        {
+            this.schedule();
+        }
+    }
+    
+    
+    
+    /**
+     * 关闭，取消计划中的重连
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    public synchronized void close()
+    {
+        this.closed = true;
+        if ( this.future != null )
+        {
+            this.future.cancel(false);
+            this.future = null;
+        }
+    }
+    
+    
+    
+    /**
+     * 按当前的退避时长（加随机抖动）计划下一次重连。调用者须持有本对象的同步锁
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private void schedule()
+    {
+        long v_Wait = this.delay / 2 + ThreadLocalRandom.current().nextLong(this.delay / 2 + 1);
+        this.future = $Scheduler.schedule(this::reconnect ,v_Wait ,TimeUnit.MILLISECONDS);
+    }
+    
+    
+    
+    /**
+     * 后台线程执行一次重连
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private void reconnect()
+    {
+        boolean v_Succeed = false;
+        try
+        {
+            v_Succeed = Boolean.TRUE.equals(this.connector.call());
+        }
+        catch (Exception exce)
+        {
+            $Logger.error("PLC[" + this.name + "] reconnect error. " + exce.getMessage());
+        }
+        
+        synchronized ( this )
+        {
+            this.future = null;
+            if ( this.closed )
+            {
+                return;
+            }
+            
+            if ( v_Succeed )
+            {
+                $Logger.info("PLC[" + this.name + "] reconnected after " + (this.attempts + 1) + " attempts.");
+                this.available = true;
+                this.delay     = this.minDelay;
+                this.attempts  = 0;
+            }
+            else
+            {
+                this.attempts++;
+                this.delay = Math.min(this.delay * 2 ,this.maxDelay);
+                this.schedule();
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,577 @@
+package org.hy.common.plc.pool;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.hy.common.Help;
+import org.hy.common.plc.data.PLCConfig;
+import org.hy.common.xml.log.Logger;
+
+import Moka7.S7Client;
+
+
+
+
+
+/**
+ * S7客户端（Moka7）的连接池。主要用于：S7-200 Smart
+ *
+ * 每个S7客户端独占一个TCP连接及其收发缓冲区，借出后仅由一个线程使用。
+ * 不同的数据报文可借用不同的S7客户端并行读写，并发数不超过最大连接数（PLC设备的连接数限制）。
+ *
+ * 同一S7客户端上的报文严格按借用的先后顺序收发（借出后独占），连接数用尽时调用者在池中排队：
+ *   1. 等待者按先来后到的顺序借用（公平模式），不会有调用者一直借不到。
+ *   2. 优先借用者（如：联锁信号的写入）等待时，新来的普通借用者（如：轮询读取）先让行，
+ *      优先借用者最多等待正在进行的、及已在排队的读写完成，不会被源源不断的大批量读取饿死。
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ *              v2.0  2026-10-18  添加：借用时设置本次调用的截止时间，等待空闲连接、建立连接及所有报文往返共用同一截止时间
+ *              v3.0  2026-10-18  添加：后台重连。连接失败后由后台按指数退避重连，期间借用立即失败
+ *              v4.0  2026-10-18  添加：借用的公平策略。等待者按先来后到的顺序借用，优先借用者（写入）等待时，普通借用者（读取）让行
+ */
+public class S7ClientPool
+{
+    
+    private static final Logger            $Logger   = new Logger(S7ClientPool.class);
+    
+    /** 借用时的截止时间（System.nanoTime()）。借用线程创建新连接时，连接超时不超过此截止时间 */
+    private static final ThreadLocal<Long> $Deadline = new ThreadLocal<Long>();
+    
+    
+    
+    /** PLC连接配置 */
+    private final PLCConfig                   plcConfig;
+    
+    private final GenericObjectPool<S7Client> pool;
+    
+    /** 后台重连的监管者。不重新连接时为NULL */
+    private final PlcReconnector              reconnector;
+    
+    /** 借用的默认等待时长（单位：毫秒） */
+    private final long                        maxWait;
+    
+    /** 正在等待借用的优先借用者的数量。大于0时，普通借用者让行 */
+    private int                               priorityWaiting;
+    
+    
+    
+    /**
+     * 是否为通讯层面的异常（TCP、ISO连接或报文错乱）。出现此类异常后，S7客户端不能再使用
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Error  S7客户端的异常编码
+     * @return
+     */
+    public static boolean isBroken(int i_Error)
+    {
+        return S7Client.errTCPConnectionFailed <= i_Error && i_Error <= S7Client.errS7InvalidPDU;
+    }
+    
+    
+    
+    /**
+     * 初始化连接池
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PLCConfig  PLC连接配置。其中最大连接数（不超过 PLC 设备限制）、最小空闲连接、最大空闲连接为连接池的配置
+     */
+    public S7ClientPool(PLCConfig i_PLCConfig)
+    {
+        long v_Timeout = Help.NVL(i_PLCConfig.getTimeout() ,PLCConfig.$Timeout);
+        
+        GenericObjectPoolConfig<S7Client> v_PoolConfig = new GenericObjectPoolConfig<>();
+        v_PoolConfig.setMaxTotal(Help.max(Help.NVL(i_PLCConfig.getMaxConn()) ,1));
+        v_PoolConfig.setMinIdle( Help.max(Help.NVL(i_PLCConfig.getMinIdle()) ,1));
+        v_PoolConfig.setMaxIdle( Help.max(Help.NVL(i_PLCConfig.getMaxIdle()) ,1));
+        v_PoolConfig.setTestOnBorrow(true);                                                 // 借用连接时校验是否有效
+        v_PoolConfig.setTestOnReturn(true);                                                 // 归还连接时校验是否有效
+        v_PoolConfig.setTestWhileIdle(true);                                                // 空闲时校验
+        v_PoolConfig.setMaxWait(Duration.ofMillis(v_Timeout));                              // 设置获取连接的等待超时时长
+        v_PoolConfig.setFairness(true);                                                     // 等待者按先来后到的顺序借用
+        v_PoolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(v_Timeout * 10L) );       // 空闲检测间隔
+        v_PoolConfig.setMinEvictableIdleDuration(Duration.ofMillis(v_Timeout * 30L));       // 只有空闲超过多少的连接，才会被驱逐（驱逐门槛）
+        
+        this.plcConfig       = i_PLCConfig;
+        this.maxWait         = v_Timeout;
+        this.priorityWaiting = 0;
+        this.pool            = new GenericObjectPool<>(new S7ClientFactory(i_PLCConfig) ,v_PoolConfig);
+        
+        if ( i_PLCConfig.getReconnect() >= 1 )
+        {
+            // 后台重连：新建一个S7客户端放入池中，调用者随即可借用
+            this.reconnector = new PlcReconnector(i_PLCConfig.getXid() ,() ->
+            {
+                this.pool.addObject();
+                return true;
+            }
+            ,Help.NVL(i_PLCConfig.getReconnectDelay()    ,PLCConfig.$ReconnectDelay)
+            ,Help.NVL(i_PLCConfig.getReconnectMaxDelay() ,PLCConfig.$ReconnectMaxDelay));
+        }
+        else
+        {
+            this.reconnector = null;
+        }
+    }
+    
+    
+    
+    /**
+     * PLC设备是否可用（不在后台重连中）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     */
+    public boolean isAvailable()
+    {
+        return this.reconnector == null || this.reconnector.isAvailable();
+    }
+    
+    
+    
+    /**
+     * 设备不可用时，立即失败（不再同步等待连接）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private void checkAvailable()
+    {
+        if ( !this.isAvailable() )
+        {
+            throw new IllegalStateException("PLC[" + this.plcConfig.getXid() + "] unavailable, reconnecting.");
+        }
+    }
+    
+    
+    
+    /**
+     * 标记设备不可用，由后台重连。同时销毁所有空闲的S7客户端（它们的连接大概率也已断开）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private void markDown()
+    {
+        if ( this.reconnector != null )
+        {
+            this.reconnector.markDown();
+            this.pool.clear();
+        }
+    }
+    
+    
+    
+    /**
+     * 从连接池获取S7客户端
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @return
+     * @throws Exception  设备不可用、无法连接或等待超时时
+     */
+    public S7Client borrowClient() throws Exception
+    {
+        return this.borrowClient(0L ,false);
+    }
+    
+    
+    
+    /**
+     * 从连接池获取S7客户端，并设置本次调用的截止时间。
+     * 
+     * 等待空闲连接、建立新连接、及之后所有报文的往返共用同一截止时间，用尽后快速失败。
+     * 截止时间在归还时清除
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Timeout  本次调用的超时时长（单位：毫秒）。小于等于0时不限制（按默认的超时时长）
+     * @return
+     * @throws Exception  设备不可用、无法连接或等待超时时
+     */
+    public S7Client borrowClient(long i_Timeout) throws Exception
+    {
+        return this.borrowClient(i_Timeout ,false);
+    }
+    
+    
+    
+    /**
+     * 从连接池获取S7客户端，并设置本次调用的截止时间。
+     * 
+     * 优先借用者（如：写入）等待期间，普通借用者（如：读取）在进入连接池排队前先让行，
+     * 让行的时长也计入本次调用的截止时间
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Timeout   本次调用的超时时长（单位：毫秒）。小于等于0时不限制（按默认的超时时长）
+     * @param i_Priority  是否为优先借用者
+     * @return
+     * @throws Exception  设备不可用、无法连接或等待超时时
+     */
+    public S7Client borrowClient(long i_Timeout ,boolean i_Priority) throws Exception
+    {
+        this.checkAvailable();
+        
+        long v_Deadline = System.nanoTime() + (i_Timeout > 0 ? i_Timeout : this.maxWait) * 1000000L;
+        if ( i_Priority )
+        {
+            this.enterPriority();
+        }
+        else
+        {
+            this.awaitPriority(v_Deadline);
+        }
+        
+        if ( i_Timeout > 0 )
+        {
+            $Deadline.set(v_Deadline);
+        }
+        try
+        {
+            if ( i_Timeout <= 0 )
+            {
+                return this.pool.borrowObject();
+            }
+            
+            S7Client v_Client = this.pool.borrowObject(Duration.ofNanos(Math.max(v_Deadline - System.nanoTime() ,1000000L)));
+            v_Client.SetDeadline(Math.max((v_Deadline - System.nanoTime()) / 1000000L ,1L));
+            return v_Client;
+        }
+        catch (NoSuchElementException exce)
+        {
+            throw exce;     // 等待空闲连接超时，设备仍可用
+        }
+        catch (Exception exce)
+        {
+            this.markDown();
+            throw exce;
+        }
+        finally
+        {
+            $Deadline.remove();
+            if ( i_Priority )
+            {
+                this.leavePriority();
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * 优先借用者开始等待
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private synchronized void enterPriority()
+    {
+        this.priorityWaiting++;
+    }
+    
+    
+    
+    /**
+     * 优先借用者结束等待（已借到或失败）。没有优先借用者等待时，唤醒让行中的普通借用者
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    private synchronized void leavePriority()
+    {
+        if ( --this.priorityWaiting <= 0 )
+        {
+            this.priorityWaiting = 0;
+            this.notifyAll();
+        }
+    }
+    
+    
+    
+    /**
+     * 普通借用者让行：等待所有优先借用者借到S7客户端
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Deadline  截止时间（System.nanoTime()）
+     * @throws InterruptedException
+     */
+    private synchronized void awaitPriority(long i_Deadline) throws InterruptedException
+    {
+        while ( this.priorityWaiting > 0 )
+        {
+            long v_Left = (i_Deadline - System.nanoTime()) / 1000000L;
+            if ( v_Left <= 0 )
+            {
+                throw new NoSuchElementException("PLC[" + this.plcConfig.getXid() + "] timeout waiting for priority callers.");
+            }
+            this.wait(v_Left);
+        }
+    }
+    
+    
+    
+    /**
+     * 归还S7客户端到池。最后一次操作出现通讯层面的异常时，销毁而不归还。
+     * 
+     * 连接断开（非超时）时，标记设备不可用，由后台重连
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client
+     */
+    public void returnClient(S7Client i_Client)
+    {
+        if ( i_Client == null )
+        {
+            return;
+        }
+        
+        i_Client.SetDeadline(0);
+        if ( isBroken(i_Client.LastError) )
+        {
+            if ( i_Client.LastError != S7Client.errTCPDataRecvTout )
+            {
+                this.markDown();
+            }
+            this.invalidateClient(i_Client);
+        }
+        else
+        {
+            this.pool.returnObject(i_Client);
+        }
+    }
+    
+    
+    
+    /**
+     * 销毁S7客户端（不再归还到池）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Client
+     */
+    public void invalidateClient(S7Client i_Client)
+    {
+        if ( i_Client == null )
+        {
+            return;
+        }
+        
+        try
+        {
+            this.pool.invalidateObject(i_Client);
+        }
+        catch (Exception exce)
+        {
+            $Logger.error(exce);
+        }
+    }
+    
+    
+    
+    /**
+     * 获取：借出的S7客户端数量
+     */
+    public int getNumActive()
+    {
+        return this.pool.getNumActive();
+    }
+    
+    
+    
+    /**
+     * 获取：正在等待借用的优先借用者的数量
+     */
+    public synchronized int getPriorityWaiting()
+    {
+        return this.priorityWaiting;
+    }
+    
+    
+    
+    /**
+     * 获取：空闲的S7客户端数量
+     */
+    public int getNumIdle()
+    {
+        return this.pool.getNumIdle();
+    }
+    
+    
+    
+    /**
+     * 关闭连接池（程序退出时调用）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     */
+    public void close()
+    {
+        if ( this.reconnector != null )
+        {
+            this.reconnector.close();
+        }
+        this.pool.close();
+    }
+    
+    
+    
+    /**
+     * S7客户端工厂：负责创建/校验/销毁 S7客户端
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     */
+    private static class S7ClientFactory extends BasePooledObjectFactory<S7Client>
+    {
+        
+        private final PLCConfig plcConfig;
+        
+        
+        
+        public S7ClientFactory(PLCConfig i_PLCConfig)
+        {
+            this.plcConfig = i_PLCConfig;
+        }
+        
+        
+        
+        /**
+         * 创建新的S7客户端并连接
+         *
+         * @author      ZhengWei(HY)
+         * @createDate  2026-10-18
+         * @version     v1.0
+         *
+         * @return
+         * @throws Exception  连接失败时
+         *
+         * @see org.apache.commons.pool2.BasePooledObjectFactory#create()
+         */
+        @Override
+        public S7Client create() throws Exception
+        {
+            // 通讯指标汇总到设备配置中，重连后仍可连续统计
+            S7Client v_Client = new S7Client(this.plcConfig.gatMetrics());
+            if ( this.plcConfig.getPort() != null )
+            {
+                v_Client.SetConnectionPort(this.plcConfig.getPort());
+            }
+            if ( this.plcConfig.getPduSize() != null )
+            {
+                v_Client.SetPduSizeRequested(this.plcConfig.getPduSize());
+            }
+            
+            // 借用时有截止时间的，建立连接也不超过截止时间
+            Long v_Deadline = $Deadline.get();
+            if ( v_Deadline != null )
+            {
+                v_Client.SetDeadline(Math.max((v_Deadline - System.nanoTime()) / 1000000L ,1L));
+            }
+            
+            // PLC机架号、槽号(S7-200 Smart通常为0,1)
+            Integer v_Rack   = Help.NVL(this.plcConfig.getRack() ,0);
+            Integer v_Slot   = Help.NVL(this.plcConfig.getSlot() ,1);
+            int     v_Result = v_Client.ConnectTo(this.plcConfig.getHost() ,v_Rack ,v_Slot);
+            v_Client.SetDeadline(0);
+            if ( v_Result != 0 )
+            {
+                $Logger.error("PLC[" + this.plcConfig.getXid() + "] connection error. " + S7Client.ErrorText(v_Result));
+                throw new IllegalStateException("PLC[" + this.plcConfig.getXid() + "] connection error. " + S7Client.ErrorText(v_Result));
+            }
+            
+            $Logger.info("PLC[" + this.plcConfig.getXid() + "] connection succeed. PDU=" + v_Client.PDULength());
+            return v_Client;
+        }
+        
+        
+        
+        @Override
+        public PooledObject<S7Client> wrap(S7Client i_Client)
+        {
+            return new DefaultPooledObject<>(i_Client);
+        }
+        
+        
+        
+        /**
+         * 校验S7客户端是否有效：已连接，并且最后一次操作没有通讯层面的异常
+         *
+         * @author      ZhengWei(HY)
+         * @createDate  2026-10-18
+         * @version     v1.0
+         *
+         * @param i_PooledObject
+         * @return
+         *
+         * @see org.apache.commons.pool2.BasePooledObjectFactory#validateObject(org.apache.commons.pool2.PooledObject)
+         */
+        @Override
+        public boolean validateObject(PooledObject<S7Client> i_PooledObject)
+        {
+            S7Client v_Client = i_PooledObject.getObject();
+            return v_Client.Connected && !isBroken(v_Client.LastError);
+        }
+        
+        
+        
+        /**
+         * 销毁S7客户端时断开连接
+         *
+         * @author      ZhengWei(HY)
+         * @createDate  2026-10-18
+         * @version     v1.0
+         *
+         * @param i_PooledObject
+         *
+         * @see org.apache.commons.pool2.BasePooledObjectFactory#destroyObject(org.apache.commons.pool2.PooledObject)
+         */
+        @Override
+        public void destroyObject(PooledObject<S7Client> i_PooledObject)
+        {
+            $Logger.info("PLC[" + this.plcConfig.getXid() + "] close.");
+            i_PooledObject.getObject().Disconnect();
+        }
+    }
+    
+}
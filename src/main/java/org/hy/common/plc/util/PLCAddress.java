@@ -14,10 +14,12 @@ import org.hy.common.plc.enums.PLCRegisterType;
  * 
  *   将M16.0  地址分解的值项：M  空  16  0
  *   将DBW34.0地址分解的值项：DB  W  34  0
+ *   将T5     地址分解的值项：T  空  5   0  （定时器、计数器的偏移量为编号，每个编号2个字节）
  *
  * @author      ZhengWei(HY)
  * @createDate  2025-08-19
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：定时器、计数器的地址
  */
 public class PLCAddress
 {
@@ -51,24 +53,14 @@ public class PLCAddress
         for (PLCRegisterType v_Enum : PLCRegisterType.values())
         {
             String v_RTCode = v_Enum.getCode();
-            int    v_Len    = v_RTCode.length();
-            
-            if ( v_Address.length() <= v_Len )
-            {
-                throw new RuntimeException("Address[" + i_Address + "] lenght invaild, missing register type.");
-            }
-            
-            String v_ARType = v_Address.substring(0 ,v_Len);
-            if ( v_RTCode.equalsIgnoreCase(v_ARType) )
+            if ( v_Address.startsWith(v_RTCode) )
             {
                 this.registerType = v_Enum;
-                v_Address = v_Address.substring(v_Len);
+                v_Address = v_Address.substring(v_RTCode.length());
                 
-                if ( PLCRegisterType.Memory.equals(this.registerType)
-                  || PLCRegisterType.Input .equals(this.registerType)
-                  || PLCRegisterType.Output.equals(this.registerType) )
+                if ( !PLCRegisterType.Data.equals(this.registerType) )
                 {
-                    // 对于其他区域(M、I、Q等)，DBNumber参数被忽略，通常设置为0
+                    // 对于其他区域(M、I、Q、T、C等)，DBNumber参数被忽略，通常设置为0
                     this.registerNo = 0;
                 }
                 else
@@ -84,6 +76,26 @@ public class PLCAddress
             }
         }
         
+        if ( this.registerType == null || v_Address.length() <= 0 )
+        {
+            throw new RuntimeException("Address[" + i_Address + "] lenght invaild, missing register type.");
+        }
+        
+        // 定时器、计数器按编号寻址，没有数据类型和位偏移量。如：T5、C12
+        if ( PLCRegisterType.Timer  .equals(this.registerType)
+          || PLCRegisterType.Counter.equals(this.registerType) )
+        {
+            if ( !Help.isNumber(v_Address) || v_Address.indexOf(".") >= 0 )
+            {
+                throw new RuntimeException("Address[" + i_Address + "] number [" + v_Address + "] is invaild.");
+            }
+            
+            this.dataTypeCode = "";
+            this.offsetByte   = Integer.parseInt(v_Address);
+            this.offsetBit    = 0;
+            return;
+        }
+        
         // 分解出：数据类型
         if ( v_Address.length() <= 1 )
         {
@@ -185,6 +197,13 @@ public class PLCAddress
     public String toString()
     {
         StringBuilder v_Builder = new StringBuilder();
+        if ( PLCRegisterType.Timer  .equals(this.registerType)
+          || PLCRegisterType.Counter.equals(this.registerType) )
+        {
+            v_Builder.append("%").append(this.registerType.getCode()).append(this.offsetByte);
+            return v_Builder.toString();
+        }
+        
         v_Builder.append("%").append(this.registerType.getCode());
         v_Builder.append(this.registerNo);
         v_Builder.append(".");
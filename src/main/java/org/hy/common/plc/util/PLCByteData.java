@@ -20,16 +20,24 @@ import Moka7.S7;
  * @author      ZhengWei(HY)
  * @createDate  2025-08-19
  * @version     v1.0
+ *              v2.0  2026-10-18  添加：按偏移量读写同一字节数组（过程映像缓冲区）中的数据，减少微小数组的创建
+ *              v3.0  2026-10-18  添加：S5时间、计数器值（BCD码）的编解码
  */
 public class PLCByteData
 {
     
+    /** S5时间的时基（单位：毫秒），按时基编码 0 ~ 3 的顺序 */
+    private static final int [] $S5TimeBases = {10 ,100 ,1000 ,10000};
+    
+    
+    
     /**
      * 设置数据到字节数组中
      * 
      * @author      ZhengWei(HY)
      * @createDate  2025-08-19
      * @version     v1.0
+     *              v2.0  2026-10-18  优化：由 setByteData(... ,io_ByteData ,i_Offset) 写入，本方法仅负责创建字节数组
      *
      * @param i_PLCDataType  寄存器的数据类型
      * @param i_PLCAddress   PLC通讯数据地址
@@ -38,8 +46,30 @@ public class PLCByteData
      */
     public static byte [] setByteData(PLCDataType i_PLCDataType ,PLCAddress i_PLCAddress ,Object i_Value)
     {
-        byte [] v_ByteData = null;
-        
+        byte [] v_ByteData = new byte[getByteSize(i_PLCDataType)];
+        setByteData(i_PLCDataType ,i_PLCAddress ,i_Value ,v_ByteData ,0);
+        return v_ByteData;
+    }
+    
+    
+    
+    /**
+     * 设置数据到字节数组的指定位置中（不创建新的字节数组）。
+     * 
+     * 可将多个数据项写入同一个预分配的过程映像缓冲区，避免高频读写时大量微小数组的创建
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PLCDataType  寄存器的数据类型
+     * @param i_PLCAddress   PLC通讯数据地址
+     * @param i_Value        数据
+     * @param io_ByteData    字节数组
+     * @param i_Offset       写入字节数组的起始位置
+     */
+    public static void setByteData(PLCDataType i_PLCDataType ,PLCAddress i_PLCAddress ,Object i_Value ,byte [] io_ByteData ,int i_Offset)
+    {
         if ( i_PLCDataType == null )
         {
             throw new NullPointerException("PLCDataType is null.");
@@ -52,6 +82,10 @@ public class PLCByteData
         {
             throw new NullPointerException("Value is null.");
         }
+        else if ( io_ByteData == null )
+        {
+            throw new NullPointerException("ByteData is null.");
+        }
         // 布尔
         else if ( PLCDataType.Bool.equals(i_PLCDataType) )
         {
@@ -65,8 +99,7 @@ public class PLCByteData
                 v_Value = Boolean.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[1];
-            S7.SetBitAt(v_ByteData ,0 ,i_PLCAddress.getOffsetBit() ,v_Value);
+            S7.SetBitAt(io_ByteData ,i_Offset ,i_PLCAddress.getOffsetBit() ,v_Value);
         }
         // 8位字节
         else if ( PLCDataType.Byte.equals(i_PLCDataType) )
@@ -81,8 +114,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData    = new byte[1];
-            v_ByteData[0] = v_Value.byteValue();
+            io_ByteData[i_Offset] = v_Value.byteValue();
         }
         // 16位字
         else if ( PLCDataType.Word.equals(i_PLCDataType) )
@@ -97,8 +129,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[2];
-            S7.SetWordAt(v_ByteData ,0 ,v_Value);
+            S7.SetWordAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 32位双字
         else if ( PLCDataType.DWord.equals(i_PLCDataType) )
@@ -113,8 +144,7 @@ public class PLCByteData
                 v_Value = Long.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[4];
-            S7.SetDWordAt(v_ByteData ,0 ,v_Value);
+            S7.SetDWordAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 8位有符号整数
         else if ( PLCDataType.SInt.equals(i_PLCDataType) )
@@ -129,8 +159,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData    = new byte[1];
-            v_ByteData[0] = v_Value.byteValue();
+            io_ByteData[i_Offset] = v_Value.byteValue();
         }
         // 8位无符号的整数
         else if ( PLCDataType.USInt.equals(i_PLCDataType) )
@@ -145,8 +174,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData    = new byte[1];
-            v_ByteData[0] = v_Value.byteValue();
+            io_ByteData[i_Offset] = v_Value.byteValue();
         }
         // 16位有符号整数
         else if ( PLCDataType.Int.equals(i_PLCDataType) )
@@ -161,8 +189,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[2];
-            S7.SetShortAt(v_ByteData ,0 ,v_Value);
+            S7.SetShortAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 32位有符号整数
         else if ( PLCDataType.DInt.equals(i_PLCDataType) )
@@ -177,8 +204,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[4];
-            S7.SetDIntAt(v_ByteData ,0 ,v_Value);
+            S7.SetDIntAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 32位无符号整数
         else if ( PLCDataType.UDInt.equals(i_PLCDataType) )
@@ -193,8 +219,7 @@ public class PLCByteData
                 v_Value = Integer.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[4];
-            S7.SetDIntAt(v_ByteData ,0 ,v_Value);
+            S7.SetDIntAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 32位浮点
         else if ( PLCDataType.Real.equals(i_PLCDataType) )
@@ -209,8 +234,7 @@ public class PLCByteData
                 v_Value =  Float.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[4];
-            S7.SetFloatAt(v_ByteData ,0 ,v_Value);
+            S7.SetFloatAt(io_ByteData ,i_Offset ,v_Value);
         }
         // 64位双精度浮点
         else if ( PLCDataType.LReal.equals(i_PLCDataType) )
@@ -225,13 +249,26 @@ public class PLCByteData
                 v_Value = Double.valueOf(i_Value.toString());
             }
             
-            v_ByteData = new byte[8];
             
             // 使用 ByteBuffer 转换（默认大端序，S7 PLC 通常用小端序）
-            ByteBuffer.wrap(v_ByteData)
+            ByteBuffer.wrap(io_ByteData ,i_Offset ,8)
                       .order(ByteOrder.LITTLE_ENDIAN)     // 小端序（S7 常用）
                       .putDouble(v_Value);
         }
+        // S5时间（单位：毫秒）
+        else if ( PLCDataType.S5Time.equals(i_PLCDataType) )
+        {
+            Long v_Value = Long.valueOf(i_Value.toString());
+            
+            S7.SetWordAt(io_ByteData ,i_Offset ,toS5Time(v_Value));
+        }
+        // 计数器值
+        else if ( PLCDataType.Counter.equals(i_PLCDataType) )
+        {
+            Integer v_Value = Integer.valueOf(i_Value.toString());
+            
+            S7.SetWordAt(io_ByteData ,i_Offset ,toBCD(v_Value));
+        }
         else if ( PLCDataType.String.equals(i_PLCDataType) )
         {
             // TODO 待用时再实现
@@ -246,8 +283,6 @@ public class PLCByteData
         {
             throw new RuntimeException("未知类型");
         }
-        
-        return v_ByteData;
     }
     
     
@@ -264,8 +299,23 @@ public class PLCByteData
      */
     public static byte [] newByte(PLCDataType i_PLCDataType)
     {
-        byte [] v_ByteData = null;
-        
+        return new byte[getByteSize(i_PLCDataType)];
+    }
+    
+    
+    
+    /**
+     * 获取对应数据类型所需的字节数（不创建字节数组）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PLCDataType  寄存器的数据类型
+     * @return
+     */
+    public static int getByteSize(PLCDataType i_PLCDataType)
+    {
         if ( i_PLCDataType == null )
         {
             throw new NullPointerException("PLCDataType is null.");
@@ -273,57 +323,67 @@ public class PLCByteData
         // 布尔
         else if ( PLCDataType.Bool.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[1];
+            return 1;
         }
         // 8位字节
         else if ( PLCDataType.Byte.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[1];
+            return 1;
         }
         // 16位字
         else if ( PLCDataType.Word.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[2];
+            return 2;
         }
         // 32位双字
         else if ( PLCDataType.DWord.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[4];
+            return 4;
         }
         // 8位有符号整数
         else if ( PLCDataType.SInt.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[1];
+            return 1;
         }
         // 8位无符号的整数
         else if ( PLCDataType.USInt.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[1];
+            return 1;
         }
         // 16位有符号整数
         else if ( PLCDataType.Int.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[2];
+            return 2;
         }
         // 32位有符号整数
         else if ( PLCDataType.DInt.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[4];
+            return 4;
         }
         // 32位无符号整数
         else if ( PLCDataType.UDInt.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[4];
+            return 4;
         }
         // 32位浮点
         else if ( PLCDataType.Real.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[4];
+            return 4;
         }
         // 64位双精度浮点
         else if ( PLCDataType.LReal.equals(i_PLCDataType) )
         {
-            v_ByteData = new byte[8];
+            return 8;
+        }
+        // S5时间
+        else if ( PLCDataType.S5Time.equals(i_PLCDataType) )
+        {
+            return 2;
+        }
+        // 计数器值
+        else if ( PLCDataType.Counter.equals(i_PLCDataType) )
+        {
+            return 2;
         }
         else if ( PLCDataType.String.equals(i_PLCDataType) )
         {
@@ -339,8 +399,6 @@ public class PLCByteData
         {
             throw new RuntimeException("未知类型");
         }
-        
-        return v_ByteData;
     }
     
     
@@ -358,6 +416,28 @@ public class PLCByteData
      * @return
      */
     public static Object getByteData(PLCDataType i_PLCDataType ,PLCAddress i_PLCAddress ,byte [] i_ByteData)
+    {
+        return getByteData(i_PLCDataType ,i_PLCAddress ,i_ByteData ,0);
+    }
+    
+    
+    
+    /**
+     * 获取字节数组指定位置中的数据。
+     * 
+     * 可从同一个过程映像缓冲区中按各数据项的位置解析出数据，无须为每个数据项创建字节数组
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PLCDataType  寄存器的数据类型
+     * @param i_PLCAddress   PLC通讯数据地址
+     * @param i_ByteData     字节数组
+     * @param i_Offset       数据在字节数组中的起始位置
+     * @return
+     */
+    public static Object getByteData(PLCDataType i_PLCDataType ,PLCAddress i_PLCAddress ,byte [] i_ByteData ,int i_Offset)
     {
         if ( i_PLCDataType == null )
         {
@@ -374,61 +454,71 @@ public class PLCByteData
         // 布尔
         else if ( PLCDataType.Bool.equals(i_PLCDataType) )
         {
-            return S7.GetBitAt(i_ByteData ,0 ,i_PLCAddress.getOffsetBit());
+            return S7.GetBitAt(i_ByteData ,i_Offset ,i_PLCAddress.getOffsetBit());
         }
         // 8位字节
         else if ( PLCDataType.Byte.equals(i_PLCDataType) )
         {
-            return (int) i_ByteData[0];
+            return (int) i_ByteData[i_Offset];
         }
         // 16位字
         else if ( PLCDataType.Word.equals(i_PLCDataType) )
         {
-            return S7.GetShortAt(i_ByteData ,0);
+            return S7.GetShortAt(i_ByteData ,i_Offset);
         }
         // 32位双字
         else if ( PLCDataType.DWord.equals(i_PLCDataType) )
         {
-            return S7.GetDWordAt(i_ByteData ,0);
+            return S7.GetDWordAt(i_ByteData ,i_Offset);
         }
         // 8位有符号整数
         else if ( PLCDataType.SInt.equals(i_PLCDataType) )
         {
-            return (int) i_ByteData[0];
+            return (int) i_ByteData[i_Offset];
         }
         // 8位无符号的整数
         else if ( PLCDataType.USInt.equals(i_PLCDataType) )
         {
             // 使用位掩码确保无符号转换
-            return (int) (i_ByteData[0] & 0xFF);
+            return (int) (i_ByteData[i_Offset] & 0xFF);
         }
         // 16位有符号整数
         else if ( PLCDataType.Int.equals(i_PLCDataType) )
         {
-            return S7.GetShortAt(i_ByteData ,0);
+            return S7.GetShortAt(i_ByteData ,i_Offset);
         }
         // 32位有符号整数
         else if ( PLCDataType.DInt.equals(i_PLCDataType) )
         {
-            return S7.GetDIntAt(i_ByteData ,0);
+            return S7.GetDIntAt(i_ByteData ,i_Offset);
         }
         // 32位无符号整数
         else if ( PLCDataType.UDInt.equals(i_PLCDataType) )
         {
-            return S7.GetDIntAt(i_ByteData ,0);
+            return S7.GetDIntAt(i_ByteData ,i_Offset);
         }
         // 32位浮点
         else if ( PLCDataType.Real.equals(i_PLCDataType) )
         {
-            return S7.GetFloatAt(i_ByteData ,0);
+            return S7.GetFloatAt(i_ByteData ,i_Offset);
         }
         // 64位双精度浮点
         else if ( PLCDataType.LReal.equals(i_PLCDataType) )
         {
-            return ByteBuffer.wrap(i_ByteData)
+            return ByteBuffer.wrap(i_ByteData ,i_Offset ,8)
                              .order(ByteOrder.LITTLE_ENDIAN)  // 必须与写入时顺序一致！
                              .getDouble();
         }
+        // S5时间（单位：毫秒）
+        else if ( PLCDataType.S5Time.equals(i_PLCDataType) )
+        {
+            return fromS5Time(S7.GetWordAt(i_ByteData ,i_Offset));
+        }
+        // 计数器值
+        else if ( PLCDataType.Counter.equals(i_PLCDataType) )
+        {
+            return fromBCD(S7.GetWordAt(i_ByteData ,i_Offset));
+        }
         else if ( PLCDataType.String.equals(i_PLCDataType) )
         {
             // TODO 待用时再实现
@@ -447,6 +537,90 @@ public class PLCByteData
     
     
     
+    /**
+     * S5时间转为毫秒数。
+     * 
+     * S5时间为16位字：第12~13位为时基（0:10毫秒、1:100毫秒、2:1秒、3:10秒），第0~11位为3位BCD码的时间值（0~999）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_S5Time  S5时间（16位字）
+     * @return          毫秒数
+     */
+    public static int fromS5Time(int i_S5Time)
+    {
+        return fromBCD(i_S5Time) * $S5TimeBases[(i_S5Time >> 12) & 0x03];
+    }
+    
+    
+    
+    /**
+     * 毫秒数转为S5时间。选择能表示此时长的最小时基（精度最高），不足一个时基的部分舍去
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Millis  毫秒数。范围：0 ~ 9990000（即：2小时46分30秒）
+     * @return          S5时间（16位字）
+     */
+    public static int toS5Time(long i_Millis)
+    {
+        for (int v_Base=0; v_Base<$S5TimeBases.length; v_Base++)
+        {
+            long v_Value = i_Millis / $S5TimeBases[v_Base];
+            if ( 0 <= v_Value && v_Value <= 999 )
+            {
+                return (v_Base << 12) | toBCD((int) v_Value);
+            }
+        }
+        
+        throw new RuntimeException("S5Time[" + i_Millis + "] is out of range 0 ~ 9990000 ms.");
+    }
+    
+    
+    
+    /**
+     * 3位BCD码转为数值（计数器值、S5时间的时间值）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_BCD  16位字，取低12位
+     * @return       0 ~ 999
+     */
+    public static int fromBCD(int i_BCD)
+    {
+        return ((i_BCD >> 8) & 0x0F) * 100 + ((i_BCD >> 4) & 0x0F) * 10 + (i_BCD & 0x0F);
+    }
+    
+    
+    
+    /**
+     * 数值转为3位BCD码（计数器值、S5时间的时间值）
+     * 
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Value  0 ~ 999
+     * @return
+     */
+    public static int toBCD(int i_Value)
+    {
+        if ( i_Value < 0 || i_Value > 999 )
+        {
+            throw new RuntimeException("BCD value[" + i_Value + "] is out of range 0 ~ 999.");
+        }
+        
+        return ((i_Value / 100) << 8) | (((i_Value / 10) % 10) << 4) | (i_Value % 10);
+    }
+    
+    
+    
     private PLCByteData()
     {
         // Nothing.
@@ -0,0 +1,668 @@
+package org.hy.common.plc.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hy.common.Help;
+import org.hy.common.plc.data.PLCDataItemConfig;
+import org.hy.common.plc.enums.PLCDataType;
+
+import Moka7.S7;
+import Moka7.S7Client;
+import Moka7.S7DataItem;
+
+
+
+
+
+/**
+ * PLC数据报文的执行计划（编译后不可变）。
+ *
+ * 主要用于：S7-200 Smart的实现
+ *
+ *   1. 一次解析报文的所有数据项：PLC请求地址、寄存器区域、数据块编号、字节及位的偏移量、字节数、数据类型。
+ *      轮询读写时不再解析地址字符串，也不再为数据项创建Map集合。
+ *   2. 读取计划：按寄存器区域和数据块编号分组、按字节偏移量排序后，间隙不超过阈值的相邻数据项合并为一个区间。
+ *      如：DB1.DBW0、DB1.DBW2、DB1.DBD4 合并为一个8字节的区间读取。
+ *      所有区间按顺序读取到同一个过程映像缓冲区中，再按各数据项的偏移量解析出数据值。
+ *   3. 写入计划：各数据项按顺序编码到同一个过程映像缓冲区中，一个数据项一个写入项。
+ *      布尔类型按位写入（S7位传输），不会覆盖同一字节中的其它位，多个位可打包在同一个请求中。
+ *
+ *   4. 隔离区：读取失败的数据项（地址错误等）连同异常编码记录在隔离区中，不再参与读写，
+ *      其它数据项仍按区间合并读取。
+ *
+ *   5. 定时器、计数器：按编号寻址，每个编号2个字节。计划中按字节计算（T5即第10个字节），
+ *      与其它区域一样合并为区间，创建S7读写项时再转为编号、元素数量及其专用的传输类型。
+ *
+ *   计划缓存在数据报文中，数据项集合变化（setItems）时失效，下次读写时重新生成（隔离区也随之清空）。
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ *              v2.0  2026-10-18  添加：布尔类型按位写入
+ *              v3.0  2026-10-18  添加：隔离区。读取失败的数据项隔离后，不再影响其它数据项的合并读取
+ *                                添加：区间的访问方法，用于快照模式
+ *              v4.0  2026-10-18  添加：定时器、计数器区域的合并读写
+ */
+public class PLCDatagramPlan
+{
+    
+    /**
+     * 默认的合并间隙（单位：字节）。
+     *
+     * 每多一个读取项，请求报文多12个字节、响应报文多4个字节，间隙小于此值时合并读取更划算
+     */
+    public static final int $Gap         = 8;
+    
+    /**
+     * 快照模式的合并间隙（单位：字节）。
+     *
+     * 超过寄存器区域的最大地址，同一寄存器区域（数据块）的所有数据项合并为一个区间
+     */
+    public static final int $SnapshotGap = 65536;
+    
+    
+    
+    /** 生成计划时的数据项集合。用于判定计划是否仍然有效 */
+    private final List<PLCDataItemConfig> source;
+    
+    /** 生成计划时的数据项数量。用于判定计划是否仍然有效 */
+    private final int                     sourceSize;
+    
+    /** 生成计划时的合并间隙 */
+    private final int                     gap;
+    
+    /** 生成计划时的区间最大字节数 */
+    private final int                     maxSize;
+    
+    /** 隔离区。Map.key为数据项编码，Map.value为读取失败时的异常编码 */
+    private final Map<String ,Integer>    quarantine;
+    
+    /** 有效的数据项（保持报文中的原始顺序，编码相同的只保留一个） */
+    private final PLCDataItemConfig []    items;
+    
+    /** 数据项的PLC请求地址 */
+    private final String []               tagAddresses;
+    
+    /** 数据项的PLC通讯数据地址 */
+    private final PLCAddress []           addresses;
+    
+    /** 数据项的数据类型 */
+    private final PLCDataType []          dataTypes;
+    
+    /** 数据项的字节数 */
+    private final int []                  byteSizes;
+    
+    /** 数据项在读取的过程映像缓冲区中的偏移量 */
+    private final int []                  itemOffsets;
+    
+    /** 数据项所属的区间 */
+    private final int []                  itemRanges;
+    
+    /** 数据项在写入的过程映像缓冲区中的偏移量 */
+    private final int []                  writeOffsets;
+    
+    /** 区间的寄存器区域（S7的区域编码） */
+    private final int []                  rangeAreas;
+    
+    /** 区间的数据块编号 */
+    private final int []                  rangeNos;
+    
+    /** 区间的起始字节 */
+    private final int []                  rangeStarts;
+    
+    /** 区间的字节数 */
+    private final int []                  rangeSizes;
+    
+    /** 区间在读取的过程映像缓冲区中的偏移量 */
+    private final int []                  rangeOffsets;
+    
+    /** 读取的过程映像缓冲区的总字节数 */
+    private final int                     imageSize;
+    
+    /** 写入的过程映像缓冲区的总字节数 */
+    private final int                     writeImageSize;
+    
+    
+    
+    /**
+     * 编译数据报文的执行计划
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Items    数据报文的数据项集合
+     * @param i_Gap      合并间隙（单位：字节）。两个数据项之间未使用的字节数不超过此值时合并读取。小于0时不合并
+     * @param i_MaxSize  一个区间的最大字节数（受协商的PDU大小限制）。小于等于0时不限制
+     */
+    public PLCDatagramPlan(List<PLCDataItemConfig> i_Items ,int i_Gap ,int i_MaxSize)
+    {
+        this(i_Items ,i_Gap ,i_MaxSize ,Collections.<String ,Integer>emptyMap());
+    }
+    
+    
+    
+    /**
+     * 编译数据报文的执行计划，隔离区中的数据项不参与读写
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Items       数据报文的数据项集合
+     * @param i_Gap         合并间隙（单位：字节）。两个数据项之间未使用的字节数不超过此值时合并读取。小于0时不合并
+     * @param i_MaxSize     一个区间的最大字节数（受协商的PDU大小限制）。小于等于0时不限制
+     * @param i_Quarantine  隔离区。Map.key为数据项编码，Map.value为异常编码
+     */
+    public PLCDatagramPlan(List<PLCDataItemConfig> i_Items ,int i_Gap ,int i_MaxSize ,Map<String ,Integer> i_Quarantine)
+    {
+        this.source     = i_Items;
+        this.sourceSize = i_Items.size();
+        this.gap        = i_Gap;
+        this.maxSize    = i_MaxSize;
+        this.quarantine = Collections.unmodifiableMap(new LinkedHashMap<String ,Integer>(i_Quarantine));
+        
+        // 无效地址的数据项不参与读写。编码相同时，后者覆盖前者，但保持前者的位置
+        Map<String ,PLCDataItemConfig> v_Valids = new LinkedHashMap<String ,PLCDataItemConfig>();
+        for (PLCDataItemConfig v_Item : i_Items)
+        {
+            if ( !Help.isNull(v_Item.makePLCTagAddress()) )
+            {
+                v_Valids.put(v_Item.getCode() ,v_Item);
+            }
+        }
+        v_Valids.keySet().removeAll(this.quarantine.keySet());
+        
+        int v_Count = v_Valids.size();
+        this.items        = v_Valids.values().toArray(new PLCDataItemConfig[v_Count]);
+        this.tagAddresses = new String     [v_Count];
+        this.addresses    = new PLCAddress [v_Count];
+        this.dataTypes    = new PLCDataType[v_Count];
+        this.byteSizes    = new int        [v_Count];
+        this.itemOffsets  = new int        [v_Count];
+        this.itemRanges   = new int        [v_Count];
+        this.writeOffsets = new int        [v_Count];
+        
+        int []     v_Areas       = new int[v_Count];
+        Integer [] v_Order       = new Integer[v_Count];
+        int        v_WriteOffset = 0;
+        for (int x=0; x<v_Count; x++)
+        {
+            PLCDataItemConfig v_Item = this.items[x];
+            
+            this.tagAddresses[x] = v_Item.makePLCTagAddress();
+            this.addresses   [x] = new PLCAddress(v_Item.getRegisterNo() ,v_Item.getRegisterOffset());
+            this.dataTypes   [x] = v_Item.getDataType();
+            v_Areas          [x] = this.addresses[x].getRegisterType().getS200();
+            this.byteSizes   [x] = roundUp(PLCByteData.getByteSize(v_Item.getDataType()) ,getElementSize(v_Areas[x]));
+            this.writeOffsets[x] = v_WriteOffset;
+            v_Order          [x] = x;
+            v_WriteOffset       += this.byteSizes[x];
+        }
+        this.writeImageSize = v_WriteOffset;
+        
+        // 按寄存器区域、数据块编号、字节偏移量排序
+        Arrays.sort(v_Order ,Comparator.<Integer>comparingInt(i -> v_Areas[i])
+                                       .thenComparingInt(i -> this.addresses[i].getRegisterNo())
+                                       .thenComparingInt(i -> this.addresses[i].getOffsetByte()));
+        
+        List<int []> v_Ranges = new ArrayList<int []>();
+        int []       v_Range  = null;     // 区域、编号、起始字节、结束字节（不含）
+        for (int v_Index : v_Order)
+        {
+            PLCAddress v_PA    = this.addresses[v_Index];
+            int        v_Start = v_PA.getOffsetByte() * getElementSize(v_Areas[v_Index]);
+            int        v_End   = v_Start + this.byteSizes[v_Index];
+            
+            if ( v_Range    != null
+              && i_Gap      >= 0
+              && v_Range[0] == v_Areas[v_Index]
+              && v_Range[1] == v_PA.getRegisterNo()
+              && v_Start    <= v_Range[3] + i_Gap
+              && (i_MaxSize <= 0 || Math.max(v_Range[3] ,v_End) - v_Range[2] <= i_MaxSize) )
+            {
+                v_Range[3] = Math.max(v_Range[3] ,v_End);
+            }
+            else
+            {
+                v_Range = new int[] {v_Areas[v_Index] ,v_PA.getRegisterNo() ,v_Start ,v_End};
+                v_Ranges.add(v_Range);
+            }
+            
+            this.itemRanges[v_Index] = v_Ranges.size() - 1;
+        }
+        
+        int v_RangeCount = v_Ranges.size();
+        int v_Offset     = 0;
+        this.rangeAreas   = new int[v_RangeCount];
+        this.rangeNos     = new int[v_RangeCount];
+        this.rangeStarts  = new int[v_RangeCount];
+        this.rangeSizes   = new int[v_RangeCount];
+        this.rangeOffsets = new int[v_RangeCount];
+        for (int x=0; x<v_RangeCount; x++)
+        {
+            v_Range = v_Ranges.get(x);
+            this.rangeAreas  [x] = v_Range[0];
+            this.rangeNos    [x] = v_Range[1];
+            this.rangeStarts [x] = v_Range[2];
+            this.rangeSizes  [x] = v_Range[3] - v_Range[2];
+            this.rangeOffsets[x] = v_Offset;
+            v_Offset += this.rangeSizes[x];
+        }
+        this.imageSize = v_Offset;
+        
+        for (int x=0; x<v_Count; x++)
+        {
+            int v_RangeIndex = this.itemRanges[x];
+            this.itemOffsets[x] = this.rangeOffsets[v_RangeIndex] + this.addresses[x].getOffsetByte() * getElementSize(this.rangeAreas[v_RangeIndex]) - this.rangeStarts[v_RangeIndex];
+        }
+    }
+    
+    
+    
+    /**
+     * 在本计划的基础上，将更多的数据项放入隔离区，生成新的计划（本计划不变）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Quarantine  新增的隔离项。Map.key为数据项编码，Map.value为异常编码
+     * @return
+     */
+    public PLCDatagramPlan quarantine(Map<String ,Integer> i_Quarantine)
+    {
+        Map<String ,Integer> v_Quarantine = new LinkedHashMap<String ,Integer>(this.quarantine);
+        v_Quarantine.putAll(i_Quarantine);
+        return new PLCDatagramPlan(this.source ,this.gap ,this.maxSize ,v_Quarantine);
+    }
+    
+    
+    
+    /**
+     * 计划是否仍然有效（数据项集合及生成参数均未变化）
+     *
+     * 注：数据项集合中的元素被直接修改（而不是通过 setItems() 替换集合）时，须调用者主动让计划失效
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Items    数据报文当前的数据项集合
+     * @param i_Gap      合并间隙（单位：字节）
+     * @param i_MaxSize  一个区间的最大字节数
+     * @return
+     */
+    public boolean isValid(List<PLCDataItemConfig> i_Items ,int i_Gap ,int i_MaxSize)
+    {
+        return this.source     == i_Items
+            && this.sourceSize == i_Items.size()
+            && this.gap        == i_Gap
+            && this.maxSize    == i_MaxSize;
+    }
+    
+    
+    
+    /**
+     * 创建各区间的S7读取项，数据读取到过程映像缓冲区中各区间的偏移位置上。
+     *
+     * 每次读取时创建（读取结果记录在S7读取项中），计划本身不变，可重复使用
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param io_Image  过程映像缓冲区。长度不小于 getImageSize()
+     * @return
+     */
+    public S7DataItem [] makeS7Items(byte [] io_Image)
+    {
+        S7DataItem [] v_S7Items = new S7DataItem[this.rangeSizes.length];
+        for (int x=0; x<v_S7Items.length; x++)
+        {
+            v_S7Items[x] = newS7Item(this.rangeAreas[x]
+                                         ,this.rangeNos[x]
+                                         ,this.rangeStarts[x]
+                                         ,this.rangeSizes[x]
+                                         ,io_Image
+                                         ,this.rangeOffsets[x]);
+        }
+        return v_S7Items;
+    }
+    
+    
+    
+    /**
+     * 创建单个数据项的S7读取项，数据读取到过程映像缓冲区中该数据项的偏移位置上（与 makeS7Items() 读取的位置相同）。
+     *
+     * 用于区间读取失败时，逐项重新读取区间内的数据项，找出真正失败的数据项
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Index   数据项的索引
+     * @param io_Image  过程映像缓冲区。长度不小于 getImageSize()
+     * @return
+     */
+    public S7DataItem makeS7Item(int i_Index ,byte [] io_Image)
+    {
+        PLCAddress v_PA   = this.addresses[i_Index];
+        int        v_Area = v_PA.getRegisterType().getS200();
+        return newS7Item(v_Area
+                        ,v_PA.getRegisterNo()
+                        ,v_PA.getOffsetByte() * getElementSize(v_Area)
+                        ,this.byteSizes[i_Index]
+                        ,io_Image
+                        ,this.itemOffsets[i_Index]);
+    }
+    
+    
+    
+    /**
+     * 创建各数据项的S7写入项，写入的数据已按 getWriteOffset() 编码在过程映像缓冲区中。
+     * 
+     * 布尔类型按位写入：起始地址为位地址（字节偏移量 * 8 + 位偏移量），
+     * 编码在字节中对应位上的值移到最低位（S7位传输的数据格式）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *              v2.0  2026-10-18  添加：布尔类型按位写入，不覆盖同一字节中的其它位
+     *
+     * @param io_Image  过程映像缓冲区。长度不小于 getWriteImageSize()
+     * @return
+     */
+    public S7DataItem [] makeS7WriteItems(byte [] io_Image)
+    {
+        S7DataItem [] v_S7Items = new S7DataItem[this.items.length];
+        for (int x=0; x<v_S7Items.length; x++)
+        {
+            PLCAddress v_PA = this.addresses[x];
+            if ( PLCDataType.Bool.equals(this.dataTypes[x]) )
+            {
+                int v_Offset = this.writeOffsets[x];
+                io_Image[v_Offset] = (byte) ((io_Image[v_Offset] >> v_PA.getOffsetBit()) & 0x01);
+                
+                v_S7Items[x] = new S7DataItem(v_PA.getRegisterType().getS200()
+                                             ,S7Client.S7WLBit
+                                             ,v_PA.getRegisterNo()
+                                             ,v_PA.getOffsetByte() * 8 + v_PA.getOffsetBit()
+                                             ,1
+                                             ,io_Image
+                                             ,v_Offset);
+            }
+            else
+            {
+                int v_Area = v_PA.getRegisterType().getS200();
+                v_S7Items[x] = newS7Item(v_Area
+                                        ,v_PA.getRegisterNo()
+                                        ,v_PA.getOffsetByte() * getElementSize(v_Area)
+                                        ,this.byteSizes[x]
+                                        ,io_Image
+                                        ,this.writeOffsets[x]);
+            }
+        }
+        return v_S7Items;
+    }
+    
+    
+    
+    /**
+     * 寄存器区域中每个元素的字节数。
+     * 
+     * 定时器、计数器按编号寻址，每个编号2个字节；其它区域按字节寻址。
+     * 计划中的起始字节、字节数均按字节计算（定时器T5即第10个字节），创建S7读写项时再转为元素
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Area  寄存器区域（S7的区域编码）
+     * @return
+     */
+    public static int getElementSize(int i_Area)
+    {
+        return i_Area == S7.S7AreaTM || i_Area == S7.S7AreaCT ? 2 : 1;
+    }
+    
+    
+    
+    /**
+     * 创建S7读写项。定时器、计数器的起始字节、字节数转为编号、元素数量，并使用其专用的传输类型
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Area    寄存器区域（S7的区域编码）
+     * @param i_No      数据块编号
+     * @param i_Start   起始字节
+     * @param i_Size    字节数
+     * @param io_Image  过程映像缓冲区
+     * @param i_Offset  在过程映像缓冲区中的偏移量
+     * @return
+     */
+    private static S7DataItem newS7Item(int i_Area ,int i_No ,int i_Start ,int i_Size ,byte [] io_Image ,int i_Offset)
+    {
+        if ( i_Area == S7.S7AreaTM || i_Area == S7.S7AreaCT )
+        {
+            int v_Element = getElementSize(i_Area);
+            return new S7DataItem(i_Area
+                                 ,i_Area == S7.S7AreaTM ? S7Client.S7WLTimer : S7Client.S7WLCounter
+                                 ,0
+                                 ,i_Start / v_Element
+                                 ,i_Size  / v_Element
+                                 ,io_Image
+                                 ,i_Offset);
+        }
+        
+        return new S7DataItem(i_Area ,S7Client.S7WLByte ,i_No ,i_Start ,i_Size ,io_Image ,i_Offset);
+    }
+    
+    
+    
+    /**
+     * 字节数向上取整为元素字节数的整数倍
+     */
+    private static int roundUp(int i_Size ,int i_Element)
+    {
+        return (i_Size + i_Element - 1) / i_Element * i_Element;
+    }
+    
+    
+    
+    /**
+     * 获取：隔离区。Map.key为数据项编码，Map.value为读取失败时的异常编码（只读）
+     */
+    public Map<String ,Integer> getQuarantine()
+    {
+        return this.quarantine;
+    }
+    
+    
+    /**
+     * 获取：有效数据项的数量（不含隔离区中的数据项）
+     */
+    public int getItemCount()
+    {
+        return this.items.length;
+    }
+    
+    
+    /**
+     * 获取：数据项（保持报文中的原始顺序）
+     *
+     * @param i_Index  数据项的索引
+     */
+    public PLCDataItemConfig getItem(int i_Index)
+    {
+        return this.items[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项的PLC请求地址
+     *
+     * @param i_Index  数据项的索引
+     */
+    public String getTagAddress(int i_Index)
+    {
+        return this.tagAddresses[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项的PLC通讯数据地址
+     *
+     * @param i_Index  数据项的索引
+     */
+    public PLCAddress getAddress(int i_Index)
+    {
+        return this.addresses[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项的数据类型
+     *
+     * @param i_Index  数据项的索引
+     */
+    public PLCDataType getDataType(int i_Index)
+    {
+        return this.dataTypes[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项的字节数
+     *
+     * @param i_Index  数据项的索引
+     */
+    public int getByteSize(int i_Index)
+    {
+        return this.byteSizes[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项在读取的过程映像缓冲区中的偏移量
+     *
+     * @param i_Index  数据项的索引
+     */
+    public int getItemOffset(int i_Index)
+    {
+        return this.itemOffsets[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项所属的区间（即 makeS7Items() 返回数组的索引）
+     *
+     * @param i_Index  数据项的索引
+     */
+    public int getItemRange(int i_Index)
+    {
+        return this.itemRanges[i_Index];
+    }
+    
+    
+    /**
+     * 获取：数据项在写入的过程映像缓冲区中的偏移量
+     *
+     * @param i_Index  数据项的索引
+     */
+    public int getWriteOffset(int i_Index)
+    {
+        return this.writeOffsets[i_Index];
+    }
+    
+    
+    /**
+     * 获取：区间的数量（即读取项的数量）
+     */
+    public int getRangeCount()
+    {
+        return this.rangeSizes.length;
+    }
+    
+    
+    /**
+     * 获取：区间的寄存器区域（S7的区域编码）
+     *
+     * @param i_Range  区间的索引
+     */
+    public int getRangeArea(int i_Range)
+    {
+        return this.rangeAreas[i_Range];
+    }
+    
+    
+    /**
+     * 获取：区间的数据块编号
+     *
+     * @param i_Range  区间的索引
+     */
+    public int getRangeNo(int i_Range)
+    {
+        return this.rangeNos[i_Range];
+    }
+    
+    
+    /**
+     * 获取：区间的起始字节
+     *
+     * @param i_Range  区间的索引
+     */
+    public int getRangeStart(int i_Range)
+    {
+        return this.rangeStarts[i_Range];
+    }
+    
+    
+    /**
+     * 获取：区间的字节数
+     *
+     * @param i_Range  区间的索引
+     */
+    public int getRangeSize(int i_Range)
+    {
+        return this.rangeSizes[i_Range];
+    }
+    
+    
+    /**
+     * 获取：区间在读取的过程映像缓冲区中的偏移量
+     *
+     * @param i_Range  区间的索引
+     */
+    public int getRangeOffset(int i_Range)
+    {
+        return this.rangeOffsets[i_Range];
+    }
+    
+    
+    /**
+     * 获取：读取的过程映像缓冲区的总字节数
+     */
+    public int getImageSize()
+    {
+        return this.imageSize;
+    }
+    
+    
+    /**
+     * 获取：写入的过程映像缓冲区的总字节数
+     */
+    public int getWriteImageSize()
+    {
+        return this.writeImageSize;
+    }
+    
+}
@@ -0,0 +1,215 @@
+package org.hy.common.plc.util;
+
+import org.apache.plc4x.java.api.messages.PlcReadResponse;
+import org.apache.plc4x.java.api.value.PlcValue;
+import org.hy.common.plc.enums.PLCDataType;
+
+
+
+
+
+/**
+ * PLC4X读取结果的解码器。按数据类型一次选定后缓存在请求计划中，轮询读取时不再按名称查找数据类型，也不再逐个比较。
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public enum PLCTagDecoder
+{
+    
+    /** 布尔 */
+    Bool
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getBoolean();
+        }
+    },
+    
+    /** 字节 */
+    Int8
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getByte();
+        }
+    },
+    
+    /** 整数（字、双字、8位、16位、32位整数） */
+    Int32
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getInt();
+        }
+    },
+    
+    /** 长整数（32位无符号整数，超出int的范围） */
+    UInt32
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getLong();
+        }
+    },
+    
+    /** 浮点 */
+    Real32
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getFloat();
+        }
+    },
+    
+    /** 双精度浮点 */
+    Real64
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getDouble();
+        }
+    },
+    
+    /** 字符串 */
+    Text
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return i_Value.getString();
+        }
+    },
+    
+    /** S5时间（按字读取的原始值），转为毫秒数 */
+    S5Time
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return PLCByteData.fromS5Time(i_Value.getInt());
+        }
+    },
+    
+    /** 计数器值（PLC4X返回原始的BCD码） */
+    Counter
+    {
+        @Override
+        public Object decode(PlcValue i_Value)
+        {
+            return PLCByteData.fromBCD(i_Value.getInt());
+        }
+    },
+    ;
+    
+    
+    
+    /**
+     * 数据类型的解码器
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_DataType  PLC数据类型
+     * @return            不支持的数据类型返回NULL
+     */
+    public static PLCTagDecoder get(PLCDataType i_DataType)
+    {
+        if ( i_DataType == null )
+        {
+            return null;
+        }
+        
+        switch ( i_DataType )
+        {
+            case Bool:
+                return Bool;
+            case Byte:
+                return Int8;
+            case Word:
+            case DWord:
+            case SInt:
+            case USInt:
+            case Int:
+            case DInt:
+                return Int32;
+            case UDInt:
+                return UInt32;
+            case Real:
+                return Real32;
+            case LReal:
+                return Real64;
+            case String:
+            case WString:
+                return Text;
+            case S5Time:
+                return S5Time;
+            case Counter:
+                return Counter;
+            default:
+                return null;
+        }
+    }
+    
+    
+    
+    /**
+     * 获取读取结果中请求标签的（第一个）值
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Response  PLC结果集
+     * @param i_TagName   请求标签的名称
+     * @return            没有值时返回NULL
+     */
+    public static PlcValue getValue(PlcReadResponse i_Response ,String i_TagName)
+    {
+        PlcValue v_Value = i_Response.getPlcValue(i_TagName);
+        if ( v_Value != null && v_Value.isList() )
+        {
+            return v_Value.getLength() > 0 ? v_Value.getIndex(0) : null;
+        }
+        return v_Value;
+    }
+    
+    
+    
+    /**
+     * 解码读取结果中请求标签的值
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Response  PLC结果集
+     * @param i_TagName   请求标签的名称
+     * @return            没有值时返回NULL
+     */
+    public Object decode(PlcReadResponse i_Response ,String i_TagName)
+    {
+        PlcValue v_Value = getValue(i_Response ,i_TagName);
+        return v_Value == null ? null : this.decode(v_Value);
+    }
+    
+    
+    
+    /**
+     * 解码为包装类型
+     *
+     * @param i_Value  PLC4X的数据值
+     * @return
+     */
+    public abstract Object decode(PlcValue i_Value);
+    
+}
+    
\ No newline at end of file
@@ -0,0 +1,570 @@
+package org.hy.common.plc.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.plc4x.java.api.PlcConnection;
+import org.apache.plc4x.java.api.model.PlcTag;
+import org.hy.common.Help;
+import org.hy.common.plc.data.PLCDataItemConfig;
+import org.hy.common.plc.enums.PLCRegisterType;
+
+import Moka7.S7;
+
+
+
+
+
+/**
+ * PLC4X数据报文的请求计划（生成后不可变）。
+ *
+ * 主要用于：PLC4X的实现
+ *
+ *   1. 一次生成报文所有数据项的PLC请求地址，并由PLC4X的驱动解析为请求标签（PlcTag）。
+ *      轮询读写时直接用解析好的请求标签组装请求，不再拼接地址字符串，PLC4X也不再重复解析。
+ *   2. 快照模式：按数据报文的执行计划（PLCDatagramPlan）生成各区间分块的请求标签，同样只解析一次。
+ *   3. 数据项模式：按数据类型一次选定各数据项的解码器（PLCTagDecoder），轮询读取时直接解码。
+ *   4. 大数据报文：按PDU大小将请求标签分组，再将各组拆分为多个部分，在多个连接上并行读取。
+ *
+ *   请求标签与PLC4X的驱动相关，计划按通讯协议及模式（数据项、快照）分别缓存在数据报文中，
+ *   数据项集合变化（setItems）时失效。
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ *              v2.0  2026-10-18  添加：数据项的解码器
+ *              v3.0  2026-10-18  添加：请求标签的字节数，及按PDU大小拆分为并行读取的多个部分
+ */
+public class PLCTagPlan
+{
+    
+    /** 生成计划时的通讯协议 */
+    private final String                  protocol;
+    
+    /** 生成计划时的数据项集合。用于判定计划是否仍然有效 */
+    private final List<PLCDataItemConfig> source;
+    
+    /** 生成计划时的数据项数量。用于判定计划是否仍然有效 */
+    private final int                     sourceSize;
+    
+    /** 生成计划时的执行计划（快照模式）。数据项模式时为NULL */
+    private final PLCDatagramPlan         datagramPlan;
+    
+    /** 生成计划时的分块大小（快照模式） */
+    private final int                     chunk;
+    
+    /** 请求标签的名称。数据项模式为数据项编码，快照模式为：R区间号_区间内的起始字节 */
+    private final String []               names;
+    
+    /** PLC请求地址 */
+    private final String []               tagAddresses;
+    
+    /** 解析后的请求标签。PLC4X不支持的数据项（定时器区域）为NULL */
+    private final PlcTag []               tags;
+    
+    /** 请求标签对应的数据项（数据项模式） */
+    private final PLCDataItemConfig []    items;
+    
+    /** 数据项的解码器（数据项模式） */
+    private final PLCTagDecoder []        decoders;
+    
+    /** 请求标签所属的区间（快照模式） */
+    private final int []                  chunkRanges;
+    
+    /** 请求标签在区间内的起始字节（快照模式） */
+    private final int []                  chunkStarts;
+    
+    /** 请求标签读取的字节数。PLC4X不支持的为0 */
+    private final int []                  byteSizes;
+    
+    /** PLC4X支持的（有请求标签的）所有请求标签的下标 */
+    private final int []                  supporteds;
+    
+    /** 所有请求标签读取的总字节数 */
+    private final int                     byteSize;
+    
+    
+    
+    /**
+     * 生成数据项模式的请求计划。每个数据项一个请求标签，忽略无效地址的数据项
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Items     数据报文的数据项集合
+     * @param i_Protocol  通讯协议
+     * @param i_PlcConn   PLC连接。用于解析请求地址
+     */
+    public PLCTagPlan(List<PLCDataItemConfig> i_Items ,String i_Protocol ,PlcConnection i_PlcConn)
+    {
+        this.protocol     = i_Protocol;
+        this.source       = i_Items;
+        this.sourceSize   = i_Items.size();
+        this.datagramPlan = null;
+        this.chunk        = 0;
+        
+        List<PLCDataItemConfig> v_Valids    = new ArrayList<PLCDataItemConfig>();
+        List<String>            v_Addresses = new ArrayList<String>();
+        for (PLCDataItemConfig v_Item : i_Items)
+        {
+            String v_PLCTagAddress = v_Item.makePLCTagAddress();
+            if ( !Help.isNull(v_PLCTagAddress) )
+            {
+                v_Valids.add(v_Item);
+                v_Addresses.add(v_PLCTagAddress);
+            }
+        }
+        
+        int v_Count = v_Valids.size();
+        this.items        = v_Valids.toArray(new PLCDataItemConfig[v_Count]);
+        this.tagAddresses = v_Addresses.toArray(new String[v_Count]);
+        this.names        = new String       [v_Count];
+        this.tags         = new PlcTag       [v_Count];
+        this.decoders     = new PLCTagDecoder[v_Count];
+        this.chunkRanges  = null;
+        this.chunkStarts  = null;
+        this.byteSizes    = new int          [v_Count];
+        
+        for (int x=0; x<v_Count; x++)
+        {
+            this.names   [x] = this.items[x].getCode();
+            this.decoders[x] = PLCTagDecoder.get(this.items[x].getDataType());
+            if ( isSupported(this.items[x]) )
+            {
+                this.tags     [x] = parseTag(i_PlcConn ,this.tagAddresses[x]);
+                this.byteSizes[x] = PLCByteData.getByteSize(this.items[x].getDataType());
+            }
+        }
+        
+        this.supporteds = makeSupporteds(this.tags);
+        this.byteSize   = sum(this.byteSizes);
+    }
+    
+    
+    
+    /**
+     * 生成快照模式的请求计划。执行计划的每个区间按分块大小拆分为多个请求标签（字节数组），
+     * PLC4X不支持的区间（定时器区域）没有请求标签
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Plan      数据报文的执行计划
+     * @param i_Chunk     分块大小（单位：字节）
+     * @param i_Protocol  通讯协议
+     * @param i_PlcConn   PLC连接。用于解析请求地址
+     */
+    public PLCTagPlan(PLCDatagramPlan i_Plan ,int i_Chunk ,String i_Protocol ,PlcConnection i_PlcConn)
+    {
+        this.protocol     = i_Protocol;
+        this.source       = null;
+        this.sourceSize   = 0;
+        this.datagramPlan = i_Plan;
+        this.chunk        = i_Chunk;
+        this.items        = null;
+        this.decoders     = null;
+        
+        List<Integer> v_Ranges = new ArrayList<Integer>();
+        List<Integer> v_Starts = new ArrayList<Integer>();
+        for (int x=0; x<i_Plan.getRangeCount(); x++)
+        {
+            if ( i_Plan.getRangeArea(x) == S7.S7AreaTM )
+            {
+                continue;
+            }
+            
+            for (int v_Start=0; v_Start<i_Plan.getRangeSize(x); v_Start+=i_Chunk)
+            {
+                v_Ranges.add(x);
+                v_Starts.add(v_Start);
+            }
+        }
+        
+        int v_Count = v_Ranges.size();
+        this.names        = new String[v_Count];
+        this.tagAddresses = new String[v_Count];
+        this.tags         = new PlcTag[v_Count];
+        this.chunkRanges  = new int   [v_Count];
+        this.chunkStarts  = new int   [v_Count];
+        this.byteSizes    = new int   [v_Count];
+        
+        for (int x=0; x<v_Count; x++)
+        {
+            int v_Range = v_Ranges.get(x);
+            int v_Start = v_Starts.get(x);
+            int v_Size  = Math.min(i_Chunk ,i_Plan.getRangeSize(v_Range) - v_Start);
+            
+            this.chunkRanges [x] = v_Range;
+            this.chunkStarts [x] = v_Start;
+            this.names       [x] = "R" + v_Range + "_" + v_Start;
+            this.tagAddresses[x] = makeSnapshotTagAddress(i_Plan.getRangeArea(v_Range) ,i_Plan.getRangeNo(v_Range) ,i_Plan.getRangeStart(v_Range) + v_Start ,v_Size);
+            this.tags        [x] = parseTag(i_PlcConn ,this.tagAddresses[x]);
+            this.byteSizes   [x] = v_Size;
+        }
+        
+        this.supporteds = makeSupporteds(this.tags);
+        this.byteSize   = sum(this.byteSizes);
+    }
+    
+    
+    
+    /**
+     * 数据项模式的计划是否仍然有效（数据项集合及通讯协议均未变化）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Items     数据报文当前的数据项集合
+     * @param i_Protocol  通讯协议
+     * @return
+     */
+    public boolean isValid(List<PLCDataItemConfig> i_Items ,String i_Protocol)
+    {
+        return this.datagramPlan == null
+            && this.source       == i_Items
+            && this.sourceSize   == i_Items.size()
+            && Help.NVL(this.protocol).equals(Help.NVL(i_Protocol));
+    }
+    
+    
+    
+    /**
+     * 快照模式的计划是否仍然有效（执行计划、分块大小及通讯协议均未变化）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Plan      数据报文当前的执行计划
+     * @param i_Chunk     分块大小（单位：字节）
+     * @param i_Protocol  通讯协议
+     * @return
+     */
+    public boolean isValid(PLCDatagramPlan i_Plan ,int i_Chunk ,String i_Protocol)
+    {
+        return this.datagramPlan == i_Plan
+            && this.chunk        == i_Chunk
+            && Help.NVL(this.protocol).equals(Help.NVL(i_Protocol));
+    }
+    
+    
+    
+    /**
+     * 按PDU大小将请求标签分组（每组的请求及响应均不超过一个PDU），再将各组按顺序均分为多个部分，
+     * 每个部分在一个连接上用一次请求读取。PLC4X不支持的请求标签不在任何部分中。
+     *
+     * 注：单个请求标签超过一个PDU时独占一组（由PLC4X再拆分）
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PduSize  PDU大小（单位：字节）
+     * @param i_Parts    最多拆分的部分数量
+     * @return           各部分的请求标签的下标。拆分的部分数量不超过分组的数量，至少为一个部分
+     */
+    public int [][] split(int i_PduSize ,int i_Parts)
+    {
+        if ( i_Parts <= 1 || this.supporteds.length <= 1 )
+        {
+            return new int [][] {this.supporteds};
+        }
+        
+        // 分组：响应报文头14字节，每个读取项4字节的项头及数据（补齐为偶数）；请求报文头12字节，每个读取项12字节
+        List<Integer> v_Groups  = new ArrayList<Integer>();   // 各组的起始位置（在 supporteds 中）
+        int           v_ResSize = 0;
+        int           v_ReqSize = 0;
+        for (int x=0; x<this.supporteds.length; x++)
+        {
+            int v_ItemSize = 4 + (this.byteSizes[this.supporteds[x]] + 1) / 2 * 2;
+            if ( x == 0 || v_ResSize + v_ItemSize > i_PduSize || v_ReqSize + 12 > i_PduSize )
+            {
+                v_Groups.add(x);
+                v_ResSize = 14;
+                v_ReqSize = 12;
+            }
+            v_ResSize += v_ItemSize;
+            v_ReqSize += 12;
+        }
+        v_Groups.add(this.supporteds.length);
+        
+        int      v_GroupCount = v_Groups.size() - 1;
+        int      v_PartCount  = Math.min(i_Parts ,v_GroupCount);
+        int [][] v_Parts      = new int[v_PartCount][];
+        for (int v_Part=0; v_Part<v_PartCount; v_Part++)
+        {
+            int v_From = v_Groups.get(v_Part       * v_GroupCount / v_PartCount);
+            int v_To   = v_Groups.get((v_Part + 1) * v_GroupCount / v_PartCount);
+            v_Parts[v_Part] = Arrays.copyOfRange(this.supporteds ,v_From ,v_To);
+        }
+        return v_Parts;
+    }
+    
+    
+    
+    /**
+     * 有请求标签的（PLC4X支持的）所有请求标签的下标
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Tags  请求标签
+     * @return
+     */
+    private static int [] makeSupporteds(PlcTag [] i_Tags)
+    {
+        int [] v_Indexes = new int[i_Tags.length];
+        int    v_Count   = 0;
+        for (int x=0; x<i_Tags.length; x++)
+        {
+            if ( i_Tags[x] != null )
+            {
+                v_Indexes[v_Count++] = x;
+            }
+        }
+        return Arrays.copyOf(v_Indexes ,v_Count);
+    }
+    
+    
+    
+    /**
+     * 求和
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Values
+     * @return
+     */
+    private static int sum(int [] i_Values)
+    {
+        int v_Sum = 0;
+        for (int v_Value : i_Values)
+        {
+            v_Sum += v_Value;
+        }
+        return v_Sum;
+    }
+    
+    
+    
+    /**
+     * PLC4X是否支持数据项的寄存器区域。
+     *
+     * PLC4X的S7驱动没有定时器的传输类型，定时器区域按字节地址寻址，读写的不是定时器的值，所以不支持定时器。
+     * 计数器按COUNTER类型寻址，是支持的
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Item  数据项
+     * @return
+     */
+    public static boolean isSupported(PLCDataItemConfig i_Item)
+    {
+        return !PLCRegisterType.Timer.equals(i_Item.getRegisterType());
+    }
+    
+    
+    
+    /**
+     * 由PLC4X的驱动解析请求地址
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_PlcConn        PLC连接
+     * @param i_PLCTagAddress  PLC请求地址
+     * @return
+     */
+    private static PlcTag parseTag(PlcConnection i_PlcConn ,String i_PLCTagAddress)
+    {
+        return i_PlcConn.parseTagAddress(i_PLCTagAddress).orElseThrow(() -> new IllegalArgumentException("PLC tag address[" + i_PLCTagAddress + "] is invalid."));
+    }
+    
+    
+    
+    /**
+     * 生成快照模式的PLC请求地址（字节数组）。如：%DB1.DBB0:BYTE[100]、%MB10:BYTE[4]、%C0:COUNTER[8]
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *              v2.0  2026-10-18  添加：计数器区域按编号及数量寻址
+     *
+     * @param i_Area   寄存器区域（S7的区域编码）
+     * @param i_No     数据块编号
+     * @param i_Start  起始字节
+     * @param i_Size   字节数
+     * @return
+     */
+    private static String makeSnapshotTagAddress(int i_Area ,int i_No ,int i_Start ,int i_Size)
+    {
+        if ( i_Area == S7.S7AreaDB )
+        {
+            return "%DB" + i_No + ".DBB" + i_Start + ":BYTE[" + i_Size + "]";
+        }
+        else if ( i_Area == S7.S7AreaCT )
+        {
+            int v_Element = PLCDatagramPlan.getElementSize(i_Area);
+            return "%C" + (i_Start / v_Element) + ":COUNTER[" + (i_Size / v_Element) + "]";
+        }
+        
+        for (PLCRegisterType v_Type : PLCRegisterType.values())
+        {
+            if ( v_Type.getS200() == i_Area )
+            {
+                return "%" + v_Type.getCode() + "B" + i_Start + ":BYTE[" + i_Size + "]";
+            }
+        }
+        
+        throw new IllegalArgumentException("S7 area " + i_Area + " is not supported.");
+    }
+    
+    
+    
+    /**
+     * 生成计划在数据报文中的缓存关键字
+     *
+     * @author      ZhengWei(HY)
+     * @createDate  2026-10-18
+     * @version     v1.0
+     *
+     * @param i_Protocol  通讯协议
+     * @param i_Snapshot  是否为快照模式
+     * @return
+     */
+    public static String makeKey(String i_Protocol ,boolean i_Snapshot)
+    {
+        return Help.NVL(i_Protocol) + (i_Snapshot ? ":snapshot" : "");
+    }
+    
+    
+    
+    /**
+     * 获取：计划在数据报文中的缓存关键字
+     */
+    public String getKey()
+    {
+        return makeKey(this.protocol ,this.datagramPlan != null);
+    }
+    
+    
+    
+    /**
+     * 获取：生成计划时的通讯协议
+     */
+    public String getProtocol()
+    {
+        return this.protocol;
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签的数量
+     */
+    public int getCount()
+    {
+        return this.names.length;
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签的名称。数据项模式为数据项编码，快照模式为：R区间号_区间内的起始字节
+     */
+    public String getName(int i_Index)
+    {
+        return this.names[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：PLC请求地址
+     */
+    public String getTagAddress(int i_Index)
+    {
+        return this.tagAddresses[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：解析后的请求标签。PLC4X不支持的数据项（定时器区域）返回NULL
+     */
+    public PlcTag getTag(int i_Index)
+    {
+        return this.tags[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签对应的数据项（数据项模式）
+     */
+    public PLCDataItemConfig getItem(int i_Index)
+    {
+        return this.items[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：数据项的解码器（数据项模式）
+     */
+    public PLCTagDecoder getDecoder(int i_Index)
+    {
+        return this.decoders[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签读取的字节数。PLC4X不支持的为0
+     */
+    public int getByteSize(int i_Index)
+    {
+        return this.byteSizes[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：所有请求标签读取的总字节数
+     */
+    public int getByteSize()
+    {
+        return this.byteSize;
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签所属的区间（快照模式）
+     */
+    public int getChunkRange(int i_Index)
+    {
+        return this.chunkRanges[i_Index];
+    }
+    
+    
+    
+    /**
+     * 获取：请求标签在区间内的起始字节（快照模式）
+     */
+    public int getChunkStart(int i_Index)
+    {
+        return this.chunkStarts[i_Index];
+    }
+    
+}
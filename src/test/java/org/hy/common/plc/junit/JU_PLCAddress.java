@@ -29,6 +29,8 @@ public class JU_PLCAddress
         System.out.println(new PLCAddress(1 ,"M16"));
         System.out.println(new PLCAddress(1 ,"M16.0"));
         System.out.println(new PLCAddress(1 ,"MX16.0"));
+        System.out.println(new PLCAddress(0 ,"T5"));
+        System.out.println(new PLCAddress(0 ,"C12"));
     }
     
 }
@@ -0,0 +1,109 @@
+package org.hy.common.plc.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hy.common.plc.data.PLCDataItemConfig;
+import org.hy.common.plc.data.PLCDatagramConfig;
+import org.hy.common.plc.enums.PLCDataType;
+import org.hy.common.plc.enums.PLCRegisterType;
+import org.hy.common.plc.util.PLCDatagramPlan;
+import org.junit.Test;
+
+
+
+
+
+/**
+ * 测试单元：PLC数据报文的执行计划（相邻数据项的合并读取）
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public class JU_PLCDatagramPlan
+{
+    
+    private PLCDataItemConfig newItem(String i_Code ,PLCRegisterType i_RegisterType ,int i_RegisterNo ,String i_Offset ,PLCDataType i_DataType)
+    {
+        PLCDataItemConfig v_Item = new PLCDataItemConfig();
+        v_Item.setCode          (i_Code);
+        v_Item.setName          (i_Code);
+        v_Item.setRegisterType  (i_RegisterType);
+        v_Item.setRegisterNo    (i_RegisterNo);
+        v_Item.setRegisterOffset(i_Offset);
+        v_Item.setDataType      (i_DataType);
+        return v_Item;
+    }
+    
+    
+    
+    @Test
+    public void test_Merge()
+    {
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("D4"  ,PLCRegisterType.Data   ,1 ,"DBD4"  ,PLCDataType.DInt));
+        v_Items.add(newItem("W0"  ,PLCRegisterType.Data   ,1 ,"DBW0"  ,PLCDataType.Int));
+        v_Items.add(newItem("W2"  ,PLCRegisterType.Data   ,1 ,"DBW2"  ,PLCDataType.Word));
+        v_Items.add(newItem("M16" ,PLCRegisterType.Memory ,0 ,"M16.1" ,PLCDataType.Bool));
+        v_Items.add(newItem("W40" ,PLCRegisterType.Data   ,1 ,"DBW40" ,PLCDataType.Int));
+        v_Items.add(newItem("DB2" ,PLCRegisterType.Data   ,2 ,"DBW0"  ,PLCDataType.Int));
+        
+        // DB1.DBW0、DB1.DBW2、DB1.DBD4 合并为一个8字节的区间
+        PLCDatagramPlan v_Plan = new PLCDatagramPlan(v_Items ,PLCDatagramPlan.$Gap ,200);
+        assertEquals(4  ,v_Plan.getRangeCount());
+        assertEquals(v_Plan.getItemRange(0) ,v_Plan.getItemRange(1));
+        assertEquals(v_Plan.getItemRange(0) ,v_Plan.getItemRange(2));
+        assertEquals(v_Plan.getItemOffset(1) + 4 ,v_Plan.getItemOffset(0));
+        assertEquals(13 ,v_Plan.getImageSize());
+        
+        // 间隙足够大时，DB1.DBW40也合并进来
+        v_Plan = new PLCDatagramPlan(v_Items ,100 ,200);
+        assertEquals(3  ,v_Plan.getRangeCount());
+        assertEquals(45 ,v_Plan.getImageSize());
+        
+        // 但不超过一个区间的最大字节数
+        v_Plan = new PLCDatagramPlan(v_Items ,100 ,20);
+        assertEquals(4  ,v_Plan.getRangeCount());
+        
+        // 不合并
+        v_Plan = new PLCDatagramPlan(v_Items ,-1 ,200);
+        assertEquals(v_Items.size() ,v_Plan.getRangeCount());
+        
+        // 写入时一个数据项一个写入项，按原始顺序编码
+        assertEquals(4  ,v_Plan.getWriteOffset(1));
+        assertEquals(13 ,v_Plan.getWriteImageSize());
+    }
+    
+    
+    
+    @Test
+    public void test_Cache()
+    {
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        v_Items.add(newItem("XX" ,PLCRegisterType.Data ,1 ,""     ,PLCDataType.Int));   // 无效地址
+        
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setItems(v_Items);
+        
+        PLCDatagramPlan v_Plan = new PLCDatagramPlan(v_Datagram.getItems() ,PLCDatagramPlan.$Gap ,200);
+        v_Datagram.satPlan(v_Plan);
+        assertEquals(1 ,v_Plan.getItemCount());
+        assertTrue (v_Plan.isValid(v_Datagram.getItems() ,PLCDatagramPlan.$Gap ,200));
+        assertFalse(v_Plan.isValid(v_Datagram.getItems() ,PLCDatagramPlan.$Gap ,100));
+        
+        // 数据项集合变化时失效
+        v_Items.add(newItem("W2" ,PLCRegisterType.Data ,1 ,"DBW2" ,PLCDataType.Int));
+        assertFalse(v_Plan.isValid(v_Datagram.getItems() ,PLCDatagramPlan.$Gap ,200));
+        
+        v_Datagram.setItems(new ArrayList<PLCDataItemConfig>(v_Items));
+        assertNull(v_Datagram.gatPlan());
+    }
+    
+}
@@ -0,0 +1,1395 @@
+package org.hy.common.plc.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.hy.common.plc.data.PLCConfig;
+import org.hy.common.plc.data.PLCDataItemConfig;
+import org.hy.common.plc.data.PLCDatagramConfig;
+import org.hy.common.plc.data.XPLC;
+import org.hy.common.plc.enums.PLCDataType;
+import org.hy.common.plc.enums.PLCRegisterType;
+import org.hy.common.plc.io.IPlcIO;
+import org.hy.common.plc.io.PlcIO4X;
+import org.hy.common.plc.io.PlcIOS200;
+import org.hy.common.plc.io.PlcSubscription;
+import org.hy.common.plc.pool.S7ClientPool;
+import org.hy.common.plc.util.PLCTagDecoder;
+import org.hy.common.plc.util.PLCTagPlan;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import Moka7.IntByRef;
+import Moka7.S7;
+import Moka7.S7Client;
+import Moka7.S7DataItem;
+import Moka7.S7Exception;
+import Moka7.S7Metrics;
+import Moka7.S7OrderCode;
+import Moka7.S7Reactor;
+import Moka7.S7Server;
+import Moka7.S7Session;
+import Moka7.S7Szl;
+
+
+
+
+
+/**
+ * 测试单元：进程内的S7模拟器（无须真实的PLC设备）
+ *
+ * @author      ZhengWei(HY)
+ * @createDate  2026-10-18
+ * @version     v1.0
+ */
+public class JU_S7Server
+{
+    
+    private S7Server server;
+    
+    private byte []  db1;
+    
+    
+    
+    @Before
+    public void startServer()
+    {
+        this.db1 = new byte[100];
+        for (int x=0; x<this.db1.length; x++)
+        {
+            this.db1[x] = (byte) x;
+        }
+        
+        this.server = new S7Server();
+        this.server.SetLocalPort(0);
+        this.server.RegisterArea(S7.S7AreaDB ,1 ,this.db1);
+        assertEquals(0 ,this.server.Start());
+    }
+    
+    
+    
+    @After
+    public void stopServer()
+    {
+        this.server.Stop();
+    }
+    
+    
+    
+    @Test
+    public void test_ReadWrite()
+    {
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        byte [] v_Data = new byte[4];
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,1 ,10 ,v_Data.length ,v_Data));
+        assertArrayEquals(new byte[] {10 ,11 ,12 ,13} ,v_Data);
+        
+        assertEquals(0 ,v_Client.WriteArea(S7.S7AreaMK ,0 ,2 ,3 ,new byte[] {9 ,8 ,7}));
+        assertEquals(8 ,this.server.Area(S7.S7AreaMK ,0)[3]);
+        
+        // 越界访问
+        assertEquals(S7Client.errS7DataRead ,v_Client.ReadArea(S7.S7AreaDB ,1 ,98 ,v_Data.length ,v_Data));
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_ReadMultiVars()
+    {
+        byte [] v_DB2 = new byte[1000];
+        for (int x=0; x<v_DB2.length; x++)
+        {
+            v_DB2[x] = (byte) (x * 7);
+        }
+        this.server.RegisterArea(S7.S7AreaDB ,2 ,v_DB2);
+        this.server.SetPduSize(240);
+        
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0   ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        assertEquals(240 ,v_Client.PDULength());
+        
+        // 40个字：一个请求报文最多19个变量（12 + 2 + 12 * 19 <= 240），拆分为3个报文
+        byte []        v_Data  = new byte[40 * 2];
+        S7DataItem []  v_Items = new S7DataItem[40];
+        for (int x=0; x<v_Items.length; x++)
+        {
+            v_Items[x] = new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,2 ,x * 20 ,2 ,v_Data ,x * 2);
+        }
+        long v_Requests = this.server.Requests();
+        assertEquals(0 ,v_Client.ReadMultiVars(v_Items ,v_Items.length));
+        assertEquals(3 ,this.server.Requests() - v_Requests);
+        for (int x=0; x<v_Items.length; x++)
+        {
+            assertEquals(0                   ,v_Items[x].Result);
+            assertEquals(v_DB2[x * 20]       ,v_Data[x * 2]);
+            assertEquals(v_DB2[x * 20 + 1]   ,v_Data[x * 2 + 1]);
+        }
+        
+        // 每个变量各自的结果：越界的变量失败，其余的成功
+        byte []       v_Big   = new byte[500];
+        S7DataItem [] v_Mixed = new S7DataItem[] {
+             new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,1 ,0   ,4   ,new byte[4])
+            ,new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,1 ,98  ,4   ,new byte[4])
+            ,new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,2 ,100 ,500 ,v_Big)        // 超过一个PDU：按字节分块读取
+            ,new S7DataItem(S7.S7AreaDB ,S7Client.S7WLWord ,2 ,0   ,250 ,new byte[500]) // 超过一个PDU的非字节类型：不支持
+            ,new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,1 ,10  ,2   ,new byte[2])
+        };
+        assertEquals(0                               ,v_Client.ReadMultiVars(v_Mixed ,v_Mixed.length));
+        assertEquals(0                               ,v_Mixed[0].Result);
+        assertEquals(S7Client.errS7AddressOutOfRange ,v_Mixed[1].Result);
+        assertEquals(0                               ,v_Mixed[2].Result);
+        assertArrayEquals(Arrays.copyOfRange(v_DB2 ,100 ,600) ,v_Big);
+        assertEquals(S7Client.errS7InvalidDataSize   ,v_Mixed[3].Result);
+        assertEquals(0                               ,v_Mixed[4].Result);
+        assertArrayEquals(new byte[] {10 ,11}        ,v_Mixed[4].Data);
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_PduSize()
+    {
+        byte [] v_DB2 = new byte[1000];
+        for (int x=0; x<v_DB2.length; x++)
+        {
+            v_DB2[x] = (byte) (x * 3);
+        }
+        this.server.RegisterArea(S7.S7AreaDB ,2 ,v_DB2);
+        this.server.SetPduSize(960);
+        
+        // 超出范围的请求值被限制在 240 ~ 8185 之间
+        S7Client v_Client = new S7Client();
+        v_Client.SetPduSizeRequested(100);
+        assertEquals(240 ,v_Client.PduSizeRequested());
+        
+        // 请求的PDU大小在协商报文中发出，协商结果为双方的较小值。缓冲区随之扩大，900个字节一个报文读完
+        v_Client.SetPduSizeRequested(960);
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0   ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        assertEquals(960 ,this.server.PduRequested());
+        assertEquals(960 ,v_Client.PDULength());
+        
+        byte [] v_Data     = new byte[900];
+        long    v_Requests = this.server.Requests();
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,2 ,50 ,v_Data.length ,v_Data));
+        assertEquals(1 ,this.server.Requests() - v_Requests);
+        assertArrayEquals(Arrays.copyOfRange(v_DB2 ,50 ,950) ,v_Data);
+        v_Client.Disconnect();
+        
+        // PLC只接受更小的PDU时，按协商结果分块：(240 - 18) 个字节一块
+        this.server.SetPduSize(240);
+        assertEquals(0   ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        assertEquals(960 ,this.server.PduRequested());
+        assertEquals(240 ,v_Client.PDULength());
+        v_Requests = this.server.Requests();
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,2 ,50 ,v_Data.length ,v_Data));
+        assertEquals(5 ,this.server.Requests() - v_Requests);
+        assertArrayEquals(Arrays.copyOfRange(v_DB2 ,50 ,950) ,v_Data);
+        v_Client.Disconnect();
+        
+        // PLC设备配置的PDU大小由连接池传给客户端
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        v_Config.setPduSize (480);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_PduSize");
+        v_Datagram.setItems(v_Items);
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertEquals(1   ,v_PlcIO.readDatas(v_Datagram ,3000).get("W0"));
+        assertEquals(480 ,this.server.PduRequested());
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_ReadArea_Pipeline() throws Exception
+    {
+        byte [] v_DB2 = new byte[2000];
+        for (int x=0; x<v_DB2.length; x++)
+        {
+            v_DB2[x] = (byte) (x * 5);
+        }
+        this.server.RegisterArea(S7.S7AreaDB ,2 ,v_DB2);
+        this.server.SetMaxJobs(4);
+        
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        v_Client.SetJobsRequested(4);
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        assertEquals(4 ,v_Client.MaxJobs());
+        
+        // 1800个字节分为4个PDU（每个462字节），4个作业同时在途：总耗时约为一次响应延迟
+        this.server.SetLatency(200);
+        byte [] v_Data     = new byte[1800];
+        long    v_Requests = this.server.Requests();
+        long    v_Start    = System.currentTimeMillis();
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,2 ,100 ,v_Data.length ,v_Data));
+        assertTrue(System.currentTimeMillis() - v_Start < 600);
+        assertEquals(4 ,this.server.Requests() - v_Requests);
+        assertArrayEquals(Arrays.copyOfRange(v_DB2 ,100 ,1900) ,v_Data);
+        
+        // 作业在途时响应超时：连接标记为断开，迟到的响应不会被下一次调用误收
+        this.server.SetLatency(500);
+        v_Client.RecvTimeout = 200;
+        assertEquals(S7Client.errTCPDataRecvTout ,v_Client.ReadArea(S7.S7AreaDB ,2 ,100 ,v_Data.length ,v_Data));
+        assertFalse(v_Client.Connected);
+        Thread.sleep(600);
+        
+        this.server.SetLatency(0);
+        byte [] v_Next = new byte[4];
+        assertTrue(v_Client.ReadArea(S7.S7AreaDB ,2 ,0 ,v_Next.length ,v_Next) != 0);
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,2 ,0 ,v_Next.length ,v_Next));
+        assertArrayEquals(Arrays.copyOfRange(v_DB2 ,0 ,4) ,v_Next);
+        
+        // 断开后（未协商PDU）读写失败，不会当作成功返回
+        v_Client.Disconnect();
+        assertEquals(S7Client.errTCPConnectionFailed ,v_Client.ReadArea (S7.S7AreaDB ,2 ,0 ,v_Next.length ,v_Next));
+        assertEquals(S7Client.errTCPConnectionFailed ,v_Client.WriteArea(S7.S7AreaDB ,2 ,0 ,v_Next.length ,v_Next));
+        
+        S7DataItem [] v_Items = new S7DataItem[] {new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,2 ,0 ,4 ,new byte[4])};
+        v_Items[0].Result = 0;
+        assertEquals(S7Client.errTCPConnectionFailed ,new S7Client().ReadMultiVars(v_Items ,1));
+        assertEquals(S7Client.errTCPConnectionFailed ,v_Items[0].Result);
+    }
+    
+    
+    
+    @Test
+    public void test_ReadWrite_Buffers()
+    {
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        // 数组片段
+        byte [] v_Array = new byte[10];
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,1 ,10 ,4 ,v_Array ,3));
+        assertArrayEquals(new byte[] {0 ,0 ,0 ,10 ,11 ,12 ,13 ,0 ,0 ,0} ,v_Array);
+        assertEquals(0 ,v_Client.WriteArea(S7.S7AreaDB ,1 ,40 ,2 ,new byte[] {0 ,0 ,41 ,42} ,2));
+        assertEquals(41 ,this.db1[40]);
+        assertEquals(42 ,this.db1[41]);
+        
+        // 堆缓冲区：从position开始，成功后position前进
+        ByteBuffer v_Heap = ByteBuffer.allocate(12);
+        v_Heap.position(5);
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,1 ,20 ,4 ,v_Heap));
+        assertEquals(9  ,v_Heap.position());
+        assertEquals(20 ,v_Heap.get(5));
+        assertEquals(23 ,v_Heap.get(8));
+        
+        // 切片的堆缓冲区：arrayOffset不为0
+        ByteBuffer v_Slice = ((ByteBuffer) ByteBuffer.allocate(32).position(8)).slice();
+        v_Slice.position(2);
+        assertEquals(8  ,v_Slice.arrayOffset());
+        assertEquals(0  ,v_Client.ReadArea(S7.S7AreaDB ,1 ,30 ,3 ,v_Slice));
+        assertEquals(5  ,v_Slice.position());
+        assertEquals(30 ,v_Slice.array()[8 + 2]);
+        assertEquals(32 ,v_Slice.array()[8 + 4]);
+        v_Slice.position(2);
+        assertEquals(0  ,v_Client.WriteArea(S7.S7AreaDB ,1 ,50 ,3 ,v_Slice));
+        assertArrayEquals(new byte[] {30 ,31 ,32} ,Arrays.copyOfRange(this.db1 ,50 ,53));
+        
+        // 直接缓冲区
+        ByteBuffer v_Direct = ByteBuffer.allocateDirect(16);
+        v_Direct.position(3);
+        assertEquals(0  ,v_Client.ReadArea(S7.S7AreaDB ,1 ,60 ,4 ,v_Direct));
+        assertEquals(7  ,v_Direct.position());
+        assertEquals(60 ,v_Direct.get(3));
+        assertEquals(63 ,v_Direct.get(6));
+        v_Direct.position(3);
+        assertEquals(0  ,v_Client.WriteArea(S7.S7AreaDB ,1 ,70 ,4 ,v_Direct));
+        assertArrayEquals(new byte[] {60 ,61 ,62 ,63} ,Arrays.copyOfRange(this.db1 ,70 ,74));
+        
+        // 剩余空间不足时失败，position不变
+        v_Direct.position(14);
+        assertEquals(S7Client.errS7BufferTooSmall ,v_Client.ReadArea(S7.S7AreaDB ,1 ,0 ,4 ,v_Direct));
+        assertEquals(14 ,v_Direct.position());
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_ReadWrite_TimerCounter()
+    {
+        byte [] v_Counters = new byte[512];
+        this.server.RegisterArea(S7.S7AreaCT ,0 ,v_Counters);
+        this.server.SetPduSize(240);
+        
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        // 150个计数器（300个字节）超过一个PDU（每块 (240 - 35) / 2 = 102 个），分块写入时按编号（而不是字节）推进地址
+        byte [] v_Data = new byte[300];
+        for (int x=0; x<150; x++)
+        {
+            S7.SetWordAt(v_Data ,x * 2 ,x + 1);
+        }
+        assertEquals(0 ,v_Client.WriteArea(S7.S7AreaCT ,0 ,10 ,150 ,v_Data));
+        assertArrayEquals(v_Data ,Arrays.copyOfRange(v_Counters ,10 * 2 ,160 * 2));
+        assertEquals(0 ,S7.GetWordAt(v_Counters ,160 * 2));
+        
+        byte [] v_Read = new byte[300];
+        assertEquals(0 ,v_Client.ReadArea(S7.S7AreaCT ,0 ,10 ,150 ,v_Read));
+        assertArrayEquals(v_Data ,v_Read);
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_Deadline() throws Exception
+    {
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        // 响应慢于截止时间：等待不超过截止时间（而不是完整的RecvTimeout）
+        this.server.SetLatency(1000);
+        byte [] v_Data  = new byte[4];
+        long    v_Start = System.currentTimeMillis();
+        v_Client.SetDeadline(300);
+        assertEquals(S7Client.errTCPDataRecvTout ,v_Client.ReadArea(S7.S7AreaDB ,1 ,0 ,v_Data.length ,v_Data));
+        assertTrue(System.currentTimeMillis() - v_Start < 900);
+        
+        // 截止时间已用尽：不再发送请求，快速失败
+        while ( v_Client.DeadlineLeft() > 0 )
+        {
+            Thread.sleep(1);
+        }
+        long v_Requests = this.server.Requests();
+        v_Start = System.currentTimeMillis();
+        assertEquals(S7Client.errTCPDataRecvTout ,v_Client.ReadArea(S7.S7AreaDB ,1 ,0 ,v_Data.length ,v_Data));
+        assertTrue(System.currentTimeMillis() - v_Start < 100);
+        assertEquals(v_Requests ,this.server.Requests());
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_Identity()
+    {
+        S7Client v_Client = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        S7OrderCode v_OrderCode = new S7OrderCode();
+        assertEquals(0 ,v_Client.GetOrderCode(v_OrderCode));
+        System.out.println(v_OrderCode.Code() + " V" + v_OrderCode.V1 + "." + v_OrderCode.V2 + "." + v_OrderCode.V3);
+        
+        byte []  v_Block = new byte[200];
+        IntByRef v_Size  = new IntByRef(0);
+        assertEquals(0 ,v_Client.DBGet(1 ,v_Block ,v_Size));
+        assertEquals(this.db1.length ,v_Size.Value);
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_Metrics()
+    {
+        S7Metrics v_PLCMetrics = new S7Metrics();
+        S7Client  v_Client     = new S7Client(v_PLCMetrics);
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        byte [] v_Data = new byte[4];
+        for (int x=0; x<10; x++)
+        {
+            assertEquals(0 ,v_Client.ReadArea(S7.S7AreaDB ,1 ,0 ,v_Data.length ,v_Data));
+        }
+        assertEquals(S7Client.errS7DataRead ,v_Client.ReadArea(S7.S7AreaDB ,1 ,98 ,v_Data.length ,v_Data));
+        
+        S7Metrics.Snapshot v_Client1 = v_Client.Metrics().Snapshot();
+        S7Metrics.Snapshot v_Total   = v_PLCMetrics.Snapshot();
+        System.out.println(v_Client1);
+        
+        // 连接（1次调用2个报文）+ 11次读
+        assertEquals(12 ,v_Client1.Calls);
+        assertEquals(13 ,v_Client1.Telegrams);
+        assertEquals(13 ,v_Client1.Replies);
+        assertEquals(1  ,v_Client1.Errors(S7Client.errS7DataRead));
+        assertEquals(v_Client1.BytesReceived ,v_Total.BytesReceived);
+        assertTrue(v_Client1.AvgWaitMillis() > 0);
+        
+        // 建立在其它调用之上的调用（DBGet、ReadMultiVars中超过PDU的数据项）只计一次调用
+        byte [] v_DB = new byte[this.db1.length];
+        assertEquals(0 ,v_Client.DBGet(1 ,v_DB ,new IntByRef(0)));
+        assertEquals(0 ,v_Client.ReadMultiVars(new S7DataItem[] {new S7DataItem(S7.S7AreaDB ,S7Client.S7WLByte ,3 ,0 ,v_Client.PDULength() ,new byte[v_Client.PDULength()])} ,1));
+        S7Metrics.Snapshot v_Client2 = v_Client.Metrics().Snapshot();
+        assertEquals(v_Client1.Calls + 2 ,v_Client2.Calls);
+        assertTrue(v_Client2.Telegrams - v_Client1.Telegrams >= 4);
+        
+        v_Client.Disconnect();
+    }
+    
+    
+    
+    @Test
+    public void test_S7Session() throws Exception
+    {
+        this.server.SetMaxJobs(4);
+        
+        S7Reactor v_Reactor = new S7Reactor(1);
+        S7Session v_Session = new S7Session(v_Reactor ,"127.0.0.1" ,this.server.LocalPort() ,0x0100 ,(S7.PG << 8) + 1);
+        v_Session.SetJobsRequested(4);
+        
+        // 未连接（PDU未协商）时不拆分请求，直接失败
+        assertEquals(S7Client.errTCPConnectionFailed ,errorCode(v_Session.ReadArea(S7.S7AreaDB ,1 ,0 ,4)));
+        
+        assertEquals(0 ,v_Session.Connect().get().intValue());
+        assertEquals(4 ,v_Session.MaxJobs());
+        
+        // 异步读写往返
+        assertEquals(0 ,v_Session.WriteArea(S7.S7AreaDB ,1 ,10 ,3 ,new byte[] {7 ,8 ,9}).get().intValue());
+        assertArrayEquals(new byte[] {7 ,8 ,9} ,v_Session.ReadArea(S7.S7AreaDB ,1 ,10 ,3).get());
+        
+        // 同一会话上的多个作业同时在途：总耗时约为一次响应延迟
+        this.server.SetLatency(300);
+        List<CompletableFuture<byte[]>> v_Futures = new ArrayList<CompletableFuture<byte[]>>();
+        long                            v_Start   = System.currentTimeMillis();
+        for (int x=0; x<4; x++)
+        {
+            v_Futures.add(v_Session.ReadArea(S7.S7AreaDB ,1 ,20 + x * 4 ,4));
+        }
+        for (int x=0; x<4; x++)
+        {
+            byte [] v_Data = v_Futures.get(x).get();
+            assertEquals(20 + x * 4 ,v_Data[0]);
+            assertEquals(23 + x * 4 ,v_Data[3]);
+        }
+        assertTrue(System.currentTimeMillis() - v_Start < 900);
+        
+        // 响应超时
+        v_Session.RecvTimeout = 100;
+        this.server.SetLatency(1000);
+        assertEquals(S7Client.errTCPDataRecvTout ,errorCode(v_Session.ReadArea(S7.S7AreaDB ,1 ,0 ,4)));
+        
+        v_Session.Disconnect();
+        v_Reactor.Close();
+    }
+    
+    
+    
+    @Test
+    public void test_S7Client_Async() throws Exception
+    {
+        this.server.SetMaxJobs(4);
+        
+        S7Reactor v_Reactor = new S7Reactor(1);
+        S7Client  v_Client  = new S7Client();
+        v_Client.SetConnectionPort(this.server.LocalPort());
+        v_Client.SetJobsRequested(4);
+        v_Client.SetReactor(v_Reactor);
+        assertEquals(0 ,v_Client.ConnectTo("127.0.0.1" ,0 ,1));
+        
+        // 异步读写往返
+        assertEquals(0 ,v_Client.WriteAreaAsync(S7.S7AreaDB ,1 ,10 ,3 ,new byte[] {7 ,8 ,9}).get().intValue());
+        assertArrayEquals(new byte[] {7 ,8 ,9} ,v_Client.ReadAreaAsync(S7.S7AreaDB ,1 ,10 ,3).get());
+        
+        // 整个数据块：先查询块大小，再分块读取
+        byte [] v_DB = v_Client.DBGetAsync(1).get();
+        assertEquals(this.db1.length ,v_DB.length);
+        assertEquals(99 ,v_DB[99]);
+        
+        S7Szl v_SZL = new S7Szl(1024);
+        assertEquals(0 ,v_Client.ReadSZLAsync(0x0011 ,0x0000 ,v_SZL).get().intValue());
+        assertTrue(v_SZL.DataSize > 0);
+        
+        // 多个异步调用同时在途
+        this.server.SetLatency(300);
+        List<CompletableFuture<byte[]>> v_Futures = new ArrayList<CompletableFuture<byte[]>>();
+        long                            v_Start   = System.currentTimeMillis();
+        for (int x=0; x<4; x++)
+        {
+            v_Futures.add(v_Client.ReadAreaAsync(S7.S7AreaDB ,1 ,20 + x * 4 ,4));
+        }
+        for (int x=0; x<4; x++)
+        {
+            assertEquals(20 + x * 4 ,v_Futures.get(x).get()[0]);
+        }
+        assertTrue(System.currentTimeMillis() - v_Start < 900);
+        
+        // 响应超时：返回真实的错误码（而不是笼统的接收错误）
+        v_Client.RecvTimeout = 100;
+        this.server.SetLatency(1000);
+        assertEquals(S7Client.errTCPDataRecvTout ,errorCode(v_Client.ReadAreaAsync(S7.S7AreaDB ,1 ,0 ,4)));
+        assertEquals(S7Client.errTCPDataRecvTout ,v_Client.WriteAreaAsync(S7.S7AreaDB ,1 ,0 ,1 ,new byte[] {1}).get().intValue());
+        
+        v_Client.Disconnect();
+        v_Reactor.Close();
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_Bits()
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        Map<String ,Object>     v_Datas = new HashMap<String ,Object>();
+        for (int x=0; x<16; x++)
+        {
+            PLCDataItemConfig v_Item = new PLCDataItemConfig();
+            v_Item.setCode          ("M" + x);
+            v_Item.setName          ("M" + x);
+            v_Item.setRegisterType  (PLCRegisterType.Memory);
+            v_Item.setRegisterNo    (0);
+            v_Item.setRegisterOffset("M" + (10 + x / 8) + "." + (x % 8));
+            v_Item.setDataType      (PLCDataType.Bool);
+            v_Items.add(v_Item);
+            v_Datas.put(v_Item.getCode() ,x % 3 == 0);
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Bits");
+        v_Datagram.setItems(v_Items);
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.connect().booleanValue());
+        
+        // 16个位在一个报文中写入
+        long v_Requests = this.server.Requests();
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Datas ,3000));
+        assertEquals(1    ,this.server.Requests() - v_Requests);
+        assertEquals(0x49 ,this.server.Area(S7.S7AreaMK ,0)[10] & 0xFF);
+        assertEquals(0x92 ,this.server.Area(S7.S7AreaMK ,0)[11] & 0xFF);
+        
+        // 只写一个位时，同一字节中的其它位不被覆盖
+        PLCDatagramConfig v_OneBit = new PLCDatagramConfig();
+        v_OneBit.setXid  ("JU_S7Server_OneBit");
+        v_OneBit.setItems(v_Items.subList(0 ,1));
+        v_Datas.put("M0" ,false);
+        assertTrue(v_PlcIO.writeDatas(v_OneBit ,v_Datas ,3000));
+        assertEquals(0x48 ,this.server.Area(S7.S7AreaMK ,0)[10] & 0xFF);
+        
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    @SuppressWarnings("deprecation")
+    public void test_PlcIOS200_Pool() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        v_Config.setMaxConn (3);
+        v_Config.setMaxIdle (3);
+        
+        // 三个报文分别读取DB1的不同区间
+        final List<PLCDatagramConfig> v_Datagrams = new ArrayList<PLCDatagramConfig>();
+        for (int x=0; x<3; x++)
+        {
+            PLCDataItemConfig v_Item = new PLCDataItemConfig();
+            v_Item.setCode          ("W" + x);
+            v_Item.setName          ("W" + x);
+            v_Item.setRegisterType  (PLCRegisterType.Data);
+            v_Item.setRegisterNo    (1);
+            v_Item.setRegisterOffset("DBW" + (x * 10));
+            v_Item.setDataType      (PLCDataType.Int);
+            
+            PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+            v_Datagram.setXid  ("JU_S7Server_Pool" + x);
+            v_Datagram.setItems(Arrays.asList(v_Item));
+            v_Datagrams.add(v_Datagram);
+        }
+        
+        final PlcIOS200 v_PlcIO    = new PlcIOS200(v_Config);
+        ExecutorService v_Executor = Executors.newFixedThreadPool(3);
+        this.server.SetLatency(200);
+        
+        for (int v_Round=0; v_Round<2; v_Round++)
+        {
+            long                             v_Start   = System.currentTimeMillis();
+            List<Future<Map<String ,Object>>> v_Futures = new ArrayList<Future<Map<String ,Object>>>();
+            for (final PLCDatagramConfig v_Datagram : v_Datagrams)
+            {
+                v_Futures.add(v_Executor.submit(() -> v_PlcIO.readDatas(v_Datagram ,3000)));
+            }
+            for (int x=0; x<3; x++)
+            {
+                assertEquals(x * 10 * 256 + x * 10 + 1 ,((Number) v_Futures.get(x).get().get("W" + x)).intValue());
+            }
+            
+            // 连接已建立后，三个报文并行读取，耗时约为一次往返（串行时为三次）
+            if ( v_Round >= 1 )
+            {
+                assertTrue(System.currentTimeMillis() - v_Start < 500);
+            }
+        }
+        
+        S7ClientPool v_Pool = (S7ClientPool) v_PlcIO.getConnectObject();
+        assertEquals(0 ,v_Pool.getNumActive());
+        assertEquals(3 ,v_Pool.getNumIdle());
+        
+        v_Executor.shutdown();
+        v_PlcIO.close(null);
+        assertTrue(!v_PlcIO.isConnected());
+    }
+    
+    
+    
+    @Test
+    public void test_S7ClientPool_Priority() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        v_Config.setMaxConn (1);
+        v_Config.setMaxIdle (1);
+        
+        final S7ClientPool v_Pool     = new S7ClientPool(v_Config);
+        final List<String> v_Order    = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService    v_Executor = Executors.newSingleThreadExecutor();
+        
+        // 轮询读取占用唯一的连接，写入开始等待
+        S7Client  v_Reader = v_Pool.borrowClient(3000);
+        Future<?> v_Writer = v_Executor.submit(() ->
+        {
+            S7Client v_Client = v_Pool.borrowClient(3000 ,true);
+            v_Order.add("write");
+            v_Pool.returnClient(v_Client);
+            return null;
+        });
+        while ( v_Pool.getPriorityWaiting() <= 0 )
+        {
+            Thread.sleep(5);
+        }
+        
+        // 读取归还后立即再借，须让写入先借到
+        v_Pool.returnClient(v_Reader);
+        v_Reader = v_Pool.borrowClient(3000);
+        v_Order.add("read");
+        v_Pool.returnClient(v_Reader);
+        
+        v_Writer.get();
+        assertEquals(Arrays.asList("write" ,"read") ,v_Order);
+        assertEquals(0 ,v_Pool.getPriorityWaiting());
+        
+        v_Executor.shutdown();
+        v_Pool.close();
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_Reconnect() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid              ("JU_S7Server");
+        v_Config.setHost             ("127.0.0.1");
+        v_Config.setPort             (this.server.LocalPort());
+        v_Config.setProtocol         ("s7-200-smart");
+        v_Config.setReconnectDelay   (100L);
+        v_Config.setReconnectMaxDelay(400L);
+        
+        PLCDataItemConfig v_Item = new PLCDataItemConfig();
+        v_Item.setCode          ("W0");
+        v_Item.setName          ("W0");
+        v_Item.setRegisterType  (PLCRegisterType.Data);
+        v_Item.setRegisterNo    (1);
+        v_Item.setRegisterOffset("DBW0");
+        v_Item.setDataType      (PLCDataType.Int);
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Reconnect");
+        v_Datagram.setItems(Arrays.asList(v_Item));
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.connect().booleanValue());
+        assertEquals(1 ,v_PlcIO.readDatas(v_Datagram ,3000).size());
+        
+        // PLC离线：本次读取失败后，设备标记为不可用，之后的读取立即失败
+        this.server.Stop();
+        assertTrue(v_PlcIO.readDatas(v_Datagram ,3000).isEmpty());
+        assertTrue(!v_PlcIO.isConnected());
+        
+        long v_Start = System.currentTimeMillis();
+        assertTrue(v_PlcIO.readDatas(v_Datagram ,3000).isEmpty());
+        assertTrue(System.currentTimeMillis() - v_Start < 50);
+        
+        // PLC恢复：后台重连成功后，读取恢复正常
+        assertEquals(0 ,this.server.Start());
+        for (int x=0; x<50 && !v_PlcIO.isConnected(); x++)
+        {
+            Thread.sleep(20);
+        }
+        assertTrue(v_PlcIO.isConnected());
+        assertEquals(1 ,v_PlcIO.readDatas(v_Datagram ,3000).size());
+        
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_Quarantine()
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        // DB1只有100个字节，DBW102越界。它与DBW96、DBW98合并在同一个区间中
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        for (int v_Offset : new int[] {0 ,96 ,98 ,102})
+        {
+            PLCDataItemConfig v_Item = new PLCDataItemConfig();
+            v_Item.setCode          ("W" + v_Offset);
+            v_Item.setName          ("W" + v_Offset);
+            v_Item.setRegisterType  (PLCRegisterType.Data);
+            v_Item.setRegisterNo    (1);
+            v_Item.setRegisterOffset("DBW" + v_Offset);
+            v_Item.setDataType      (PLCDataType.Int);
+            v_Items.add(v_Item);
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Quarantine");
+        v_Datagram.setItems(v_Items);
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        
+        // 失败的区间逐项重读：只丢失越界的数据项
+        Map<String ,Object> v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(3           ,v_Datas.size());
+        assertEquals(96*256 + 97 ,((Number) v_Datas.get("W96")).intValue());
+        assertEquals(98*256 + 99 ,((Number) v_Datas.get("W98")).intValue());
+        assertTrue(v_Datagram.gatPlan().getQuarantine().containsKey("W102"));
+        
+        // 隔离后：其余数据项仍合并读取，一次往返
+        long v_Requests = this.server.Requests();
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(3 ,v_Datas.size());
+        assertEquals(2 ,v_Datagram.gatPlan().getRangeCount());
+        assertEquals(1 ,this.server.Requests() - v_Requests);
+        
+        // 配置变化后，隔离区清空
+        v_Datagram.setItems(new ArrayList<PLCDataItemConfig>(v_Items));
+        v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(1 ,v_Datagram.gatPlan().getQuarantine().size());
+        
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_Snapshot()
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        for (int v_Offset : new int[] {0 ,50 ,96})
+        {
+            PLCDataItemConfig v_Item = new PLCDataItemConfig();
+            v_Item.setCode          ("W" + v_Offset);
+            v_Item.setName          ("W" + v_Offset);
+            v_Item.setRegisterType  (PLCRegisterType.Data);
+            v_Item.setRegisterNo    (1);
+            v_Item.setRegisterOffset("DBW" + v_Offset);
+            v_Item.setDataType      (PLCDataType.Int);
+            v_Items.add(v_Item);
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid     ("JU_S7Server_Snapshot");
+        v_Datagram.setItems   (v_Items);
+        v_Datagram.setSnapshot("range");
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.connect().booleanValue());
+        
+        // 字节区间：一个区间，一次往返
+        long                v_Requests = this.server.Requests();
+        Map<String ,Object> v_Datas    = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(1           ,this.server.Requests() - v_Requests);
+        assertEquals(1           ,v_Datagram.gatPlan().getRangeCount());
+        assertEquals(98          ,v_Datagram.gatPlan().getImageSize());
+        assertEquals(50*256 + 51 ,((Number) v_Datas.get("W50")).intValue());
+        assertEquals(96*256 + 97 ,((Number) v_Datas.get("W96")).intValue());
+        
+        // 整个数据块：首次查询数据块的大小
+        v_Datagram.setSnapshot("block");
+        v_Requests = this.server.Requests();
+        v_Datas    = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(2           ,this.server.Requests() - v_Requests);
+        assertEquals(3           ,v_Datas.size());
+        assertEquals(50*256 + 51 ,((Number) v_Datas.get("W50")).intValue());
+        
+        v_Requests = this.server.Requests();
+        v_Datas    = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(1           ,this.server.Requests() - v_Requests);
+        assertEquals(3           ,v_Datas.size());
+        
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_TimerCounter()
+    {
+        byte [] v_Timers   = new byte[512];
+        byte [] v_Counters = new byte[512];
+        S7.SetWordAt(v_Timers   ,5 * 2 ,0x1025);   // T5：时基100毫秒，025 => 2.5秒
+        S7.SetWordAt(v_Timers   ,6 * 2 ,0x2134);   // T6：时基1秒，134     => 134秒
+        S7.SetWordAt(v_Counters ,3 * 2 ,0x0123);   // C3：BCD码 123
+        this.server.RegisterArea(S7.S7AreaTM ,0 ,v_Timers);
+        this.server.RegisterArea(S7.S7AreaCT ,0 ,v_Counters);
+        
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        for (String v_Address : new String[] {"T5" ,"T6" ,"C3"})
+        {
+            boolean           v_IsTimer = v_Address.startsWith("T");
+            PLCDataItemConfig v_Item    = new PLCDataItemConfig();
+            v_Item.setCode          (v_Address);
+            v_Item.setName          (v_Address);
+            v_Item.setRegisterType  (v_IsTimer ? PLCRegisterType.Timer : PLCRegisterType.Counter);
+            v_Item.setRegisterNo    (0);
+            v_Item.setRegisterOffset(v_Address);
+            v_Item.setDataType      (v_IsTimer ? PLCDataType.S5Time : PLCDataType.Counter);
+            v_Items.add(v_Item);
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_TimerCounter");
+        v_Datagram.setItems(v_Items);
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.connect().booleanValue());
+        
+        // 相邻的定时器合并为一个区间，与计数器在同一次往返中读取
+        long                v_Requests = this.server.Requests();
+        Map<String ,Object> v_Datas    = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(1      ,this.server.Requests() - v_Requests);
+        assertEquals(2      ,v_Datagram.gatPlan().getRangeCount());
+        assertEquals(2500   ,((Number) v_Datas.get("T5")).intValue());
+        assertEquals(134000 ,((Number) v_Datas.get("T6")).intValue());
+        assertEquals(123    ,((Number) v_Datas.get("C3")).intValue());
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("T5" ,90000);
+        v_Writes.put("T6" ,10);
+        v_Writes.put("C3" ,456);
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        assertEquals(0x1900 ,S7.GetWordAt(v_Timers   ,5 * 2));
+        assertEquals(0x0001 ,S7.GetWordAt(v_Timers   ,6 * 2));
+        assertEquals(0x0456 ,S7.GetWordAt(v_Counters ,3 * 2));
+        
+        // 快照模式
+        v_Datagram.setSnapshot("range");
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(90000  ,((Number) v_Datas.get("T5")).intValue());
+        assertEquals(10     ,((Number) v_Datas.get("T6")).intValue());
+        assertEquals(456    ,((Number) v_Datas.get("C3")).intValue());
+        
+        v_PlcIO.close(null);
+    }
+
+    
+    
+    @Test
+    public void test_PlcIO4X_TagPlan()
+    {
+        byte [] v_Counters = new byte[64];
+        this.server.RegisterArea(S7.S7AreaCT ,0 ,v_Counters);
+        
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7");
+        v_Config.setTimeout (3000L);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0"  ,PLCRegisterType.Data    ,1 ,"DBW0"  ,PLCDataType.Int));
+        v_Items.add(newItem("D4"  ,PLCRegisterType.Data    ,1 ,"DBD4"  ,PLCDataType.DInt));
+        v_Items.add(newItem("R8"  ,PLCRegisterType.Data    ,1 ,"DBD8"  ,PLCDataType.Real));
+        v_Items.add(newItem("C3"  ,PLCRegisterType.Counter ,0 ,"C3"    ,PLCDataType.Counter));
+        v_Items.add(newItem("U12" ,PLCRegisterType.Data    ,1 ,"DBD12" ,PLCDataType.UDInt));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_TagPlan");
+        v_Datagram.setItems(v_Items);
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("W0"  ,-1234);
+        v_Writes.put("D4"  ,-7654321);
+        v_Writes.put("R8"  ,3.5F);
+        v_Writes.put("C3"  ,456);
+        v_Writes.put("U12" ,3000000000L);
+        
+        PlcIO4X v_PlcIO = new PlcIO4X(v_Config);
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        
+        // 首次读写时解析请求标签，之后的读写复用
+        PLCTagPlan v_TagPlan = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false));
+        assertEquals(5 ,v_TagPlan.getCount());
+        assertEquals(PLCTagDecoder.Counter ,v_TagPlan.getDecoder(3));
+        assertEquals(PLCTagDecoder.UInt32  ,v_TagPlan.getDecoder(4));
+        
+        Map<String ,Object> v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertTrue(v_TagPlan == v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false)));
+        assertEquals(-1234       ,((Number) v_Datas.get("W0")).intValue());
+        assertEquals(-7654321    ,((Number) v_Datas.get("D4")).intValue());
+        assertEquals(456         ,((Number) v_Datas.get("C3")).intValue());
+        assertEquals(3000000000L ,((Number) v_Datas.get("U12")).longValue());
+        assertEquals(0x0456      ,S7.GetWordAt(v_Counters ,3 * 2));
+        
+        // 快照模式的请求标签单独缓存
+        v_Datagram.setSnapshot("range");
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        PLCTagPlan v_Snapshot = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,true));
+        assertEquals(2 ,v_Snapshot.getCount());
+        assertEquals(-7654321 ,((Number) v_Datas.get("D4")).intValue());
+        assertEquals(456      ,((Number) v_Datas.get("C3")).intValue());
+        v_PlcIO.readDatas(v_Datagram ,3000);
+        assertTrue(v_Snapshot == v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,true)));
+        assertTrue(v_TagPlan  == v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false)));
+        
+        // 数据项集合变化后失效
+        v_Datagram.setItems(new ArrayList<PLCDataItemConfig>(v_Items));
+        assertTrue(v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false)) == null);
+    }
+
+    
+    
+    @Test
+    public void test_PlcIOS200_Async() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        v_Config.setMaxConn (2);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        v_Items.add(newItem("W2" ,PLCRegisterType.Data ,1 ,"DBW2" ,PLCDataType.Int));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Async");
+        v_Datagram.setItems(v_Items);
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("W0" ,321);
+        v_Writes.put("W2" ,-321);
+        
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.writeDatasAsync(v_Datagram ,v_Writes ,3000).get());
+        
+        // 大量并发读取在两个连接上排队，不占用调用线程
+        List<CompletableFuture<Map<String ,Object>>> v_Futures = new ArrayList<CompletableFuture<Map<String ,Object>>>();
+        for (int x=0; x<100; x++)
+        {
+            v_Futures.add(v_PlcIO.readDatasAsync(v_Datagram ,5000));
+        }
+        for (CompletableFuture<Map<String ,Object>> v_Future : v_Futures)
+        {
+            Map<String ,Object> v_Datas = v_Future.get();
+            assertEquals(321  ,((Number) v_Datas.get("W0")).intValue());
+            assertEquals(-321 ,((Number) v_Datas.get("W2")).intValue());
+        }
+        
+        // 关闭时，排队中的任务按失败完成（结果为空），之后再读写时按需重新创建连接池及执行者
+        v_Futures.clear();
+        for (int x=0; x<200; x++)
+        {
+            v_Futures.add(v_PlcIO.readDatasAsync(v_Datagram ,5000));
+        }
+        v_PlcIO.close(null);
+        int v_Cancelled = 0;
+        for (CompletableFuture<Map<String ,Object>> v_Future : v_Futures)
+        {
+            if ( v_Future.get(5 ,TimeUnit.SECONDS).isEmpty() )
+            {
+                v_Cancelled++;
+            }
+        }
+        assertTrue(v_Cancelled > 0);
+        assertEquals(321 ,((Number) v_PlcIO.readDatasAsync(v_Datagram ,5000).get().get("W0")).intValue());
+        v_PlcIO.close(null);
+        
+        // 设备无法连接时，Future正常完成，结果为空
+        v_Config.setPort(1);
+        v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.readDatasAsync(v_Datagram ,500).get().isEmpty());
+        assertFalse(v_PlcIO.writeDatasAsync(v_Datagram ,v_Writes ,500).get());
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIO4X_Async() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7");
+        v_Config.setTimeout (3000L);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Async4X");
+        v_Datagram.setItems(v_Items);
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("W0" ,4321);
+        
+        PlcIO4X v_PlcIO = new PlcIO4X(v_Config);
+        assertTrue(v_PlcIO.writeDatasAsync(v_Datagram ,v_Writes ,3000).get());
+        
+        List<CompletableFuture<Map<String ,Object>>> v_Futures = new ArrayList<CompletableFuture<Map<String ,Object>>>();
+        for (int x=0; x<8; x++)
+        {
+            v_Futures.add(v_PlcIO.readDatasAsync(v_Datagram ,3000));
+        }
+        for (CompletableFuture<Map<String ,Object>> v_Future : v_Futures)
+        {
+            assertEquals(4321 ,((Number) v_Future.get().get("W0")).intValue());
+        }
+        
+        // 超时时长小于等于0时，为PLC设备配置的超时时长
+        assertEquals(4321 ,((Number) v_PlcIO.readDatas(v_Datagram ,0).get("W0")).intValue());
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIOS200_Subscribe() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        v_Items.add(newItem("W2" ,PLCRegisterType.Data ,1 ,"DBW2" ,PLCDataType.Int));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Subscribe");
+        v_Datagram.setItems(v_Items);
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("W0" ,10);
+        v_Writes.put("W2" ,20);
+        PlcIOS200 v_PlcIO = new PlcIOS200(v_Config);
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        
+        BlockingQueue<Map<String ,Object>> v_Pushes       = new LinkedBlockingQueue<Map<String ,Object>>();
+        PlcSubscription                    v_Subscription = v_PlcIO.subscribe(v_Datagram ,20L ,true ,(i_Datagram ,i_Datas) -> v_Pushes.add(i_Datas));
+        
+        // 首次推送所有数据项，之后值不变时不推送
+        Map<String ,Object> v_Datas = v_Pushes.poll(3 ,TimeUnit.SECONDS);
+        assertEquals(2  ,v_Datas.size());
+        assertEquals(10 ,((Number) v_Datas.get("W0")).intValue());
+        assertTrue(v_Pushes.poll(200 ,TimeUnit.MILLISECONDS) == null);
+        
+        // 仅推送值变化了的数据项
+        v_Writes.put("W2" ,21);
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        v_Datas = v_Pushes.poll(3 ,TimeUnit.SECONDS);
+        assertEquals(1  ,v_Datas.size());
+        assertEquals(21 ,((Number) v_Datas.get("W2")).intValue());
+        
+        // 取消订阅后不再推送
+        v_Subscription.close();
+        Thread.sleep(100);
+        v_Pushes.clear();
+        v_Writes.put("W2" ,22);
+        assertTrue(v_PlcIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        assertTrue(v_Pushes.poll(200 ,TimeUnit.MILLISECONDS) == null);
+        
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_XPLC_Subscribe() throws Exception
+    {
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid     ("JU_S7Server");
+        v_Config.setHost    ("127.0.0.1");
+        v_Config.setPort    (this.server.LocalPort());
+        v_Config.setProtocol("s7-200-smart");
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        v_Items.add(newItem("W0" ,PLCRegisterType.Data ,1 ,"DBW0" ,PLCDataType.Int));
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_XPLC_Subscribe");
+        v_Datagram.setItems(v_Items);
+        
+        Map<String ,Object> v_Writes = new HashMap<String ,Object>();
+        v_Writes.put("W0" ,30);
+        
+        XPLC v_XPLC = new XPLC(v_Config);
+        assertTrue(v_XPLC.connect().booleanValue());
+        IPlcIO v_OldIO = v_XPLC.getPlcIO();
+        assertTrue(v_OldIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        
+        BlockingQueue<Map<String ,Object>> v_Pushes       = new LinkedBlockingQueue<Map<String ,Object>>();
+        PlcSubscription                    v_Subscription = v_OldIO.subscribe(v_Datagram ,20L ,true ,(i_Datagram ,i_Datas) -> v_Pushes.add(i_Datas));
+        assertEquals(30 ,((Number) v_Pushes.poll(3 ,TimeUnit.SECONDS).get("W0")).intValue());
+        assertEquals(1  ,v_OldIO.getSubscriptions().size());
+        
+        // 重新连接时，订阅迁移到新的PLC读写上继续，原来的PLC读写被关闭
+        assertTrue(v_XPLC.connect().booleanValue());
+        IPlcIO v_NewIO = v_XPLC.getPlcIO();
+        assertTrue(v_OldIO != v_NewIO);
+        assertTrue(v_OldIO.getSubscriptions().isEmpty());
+        assertTrue(v_NewIO.getSubscriptions().contains(v_Subscription));
+        assertFalse(v_Subscription.isClosed());
+        assertFalse(v_OldIO.isConnected());
+        
+        v_Writes.put("W0" ,31);
+        assertTrue(v_NewIO.writeDatas(v_Datagram ,v_Writes ,3000));
+        assertEquals(31 ,((Number) v_Pushes.poll(3 ,TimeUnit.SECONDS).get("W0")).intValue());
+        
+        // 关闭时取消所有订阅。之后仍可再次连接、订阅（按需重新创建连接池）
+        v_XPLC.close(null);
+        assertTrue(v_Subscription.isClosed());
+        assertTrue(v_NewIO.getSubscriptions().isEmpty());
+        assertFalse(v_NewIO.isConnected());
+        
+        v_Pushes.clear();
+        v_Subscription = v_NewIO.subscribe(v_Datagram ,20L ,true ,(i_Datagram ,i_Datas) -> v_Pushes.add(i_Datas));
+        assertEquals(31 ,((Number) v_Pushes.poll(3 ,TimeUnit.SECONDS).get("W0")).intValue());
+        assertTrue(v_NewIO.isConnected());
+        v_XPLC.close(null);
+        assertTrue(v_Subscription.isClosed());
+        
+        // 关闭PLC4X的读写时（连接对象为NULL），同样取消所有订阅
+        PlcIO4X         v_PlcIO4X = new PlcIO4X(v_Config);
+        PlcSubscription v_Sub4X   = v_PlcIO4X.subscribe(v_Datagram ,1000L ,false ,(i_Datagram ,i_Datas) -> {});
+        assertEquals(1 ,v_PlcIO4X.getSubscriptions().size());
+        v_PlcIO4X.close(null);
+        assertTrue(v_Sub4X.isClosed());
+        assertTrue(v_PlcIO4X.getSubscriptions().isEmpty());
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIO4X_Split() throws Exception
+    {
+        byte [] v_DB2 = new byte[600];
+        for (int x=0; x<50; x++)
+        {
+            S7.SetWordAt(v_DB2 ,x * 12 ,x * 3);
+        }
+        this.server.RegisterArea(S7.S7AreaDB ,2 ,v_DB2);
+        
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid      ("JU_S7Server");
+        v_Config.setHost     ("127.0.0.1");
+        v_Config.setPort     (this.server.LocalPort());
+        v_Config.setProtocol ("s7");
+        v_Config.setTimeout  (3000L);
+        v_Config.setPduSize  (240);
+        v_Config.setMaxConn  (3);
+        v_Config.setSplitSize(64);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        for (int x=0; x<50; x++)
+        {
+            v_Items.add(newItem("W" + x ,PLCRegisterType.Data ,2 ,"DBW" + (x * 12) ,PLCDataType.Int));
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid  ("JU_S7Server_Split");
+        v_Datagram.setItems(v_Items);
+        
+        // 数据项模式：50个请求标签超过一个PDU的请求，拆分为3个请求在3个连接上并行读取，合并为一个结果
+        PlcIO4X             v_PlcIO = new PlcIO4X(v_Config);
+        Map<String ,Object> v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        PLCTagPlan          v_Plan  = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false));
+        assertEquals(3  ,v_Plan.split(240 ,3).length);
+        assertEquals(50 ,v_Datas.size());
+        for (int x=0; x<50; x++)
+        {
+            assertEquals(x * 3 ,((Number) v_Datas.get("W" + x)).intValue());
+        }
+        
+        // 快照模式：600个字节分为3块，同样并行读取
+        v_Datagram.setSnapshot("range");
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        v_Plan  = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,true));
+        assertEquals(3  ,v_Plan.split(240 ,3).length);
+        assertEquals(50 ,v_Datas.size());
+        assertEquals(49 * 3 ,((Number) v_Datas.get("W49")).intValue());
+        
+        // 未超过阈值时，在一个连接上用一次请求读取
+        v_Config.setSplitSize(1000);
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(50 ,v_Datas.size());
+        assertEquals(25 * 3 ,((Number) v_Datas.get("W25")).intValue());
+        
+        // 关闭时关闭连接池（断开所有连接），之后再读写时重新创建
+        int v_Connections = this.server.ClientsCount();
+        v_PlcIO.close(null);
+        assertFalse(v_PlcIO.isConnected());
+        Thread.sleep(200);
+        assertTrue(this.server.ClientsCount() < v_Connections);
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        assertEquals(50 ,v_Datas.size());
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    @Test
+    public void test_PlcIO4X_PduSize() throws Exception
+    {
+        byte [] v_DB2 = new byte[600];
+        for (int x=0; x<50; x++)
+        {
+            S7.SetWordAt(v_DB2 ,x * 12 ,x * 3);
+        }
+        this.server.RegisterArea(S7.S7AreaDB ,2 ,v_DB2);
+        this.server.SetPduSize(240);
+        
+        // 请求960，设备只准许240
+        PLCConfig v_Config = new PLCConfig();
+        v_Config.setXid      ("JU_S7Server");
+        v_Config.setHost     ("127.0.0.1");
+        v_Config.setPort     (this.server.LocalPort());
+        v_Config.setProtocol ("s7");
+        v_Config.setTimeout  (3000L);
+        v_Config.setPduSize  (960);
+        v_Config.setMaxConn  (3);
+        v_Config.setMaxIdle  (3);
+        v_Config.setSplitSize(64);
+        
+        List<PLCDataItemConfig> v_Items = new ArrayList<PLCDataItemConfig>();
+        for (int x=0; x<50; x++)
+        {
+            v_Items.add(newItem("W" + x ,PLCRegisterType.Data ,2 ,"DBW" + (x * 12) ,PLCDataType.Int));
+        }
+        PLCDatagramConfig v_Datagram = new PLCDatagramConfig();
+        v_Datagram.setXid     ("JU_S7Server_PduSize");
+        v_Datagram.setItems   (v_Items);
+        v_Datagram.setSnapshot("range");
+        
+        // 快照模式：按准许的240字节分块（每块222字节），不按请求的960字节
+        PlcIO4X             v_PlcIO = new PlcIO4X(v_Config);
+        Map<String ,Object> v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        PLCTagPlan          v_Plan  = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,true));
+        assertEquals(3  ,v_Plan.getCount());
+        assertEquals(50 ,v_Datas.size());
+        for (int x=0; x<50; x++)
+        {
+            assertEquals(x * 3 ,((Number) v_Datas.get("W" + x)).intValue());
+        }
+        
+        // 并行拆分：50个请求标签按准许的240字节分为3组，在3个连接上并行读取（按请求的960字节只有1组，不能拆分）
+        v_PlcIO.close(null);
+        Thread.sleep(200);
+        assertEquals(0 ,this.server.ClientsCount());
+        v_Datagram.setSnapshot(null);
+        v_Datas = v_PlcIO.readDatas(v_Datagram ,3000);
+        v_Plan  = v_Datagram.gatTagPlan(PLCTagPlan.makeKey("s7" ,false));
+        assertEquals(1  ,v_Plan.split(960 ,3).length);
+        assertEquals(3  ,v_Plan.split(240 ,3).length);
+        assertEquals(3  ,this.server.ClientsCount());
+        assertEquals(50 ,v_Datas.size());
+        for (int x=0; x<50; x++)
+        {
+            assertEquals(x * 3 ,((Number) v_Datas.get("W" + x)).intValue());
+        }
+        v_PlcIO.close(null);
+    }
+    
+    
+    
+    private static int errorCode(CompletableFuture<?> i_Future) throws InterruptedException
+    {
+        try
+        {
+            i_Future.get();
+            return 0;
+        }
+        catch (ExecutionException exce)
+        {
+            return S7Exception.ErrorCode(exce);
+        }
+    }
+    
+    
+    
+    private static PLCDataItemConfig newItem(String i_Code ,PLCRegisterType i_RegisterType ,int i_RegisterNo ,String i_Offset ,PLCDataType i_DataType)
+    {
+        PLCDataItemConfig v_Item = new PLCDataItemConfig();
+        v_Item.setCode          (i_Code);
+        v_Item.setName          (i_Code);
+        v_Item.setRegisterType  (i_RegisterType);
+        v_Item.setRegisterNo    (i_RegisterNo);
+        v_Item.setRegisterOffset(i_Offset);
+        v_Item.setDataType      (i_DataType);
+        return v_Item;
+    }
+    
+}